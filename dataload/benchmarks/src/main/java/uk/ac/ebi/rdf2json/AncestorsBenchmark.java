@@ -0,0 +1,62 @@
+package uk.ac.ebi.rdf2json;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import uk.ac.ebi.rdf2json.helpers.AncestorsClosure;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// The ancestor closures of every class (AncestorsClosure.getAncestors), as computed when the
+// hierarchicalAncestor and directAncestor properties are written. The HierarchyIndex each
+// closure is computed from is built during the first warmup iteration.
+//
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class AncestorsBenchmark {
+
+    @Param({"chain", "wide", "reified", "testcases"})
+    String shape;
+
+    @Param({"10000"})
+    int size;
+
+    @Param({"hierarchicalParent", "directParent"})
+    String hierarchyPredicate;
+
+    List<OntologyGraph> graphs;
+    List<List<OntologyNode>> classes;
+
+    @Setup
+    public void setup() throws IOException {
+
+        graphs = BenchmarkOntologies.load(BenchmarkOntologies.configs(shape, size));
+        classes = new ArrayList<>();
+
+        for(OntologyGraph graph : graphs) {
+            List<OntologyNode> graphClasses = new ArrayList<>();
+            for(OntologyNode node : graph.nodes.values()) {
+                if(node.uri != null && node.types.contains(OntologyNode.NodeType.CLASS)) {
+                    graphClasses.add(node);
+                }
+            }
+            classes.add(graphClasses);
+        }
+    }
+
+    @Benchmark
+    public void getAncestors(Blackhole blackhole) {
+        for(int g = 0; g < graphs.size(); ++ g) {
+            OntologyGraph graph = graphs.get(g);
+            for(OntologyNode node : classes.get(g)) {
+                blackhole.consume(AncestorsClosure.getAncestors(node, hierarchyPredicate, graph));
+            }
+        }
+    }
+}
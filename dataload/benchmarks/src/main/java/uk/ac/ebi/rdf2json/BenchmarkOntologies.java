@@ -0,0 +1,260 @@
+package uk.ac.ebi.rdf2json;
+
+import com.google.gson.Gson;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFDataMgr;
+import org.apache.jena.riot.RDFLanguages;
+import org.apache.jena.riot.RDFParser;
+import org.apache.jena.riot.system.StreamRDFBase;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+// The ontologies the benchmarks run on, chosen with the "shape" parameter:
+//
+//   chain      each class is a subclass of the one before it (a hierarchy "size" deep)
+//   wide       each class has up to FANOUT subclasses (a shallow, wide hierarchy)
+//   reified    as wide, but every class also has REIFIED_XREFS xrefs annotated with axioms
+//   testcases  every ontology in the testcases directory ("size" is ignored)
+//
+// The synthetic ontologies also have a someValuesFrom restriction on every class and an
+// owl:intersectionOf list on every tenth class, so that there are bnodes and rdf:Lists to
+// compare and evaluate. They are written as N-Triples to a temporary directory.
+//
+// The testcases are read from the directory given by -Dols4.testcases (by default
+// "testcases", i.e. run the benchmarks from the root of the repository). Their configs
+// give paths relative to the root of the repository, which is taken to be its parent.
+//
+public class BenchmarkOntologies {
+
+    static final String NS = "http://example.org/benchmark/";
+
+    static final int FANOUT = 100;
+    static final int REIFIED_XREFS = 5;
+
+    static final String RDF = "http://www.w3.org/1999/02/22-rdf-syntax-ns#";
+    static final String RDFS = "http://www.w3.org/2000/01/rdf-schema#";
+    static final String OWL = "http://www.w3.org/2002/07/owl#";
+    static final String XREF = "http://www.geneontology.org/formats/oboInOwl#hasDbXref";
+
+    // rdf2json configs for the ontologies of a shape
+    //
+    public static List<Map<String, Object>> configs(String shape, int size) throws IOException {
+
+        if(shape.equals("testcases")) {
+            return testcaseConfigs();
+        }
+
+        Path file = Files.createTempFile("rdf2json-benchmark-" + shape + "-" + size, ".nt");
+        file.toFile().deleteOnExit();
+
+        try(OutputStream os = new BufferedOutputStream(Files.newOutputStream(file))) {
+            RDFDataMgr.writeTriples(os, generate(shape, size).iterator());
+        }
+
+        Map<String, Object> config = new LinkedHashMap<>();
+        config.put("id", "benchmark-" + shape);
+        config.put("preferredPrefix", "BENCHMARK");
+        config.put("ontology_purl", file.toString());
+        config.put("base_uri", List.of(NS));
+
+        return List.of(config);
+    }
+
+    // Loads (and annotates) the ontologies of configs as rdf2json would.
+    //
+    public static List<OntologyGraph> load(List<Map<String, Object>> configs) {
+
+        List<OntologyGraph> graphs = new ArrayList<>();
+
+        for(Map<String, Object> config : configs) {
+            try {
+                graphs.add(new OntologyGraph(config, true, true, null, null, null, null, 0, 1, 1, 1, 1));
+            } catch(RuntimeException e) {
+                // as in RDF2JSON, an ontology that fails to load is left out
+                System.out.println("Skipping " + config.get("id") + ": " + e);
+            }
+        }
+
+        return graphs;
+    }
+
+    // The triples of the file of each config, as the parser passes them to OntologyGraph
+    //
+    public static List<List<Triple>> parse(List<Map<String, Object>> configs) {
+
+        List<List<Triple>> files = new ArrayList<>();
+
+        for(Map<String, Object> config : configs) {
+
+            String url = (String) config.get("ontology_purl");
+            List<Triple> triples = new ArrayList<>();
+
+            RDFParser.create()
+                    .source(url)
+                    .forceLang(RDFLanguages.filenameToLang(url, Lang.RDFXML))
+                    .strict(false)
+                    .checking(false)
+                    .parse(new StreamRDFBase() {
+                        @Override
+                        public void triple(Triple triple) {
+                            triples.add(triple);
+                        }
+                    });
+
+            files.add(triples);
+        }
+
+        return files;
+    }
+
+    static List<Triple> generate(String shape, int size) {
+
+        boolean chain = shape.equals("chain");
+        boolean reified = shape.equals("reified");
+
+        if(!chain && !reified && !shape.equals("wide")) {
+            throw new IllegalArgumentException("unknown shape " + shape + " (expected chain, wide, reified or testcases)");
+        }
+
+        List<Triple> triples = new ArrayList<>();
+
+        Node partOf = uri(NS + "part_of");
+
+        add(triples, uri(NS), uri(RDF + "type"), uri(OWL + "Ontology"));
+        add(triples, partOf, uri(RDF + "type"), uri(OWL + "ObjectProperty"));
+        add(triples, partOf, uri(RDFS + "label"), literal("part of"));
+
+        for(int i = 0; i < size; ++ i) {
+
+            Node c = uri(NS + "C_" + i);
+
+            add(triples, c, uri(RDF + "type"), uri(OWL + "Class"));
+            add(triples, c, uri(RDFS + "label"), literal("class " + i));
+
+            if(i == 0) {
+                continue;
+            }
+
+            Node parent = uri(NS + "C_" + (chain ? i - 1 : (i - 1) / FANOUT));
+            add(triples, c, uri(RDFS + "subClassOf"), parent);
+
+            add(triples, c, uri(RDFS + "subClassOf"), restriction(triples, partOf, uri(NS + "C_" + (i / 2))));
+
+            if(i % 10 == 0) {
+                Node intersection = NodeFactory.createBlankNode();
+                add(triples, intersection, uri(RDF + "type"), uri(OWL + "Class"));
+                add(triples, intersection, uri(OWL + "intersectionOf"),
+                        list(triples, parent, restriction(triples, partOf, uri(NS + "C_" + (i - 1)))));
+                add(triples, c, uri(OWL + "equivalentClass"), intersection);
+            }
+
+            if(reified) {
+                for(int x = 0; x < REIFIED_XREFS; ++ x) {
+
+                    Node xref = literal("DB:" + i + "_" + x);
+                    add(triples, c, uri(XREF), xref);
+
+                    Node axiom = NodeFactory.createBlankNode();
+                    add(triples, axiom, uri(RDF + "type"), uri(OWL + "Axiom"));
+                    add(triples, axiom, uri(OWL + "annotatedSource"), c);
+                    add(triples, axiom, uri(OWL + "annotatedProperty"), uri(XREF));
+                    add(triples, axiom, uri(OWL + "annotatedTarget"), xref);
+                    add(triples, axiom, uri(RDFS + "comment"), literal("source " + x));
+                }
+            }
+        }
+
+        return triples;
+    }
+
+    private static Node restriction(List<Triple> triples, Node property, Node filler) {
+        Node r = NodeFactory.createBlankNode();
+        add(triples, r, uri(RDF + "type"), uri(OWL + "Restriction"));
+        add(triples, r, uri(OWL + "onProperty"), property);
+        add(triples, r, uri(OWL + "someValuesFrom"), filler);
+        return r;
+    }
+
+    private static Node list(List<Triple> triples, Node... elements) {
+        Node head = uri(RDF + "nil");
+        for(int i = elements.length - 1; i >= 0; -- i) {
+            Node cell = NodeFactory.createBlankNode();
+            add(triples, cell, uri(RDF + "first"), elements[i]);
+            add(triples, cell, uri(RDF + "rest"), head);
+            head = cell;
+        }
+        return head;
+    }
+
+    private static void add(List<Triple> triples, Node s, Node p, Node o) {
+        triples.add(Triple.create(s, p, o));
+    }
+
+    private static Node uri(String uri) {
+        return NodeFactory.createURI(uri);
+    }
+
+    private static Node literal(String value) {
+        return NodeFactory.createLiteral(value);
+    }
+
+    private static List<Map<String, Object>> testcaseConfigs() throws IOException {
+
+        Path dir = Paths.get(System.getProperty("ols4.testcases", "testcases"));
+
+        if(!Files.isDirectory(dir)) {
+            throw new IOException("testcases not found at " + dir.toAbsolutePath() + " (run from the root of the repository, or set -Dols4.testcases)");
+        }
+
+        List<Path> configFiles;
+        try(Stream<Path> files = Files.walk(dir)) {
+            configFiles = files.filter(f -> f.toString().endsWith(".json")).sorted().collect(Collectors.toList());
+        }
+
+        Path root = dir.toAbsolutePath().getParent();
+
+        List<Map<String, Object>> configs = new ArrayList<>();
+
+        for(Path configFile : configFiles) {
+            try(Reader reader = Files.newBufferedReader(configFile, StandardCharsets.UTF_8)) {
+                Map<String, Object> config = (Map<String, Object>) new Gson().fromJson(reader, Object.class);
+                for(Object ontology : (List<Object>) config.get("ontologies")) {
+
+                    Map<String, Object> ontologyConfig = new LinkedHashMap<>((Map<String, Object>) ontology);
+                    String purl = (String) ontologyConfig.get("ontology_purl");
+
+                    if(purl == null || purl.contains("://")) {
+                        continue;
+                    }
+
+                    File file = root.resolve(purl).normalize().toFile();
+
+                    // some testcases refer to files that aren't there on purpose
+                    if(file.exists()) {
+                        ontologyConfig.put("ontology_purl", file.getPath());
+                        configs.add(ontologyConfig);
+                    }
+                }
+            }
+        }
+
+        return configs;
+    }
+}
@@ -0,0 +1,79 @@
+package uk.ac.ebi.rdf2json;
+
+import org.openjdk.jmh.annotations.*;
+import uk.ac.ebi.rdf2json.properties.PropertyValue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Comparing bnode class expressions (OntologyGraph.areSubgraphsIsomorphic), as done when
+// axioms are matched to the values they annotate. Every bnode value of every class is
+// compared with itself (the worst case, where the whole subgraph matches) and with the
+// next one (usually an early mismatch).
+//
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class IsomorphismBenchmark {
+
+    @Param({"chain", "wide", "reified", "testcases"})
+    String shape;
+
+    @Param({"10000"})
+    int size;
+
+    List<OntologyGraph> graphs;
+    List<List<PropertyValue>> bnodeValues;
+
+    @Setup
+    public void setup() throws IOException {
+
+        graphs = BenchmarkOntologies.load(BenchmarkOntologies.configs(shape, size));
+        bnodeValues = new ArrayList<>();
+
+        for(OntologyGraph graph : graphs) {
+            List<PropertyValue> values = new ArrayList<>();
+            for(OntologyNode node : graph.nodes.values()) {
+                if(node.uri == null) {
+                    continue;
+                }
+                for(String predicate : node.properties.getPropertyPredicates()) {
+                    for(PropertyValue value : node.properties.getPropertyValues(predicate)) {
+                        if(value.getType() == PropertyValue.Type.BNODE) {
+                            values.add(value);
+                        }
+                    }
+                }
+            }
+            bnodeValues.add(values);
+        }
+    }
+
+    @Benchmark
+    public int areSubgraphsIsomorphic() {
+
+        int isomorphic = 0;
+
+        for(int g = 0; g < graphs.size(); ++ g) {
+
+            OntologyGraph graph = graphs.get(g);
+            List<PropertyValue> values = bnodeValues.get(g);
+
+            for(int i = 0; i < values.size(); ++ i) {
+                if(graph.areSubgraphsIsomorphic(values.get(i), values.get(i))) {
+                    ++ isomorphic;
+                }
+                if(i + 1 < values.size() && graph.areSubgraphsIsomorphic(values.get(i), values.get(i + 1))) {
+                    ++ isomorphic;
+                }
+            }
+        }
+
+        return isomorphic;
+    }
+}
@@ -0,0 +1,64 @@
+package uk.ac.ebi.rdf2json;
+
+import org.openjdk.jmh.annotations.*;
+import uk.ac.ebi.rdf2json.properties.PropertySet;
+import uk.ac.ebi.rdf2json.properties.PropertyValue;
+import uk.ac.ebi.rdf2json.properties.PropertyValueLiteral;
+import uk.ac.ebi.rdf2json.properties.PropertyValueURI;
+
+import java.util.concurrent.TimeUnit;
+
+// Filling a PropertySet (PropertySet.addProperty), including the duplicate check done for
+// every value. Each value is added twice, as happens when an ontology and its imports
+// both have the same triple.
+//
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class PropertySetBenchmark {
+
+    @Param({"10"})
+    int predicates;
+
+    // 1 is the common case; PropertySet indexes predicates with 8 or more values
+    @Param({"1", "8", "1000"})
+    int valuesPerPredicate;
+
+    String[] predicateIris;
+    PropertyValue[][] values;
+
+    @Setup
+    public void setup() {
+
+        predicateIris = new String[predicates];
+        values = new PropertyValue[predicates][valuesPerPredicate];
+
+        for(int p = 0; p < predicates; ++ p) {
+            predicateIris[p] = BenchmarkOntologies.NS + "predicate_" + p;
+            for(int v = 0; v < valuesPerPredicate; ++ v) {
+                values[p][v] = v % 2 == 0 ?
+                        PropertyValueLiteral.fromString("value " + v) :
+                        new PropertyValueURI(BenchmarkOntologies.NS + "C_" + v);
+            }
+        }
+    }
+
+    @Benchmark
+    public PropertySet addProperty() {
+
+        PropertySet properties = new PropertySet();
+
+        for(int pass = 0; pass < 2; ++ pass) {
+            for(int p = 0; p < predicates; ++ p) {
+                for(int v = 0; v < valuesPerPredicate; ++ v) {
+                    properties.addProperty(predicateIris[p], values[p][v]);
+                }
+            }
+        }
+
+        return properties;
+    }
+}
@@ -0,0 +1,58 @@
+package uk.ac.ebi.rdf2json;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import uk.ac.ebi.rdf2json.helpers.RdfListEvaluator;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Evaluating every rdf:List in the graph (RdfListEvaluator.evaluateRdfList), as done when
+// lists are written and when class expressions are compared.
+//
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class RdfListBenchmark {
+
+    @Param({"chain", "wide", "reified", "testcases"})
+    String shape;
+
+    @Param({"10000"})
+    int size;
+
+    List<OntologyGraph> graphs;
+    List<List<OntologyNode>> lists;
+
+    @Setup
+    public void setup() throws IOException {
+
+        graphs = BenchmarkOntologies.load(BenchmarkOntologies.configs(shape, size));
+        lists = new ArrayList<>();
+
+        for(OntologyGraph graph : graphs) {
+            List<OntologyNode> graphLists = new ArrayList<>();
+            for(OntologyNode node : graph.nodes.values()) {
+                if(node.types.contains(OntologyNode.NodeType.RDF_LIST)) {
+                    graphLists.add(node);
+                }
+            }
+            lists.add(graphLists);
+        }
+    }
+
+    @Benchmark
+    public void evaluateRdfList(Blackhole blackhole) {
+        for(int g = 0; g < graphs.size(); ++ g) {
+            OntologyGraph graph = graphs.get(g);
+            for(OntologyNode list : lists.get(g)) {
+                blackhole.consume(RdfListEvaluator.evaluateRdfList(list, graph));
+            }
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package uk.ac.ebi.rdf2json;
+
+import org.apache.jena.graph.Triple;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Building the graph from already parsed triples (OntologyGraph.triple), without the parser
+// or the annotators.
+//
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class TripleBenchmark {
+
+    @Param({"chain", "wide", "reified", "testcases"})
+    String shape;
+
+    @Param({"10000"})
+    int size;
+
+    List<List<Triple>> files;
+
+    @Setup
+    public void setup() throws IOException {
+        files = BenchmarkOntologies.parse(BenchmarkOntologies.configs(shape, size));
+    }
+
+    @Benchmark
+    public void triple(Blackhole blackhole) {
+        for(List<Triple> triples : files) {
+            OntologyGraph graph = new OntologyGraph(true, null, null, null, 1);
+            for(Triple triple : triples) {
+                graph.triple(triple);
+            }
+            blackhole.consume(graph);
+        }
+    }
+}
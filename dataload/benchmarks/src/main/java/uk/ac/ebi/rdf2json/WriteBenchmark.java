@@ -0,0 +1,64 @@
+package uk.ac.ebi.rdf2json;
+
+import com.google.gson.stream.JsonWriter;
+import org.openjdk.jmh.annotations.*;
+import uk.ac.ebi.ols4.binaryjson.BinaryJson;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Writing loaded ontologies (OntologyGraph.write) to each output format, discarding the
+// output. With writeParallelism > 1 the entities are written as with --writeParallelism.
+//
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class WriteBenchmark {
+
+    @Param({"chain", "wide", "reified", "testcases"})
+    String shape;
+
+    @Param({"10000"})
+    int size;
+
+    @Param({"json", "compact", "binary"})
+    String format;
+
+    @Param({"1"})
+    int writeParallelism;
+
+    List<OntologyGraph> graphs;
+
+    @Setup
+    public void setup() throws IOException {
+
+        graphs = BenchmarkOntologies.load(BenchmarkOntologies.configs(shape, size));
+
+        for(OntologyGraph graph : graphs) {
+            graph.writeParallelism = writeParallelism;
+        }
+    }
+
+    @Benchmark
+    public void write() throws IOException {
+
+        JsonWriter writer = BinaryJson.createWriter(OutputStream.nullOutputStream(), format.equals("binary"), format.equals("compact"));
+
+        writer.beginObject();
+        writer.name("ontologies");
+        writer.beginArray();
+
+        for(OntologyGraph graph : graphs) {
+            graph.write(writer);
+        }
+
+        writer.endArray();
+        writer.endObject();
+        writer.close();
+    }
+}
@@ -0,0 +1,232 @@
+package uk.ac.ebi.ols4.binaryjson;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// A compact binary alternative to the intermediate ontologies JSON that is passed between
+// rdf2json, the linker, json2neo and json2solr.
+//
+// It is the same document as the JSON, token for token, so it is written with a
+// BinaryJsonWriter and read with a BinaryJsonReader, which stand in for Gson's JsonWriter and
+// JsonReader in the existing streaming code. The file is laid out as:
+//
+//   "OLSB" version
+//   the tokens of the document
+//   INDEX count (ontologyId offset length)*
+//   offset of INDEX, "OLSB"
+//
+// Every token is a tag byte, and names, strings and numbers are followed by a string. A
+// string is a varint reference into a dictionary of the strings seen so far: 0 means a
+// new string follows (varint length, then UTF-8) and is added to the dictionary, 1 means a
+// string follows which is not added, and n >= 2 is dictionary entry n - 2.
+//
+// Each ontology (an object in the top level array) starts with BEGIN_ONTOLOGY instead of
+// BEGIN_OBJECT, and the dictionary is emptied at its start and end, so an ontology can be
+// read (or copied into another file) on its own from the offset in the index.
+//
+// Each entity (an object in an array directly inside an ontology, e.g. "classes") is
+// written as a RECORD: a varint length, the strings the entity adds to the dictionary, and
+// then the entity itself. A reader can skip an entity without decoding it.
+//
+// Either format may also be compressed (see Compression), in which case the index can't be
+// used to seek to an ontology and the file has to be read from the start.
+//
+public class BinaryJson {
+
+    public static final String FILE_EXTENSION = ".olsbin";
+
+    // for reading and writing the intermediate files, which are often many GB
+    public static final int BUFFER_SIZE = 1024 * 1024;
+
+    static final byte[] MAGIC = { 'O', 'L', 'S', 'B' };
+    static final int VERSION = 1;
+
+    static final int BEGIN_OBJECT = 1;
+    static final int END_OBJECT = 2;
+    static final int BEGIN_ARRAY = 3;
+    static final int END_ARRAY = 4;
+    static final int NAME = 5;
+    static final int STRING = 6;
+    static final int NUMBER = 7;
+    static final int TRUE = 8;
+    static final int FALSE = 9;
+    static final int NULL = 10;
+    static final int BEGIN_ONTOLOGY = 11;
+    static final int RECORD = 12;
+    static final int INDEX = 13;
+
+    static final int NEW_STRING = 0;
+    static final int LITERAL_STRING = 1;
+    static final int FIRST_STRING_ID = 2;
+
+    // Strings longer than this (definitions, comments etc.) rarely repeat, and the
+    // dictionary of a single ontology is capped so it can't take over the heap.
+    static final int MAX_DICTIONARY_STRING_LENGTH = 256;
+    static final int MAX_DICTIONARY_SIZE = 1 << 20;
+
+    static final int TRAILER_LENGTH = 8 + MAGIC.length;
+
+    public static class IndexEntry {
+
+        public final String ontologyId;
+
+        // position of the BEGIN_ONTOLOGY tag, and the length of the ontology in bytes
+        public final long offset;
+        public final long length;
+
+        IndexEntry(String ontologyId, long offset, long length) {
+            this.ontologyId = ontologyId;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+
+    // Whether an output filename asks for the binary format rather than JSON.
+    //
+    public static boolean isBinaryPath(String path) {
+        return path.endsWith(FILE_EXTENSION);
+    }
+
+    // Whether an existing file is in the binary format, going by its first bytes rather
+    // than its name.
+    //
+    public static boolean isBinaryFile(String path) throws IOException {
+        try(InputStream is = openInput(path)) {
+            byte[] header = is.readNBytes(MAGIC.length);
+            return Arrays.equals(header, MAGIC);
+        }
+    }
+
+    // Whether an existing file (of either format) is compressed.
+    //
+    public static boolean isCompressedFile(String path) throws IOException {
+        try(BufferedInputStream is = new BufferedInputStream(new FileInputStream(path))) {
+            return Compression.detect(is) != Compression.NONE;
+        }
+    }
+
+    // Opens either format for reading, compressed or not.
+    //
+    public static JsonReader openReader(String path) throws IOException {
+        if(isBinaryFile(path)) {
+            return new BinaryJsonReader(openInput(path));
+        }
+        return new JsonReader(new InputStreamReader(openInput(path), StandardCharsets.UTF_8));
+    }
+
+    // Opens a file for writing in the format its name asks for (see isBinaryPath). JSON is
+    // indented unless compact is set.
+    //
+    public static JsonWriter openWriter(String path, boolean compact, Compression compression) throws IOException {
+        return createWriter(openOutput(path, compression), isBinaryPath(path), compact);
+    }
+
+    public static JsonWriter createWriter(OutputStream out, boolean binary, boolean compact) throws IOException {
+        if(binary) {
+            return new BinaryJsonWriter(out);
+        }
+        JsonWriter writer = new JsonWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        if(!compact) {
+            writer.setIndent("  ");
+        }
+        return writer;
+    }
+
+    // A buffered stream of the (decompressed) bytes of a file.
+    //
+    public static InputStream openInput(String path) throws IOException {
+        return Compression.decompress(new BufferedInputStream(new FileInputStream(path), BUFFER_SIZE));
+    }
+
+    public static OutputStream openOutput(String path, Compression compression) throws IOException {
+        return compression.compress(new BufferedOutputStream(new FileOutputStream(path), BUFFER_SIZE));
+    }
+
+    // The ontologies in a binary file, in the order they were written.
+    //
+    public static List<IndexEntry> readIndex(String path) throws IOException {
+
+        if(isCompressedFile(path)) {
+            throw new IOException(path + " is compressed, so its ontologies can only be read in order");
+        }
+
+        try(RandomAccessFile file = new RandomAccessFile(path, "r")) {
+
+            if(file.length() < MAGIC.length + 1 + TRAILER_LENGTH) {
+                throw new EOFException(path + " is too short to be a binary ontologies file");
+            }
+
+            file.seek(file.length() - TRAILER_LENGTH);
+            long indexOffset = file.readLong();
+            byte[] magic = new byte[MAGIC.length];
+            file.readFully(magic);
+
+            if(!Arrays.equals(magic, MAGIC)) {
+                throw new IOException(path + " has no ontology index (was it written completely?)");
+            }
+
+            byte[] indexBytes = new byte[(int) (file.length() - TRAILER_LENGTH - indexOffset)];
+            file.seek(indexOffset);
+            file.readFully(indexBytes);
+
+            try(ByteInput in = new ByteInput(new ByteArrayInputStream(indexBytes), indexOffset)) {
+
+                if(in.readByte() != INDEX) {
+                    throw new IOException("bad ontology index in " + path);
+                }
+
+                int count = in.readVarInt();
+                List<IndexEntry> index = new ArrayList<>(count);
+
+                for(int i = 0; i < count; ++ i) {
+                    String ontologyId = in.readLiteral();
+                    long offset = in.readLong();
+                    long length = in.readLong();
+                    index.add(new IndexEntry(ontologyId, offset, length));
+                }
+
+                return index;
+            }
+        }
+    }
+
+    // Opens a reader positioned at the start of one ontology in a binary file, or returns
+    // null if the file doesn't have it. The reader's document is the ontology object alone.
+    //
+    public static BinaryJsonReader openOntology(String path, String ontologyId) throws IOException {
+
+        for(IndexEntry entry : readIndex(path)) {
+
+            if(entry.ontologyId.equals(ontologyId)) {
+
+                FileInputStream is = new FileInputStream(path);
+                is.getChannel().position(entry.offset);
+
+                return new BinaryJsonReader(new ByteInput(is, entry.offset));
+            }
+        }
+
+        return null;
+    }
+
+    static byte[] utf8(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,363 @@
+package uk.ac.ebi.ols4.binaryjson;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static uk.ac.ebi.ols4.binaryjson.BinaryJson.*;
+
+// Reads the binary format (see BinaryJson) through the JsonReader API, so it can be passed to
+// code written against JsonReader. Skipping an entity with skipValue() jumps over its record
+// rather than decoding it.
+//
+// Gson's Map type adapters can't read from a JsonReader subclass (they rely on its
+// internals to read the keys), so read objects as Object.class rather than Map.class.
+//
+public class BinaryJsonReader extends JsonReader {
+
+    private static final Reader UNREADABLE_READER = new Reader() {
+        @Override
+        public int read(char[] buffer, int offset, int count) {
+            throw new AssertionError();
+        }
+        @Override
+        public void close() {
+            throw new AssertionError();
+        }
+    };
+
+    private static final int PEEKED_NONE = -1;
+    private static final int PEEKED_END_DOCUMENT = 0;
+
+    ByteInput in;
+
+    List<String> dictionary = new ArrayList<>();
+
+    // whether each open object is an ontology, whose end empties the dictionary
+    boolean[] stack = new boolean[32];
+    int depth = 0;
+
+    boolean finished = false;
+
+    int peeked = PEEKED_NONE;
+    String peekedString;
+
+    // if the peeked token starts a record, the position just past the record
+    long peekedRecordEnd = -1;
+
+    public BinaryJsonReader(InputStream in) throws IOException {
+
+        super(UNREADABLE_READER);
+        this.in = new ByteInput(in, 0);
+
+        byte[] magic = new byte[MAGIC.length];
+        for(int i = 0; i < magic.length; ++ i) {
+            magic[i] = (byte) this.in.readByte();
+        }
+        if(!Arrays.equals(magic, MAGIC)) {
+            throw new IOException("not a binary ontologies file");
+        }
+
+        int version = this.in.readByte();
+        if(version != VERSION) {
+            throw new IOException("unsupported binary ontologies file version " + version);
+        }
+    }
+
+    // Reads a single ontology, starting at its BEGIN_ONTOLOGY tag (see BinaryJson.openOntology)
+    //
+    BinaryJsonReader(ByteInput in) {
+        super(UNREADABLE_READER);
+        this.in = in;
+    }
+
+    @Override
+    public JsonToken peek() throws IOException {
+
+        switch(peekTag()) {
+            case BEGIN_OBJECT:
+            case BEGIN_ONTOLOGY:
+                return JsonToken.BEGIN_OBJECT;
+            case END_OBJECT:
+                return JsonToken.END_OBJECT;
+            case BEGIN_ARRAY:
+                return JsonToken.BEGIN_ARRAY;
+            case END_ARRAY:
+                return JsonToken.END_ARRAY;
+            case NAME:
+                return JsonToken.NAME;
+            case STRING:
+                return JsonToken.STRING;
+            case NUMBER:
+                return JsonToken.NUMBER;
+            case TRUE:
+            case FALSE:
+                return JsonToken.BOOLEAN;
+            case NULL:
+                return JsonToken.NULL;
+            case PEEKED_END_DOCUMENT:
+                return JsonToken.END_DOCUMENT;
+            default:
+                throw new IOException("bad tag " + peeked + " at offset " + in.position());
+        }
+    }
+
+    @Override
+    public boolean hasNext() throws IOException {
+        int p = peekTag();
+        return p != END_OBJECT && p != END_ARRAY && p != PEEKED_END_DOCUMENT;
+    }
+
+    @Override
+    public void beginObject() throws IOException {
+        int p = peekTag();
+        if(p != BEGIN_OBJECT && p != BEGIN_ONTOLOGY) {
+            throw unexpected(JsonToken.BEGIN_OBJECT);
+        }
+        consume();
+        push(p == BEGIN_ONTOLOGY);
+    }
+
+    @Override
+    public void endObject() throws IOException {
+        expect(END_OBJECT, JsonToken.END_OBJECT);
+        if(stack[-- depth]) {
+            dictionary.clear();
+        }
+        afterValue();
+    }
+
+    @Override
+    public void beginArray() throws IOException {
+        expect(BEGIN_ARRAY, JsonToken.BEGIN_ARRAY);
+        push(false);
+    }
+
+    @Override
+    public void endArray() throws IOException {
+        expect(END_ARRAY, JsonToken.END_ARRAY);
+        -- depth;
+        afterValue();
+    }
+
+    @Override
+    public String nextName() throws IOException {
+        expect(NAME, JsonToken.NAME);
+        return peekedString;
+    }
+
+    @Override
+    public String nextString() throws IOException {
+        int p = peekTag();
+        if(p != STRING && p != NUMBER) {
+            throw unexpected(JsonToken.STRING);
+        }
+        consume();
+        afterValue();
+        return peekedString;
+    }
+
+    @Override
+    public boolean nextBoolean() throws IOException {
+        int p = peekTag();
+        if(p != TRUE && p != FALSE) {
+            throw unexpected(JsonToken.BOOLEAN);
+        }
+        consume();
+        afterValue();
+        return p == TRUE;
+    }
+
+    @Override
+    public void nextNull() throws IOException {
+        expect(NULL, JsonToken.NULL);
+        afterValue();
+    }
+
+    @Override
+    public double nextDouble() throws IOException {
+        int p = peekTag();
+        if(p != STRING && p != NUMBER) {
+            throw unexpected(JsonToken.NUMBER);
+        }
+        double value = Double.parseDouble(peekedString);
+        consume();
+        afterValue();
+        return value;
+    }
+
+    @Override
+    public long nextLong() throws IOException {
+        int p = peekTag();
+        if(p != STRING && p != NUMBER) {
+            throw unexpected(JsonToken.NUMBER);
+        }
+        long value;
+        try {
+            value = Long.parseLong(peekedString);
+        } catch(NumberFormatException e) {
+            double asDouble = Double.parseDouble(peekedString);
+            value = (long) asDouble;
+            if(value != asDouble) {
+                throw new NumberFormatException("Expected a long but was " + peekedString + " at offset " + in.position());
+            }
+        }
+        consume();
+        afterValue();
+        return value;
+    }
+
+    @Override
+    public int nextInt() throws IOException {
+        long value = nextLong();
+        if(value != (int) value) {
+            throw new NumberFormatException("Expected an int but was " + value + " at offset " + in.position());
+        }
+        return (int) value;
+    }
+
+    @Override
+    public void skipValue() throws IOException {
+
+        int first = peekTag();
+        int count = 0;
+
+        do {
+            int p = peekTag();
+
+            if(peekedRecordEnd != -1) {
+                // a whole entity; its strings have already been added to the dictionary
+                in.skipTo(peekedRecordEnd);
+            } else if(p == BEGIN_OBJECT || p == BEGIN_ONTOLOGY || p == BEGIN_ARRAY) {
+                ++ count;
+            } else if(p == END_OBJECT || p == END_ARRAY) {
+                -- count;
+            } else if(p == PEEKED_END_DOCUMENT) {
+                throw unexpected(JsonToken.END_DOCUMENT);
+            }
+
+            consume();
+
+        } while(count > 0);
+
+        if(count < 0) {
+            throw new IllegalStateException("skipValue() at the end of an object or array at offset " + in.position());
+        }
+
+        if(first == BEGIN_ONTOLOGY) {
+            dictionary.clear();
+        }
+
+        if(first != NAME) {
+            afterValue();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        peeked = PEEKED_NONE;
+        in.close();
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + " at offset " + in.position();
+    }
+
+    private int peekTag() throws IOException {
+
+        if(peeked != PEEKED_NONE) {
+            return peeked;
+        }
+
+        if(finished) {
+            peeked = PEEKED_END_DOCUMENT;
+            return peeked;
+        }
+
+        int tag = in.readByte();
+
+        if(tag == RECORD) {
+
+            long length = in.readVarLong();
+            peekedRecordEnd = in.position() + length;
+
+            int numStrings = in.readVarInt();
+            for(int i = 0; i < numStrings; ++ i) {
+                dictionary.add(in.readLiteral());
+            }
+
+            tag = in.readByte();
+        }
+
+        switch(tag) {
+            case NAME:
+            case STRING:
+            case NUMBER:
+                peekedString = readString();
+                break;
+            case BEGIN_ONTOLOGY:
+                dictionary.clear();
+                break;
+        }
+
+        peeked = tag;
+        return peeked;
+    }
+
+    private String readString() throws IOException {
+
+        int ref = in.readVarInt();
+
+        if(ref == NEW_STRING) {
+            String s = in.readLiteral();
+            dictionary.add(s);
+            return s;
+        }
+
+        if(ref == LITERAL_STRING) {
+            return in.readLiteral();
+        }
+
+        int id = ref - FIRST_STRING_ID;
+        if(id >= dictionary.size()) {
+            throw new IOException("bad string reference " + id + " at offset " + in.position());
+        }
+        return dictionary.get(id);
+    }
+
+    private void expect(int tag, JsonToken token) throws IOException {
+        if(peekTag() != tag) {
+            throw unexpected(token);
+        }
+        consume();
+    }
+
+    private void consume() {
+        peeked = PEEKED_NONE;
+        peekedRecordEnd = -1;
+    }
+
+    private void afterValue() {
+        if(depth == 0) {
+            finished = true;
+        }
+    }
+
+    private void push(boolean isOntology) {
+        if(depth == stack.length) {
+            stack = Arrays.copyOf(stack, depth * 2);
+        }
+        stack[depth ++] = isOntology;
+    }
+
+    private IllegalStateException unexpected(JsonToken expected) throws IOException {
+        return new IllegalStateException("Expected " + expected + " but was " + peek() + " at offset " + in.position());
+    }
+}
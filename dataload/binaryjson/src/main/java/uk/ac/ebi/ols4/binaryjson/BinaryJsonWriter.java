@@ -0,0 +1,408 @@
+package uk.ac.ebi.ols4.binaryjson;
+
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static uk.ac.ebi.ols4.binaryjson.BinaryJson.*;
+
+// Writes the binary format (see BinaryJson) through the JsonWriter API, so it can be passed
+// to code written against JsonWriter. setIndent() etc. have no effect, and jsonValue() is
+// not supported as there is no way to encode raw JSON.
+//
+public class BinaryJsonWriter extends JsonWriter {
+
+    static final int FLUSH_SIZE = 64 * 1024;
+
+    private static final Writer UNWRITABLE_WRITER = new Writer() {
+        @Override
+        public void write(char[] buffer, int offset, int counter) {
+            throw new AssertionError();
+        }
+        @Override
+        public void flush() {
+            throw new AssertionError();
+        }
+        @Override
+        public void close() {
+            throw new AssertionError();
+        }
+    };
+
+    static final int OBJECT = 1;
+    static final int ARRAY = 2;
+    static final int ONTOLOGY = 3;
+
+    OutputStream out;
+
+    // bytes written to out so far
+    long written = 0;
+
+    // tokens outside of records, not yet written to out
+    ByteOutput pending = new ByteOutput(FLUSH_SIZE * 2);
+
+    // the entity currently being written, and the strings it added to the dictionary
+    ByteOutput record = new ByteOutput(FLUSH_SIZE);
+    ByteOutput recordHeader = new ByteOutput(FLUSH_SIZE);
+    List<String> recordStrings = new ArrayList<>();
+    int recordDepth = -1;
+
+    Map<String, Integer> dictionary = new HashMap<>();
+
+    int[] stack = new int[32];
+    int depth = 0;
+
+    String deferredName;
+
+    // the ontology currently being written
+    long ontologyOffset;
+    String ontologyId;
+    boolean nextValueIsOntologyId;
+
+    List<IndexEntry> index = new ArrayList<>();
+
+    public BinaryJsonWriter(OutputStream out) throws IOException {
+        super(UNWRITABLE_WRITER);
+        this.out = out;
+        pending.write(MAGIC, 0, MAGIC.length);
+        pending.writeByte(VERSION);
+    }
+
+    // The position in the file the next token will be written at. Only meaningful between
+    // ontologies and entities, e.g. to find where an ontology starts and ends.
+    //
+    public long getPosition() {
+        return written + pending.size();
+    }
+
+    @Override
+    public JsonWriter beginArray() throws IOException {
+        writeDeferredName();
+        target().writeByte(BEGIN_ARRAY);
+        push(ARRAY);
+        return this;
+    }
+
+    @Override
+    public JsonWriter endArray() throws IOException {
+        return close(ARRAY, END_ARRAY);
+    }
+
+    @Override
+    public JsonWriter beginObject() throws IOException {
+
+        writeDeferredName();
+
+        if(depth == 2 && stack[1] == ARRAY && stack[0] == OBJECT) {
+
+            dictionary.clear();
+            ontologyOffset = getPosition();
+            ontologyId = null;
+
+            pending.writeByte(BEGIN_ONTOLOGY);
+            push(ONTOLOGY);
+            return this;
+        }
+
+        if(depth == 4 && stack[3] == ARRAY && stack[2] == ONTOLOGY) {
+            recordDepth = depth;
+        }
+
+        target().writeByte(BEGIN_OBJECT);
+        push(OBJECT);
+        return this;
+    }
+
+    @Override
+    public JsonWriter endObject() throws IOException {
+        return close(depth > 0 && stack[depth - 1] == ONTOLOGY ? ONTOLOGY : OBJECT, END_OBJECT);
+    }
+
+    @Override
+    public JsonWriter name(String name) throws IOException {
+        if(name == null) {
+            throw new NullPointerException("name == null");
+        }
+        if(deferredName != null || depth == 0 || stack[depth - 1] == ARRAY) {
+            throw new IllegalStateException();
+        }
+        deferredName = name;
+        return this;
+    }
+
+    @Override
+    public JsonWriter value(String value) throws IOException {
+
+        if(value == null) {
+            return nullValue();
+        }
+
+        writeDeferredName();
+
+        if(nextValueIsOntologyId) {
+            ontologyId = value;
+        }
+
+        ByteOutput target = target();
+        target.writeByte(STRING);
+        writeString(target, value);
+        afterValue();
+        return this;
+    }
+
+    @Override
+    public JsonWriter jsonValue(String value) {
+        throw new UnsupportedOperationException("raw JSON cannot be written to the binary format");
+    }
+
+    @Override
+    public JsonWriter nullValue() throws IOException {
+
+        if(deferredName != null) {
+            if(!getSerializeNulls()) {
+                deferredName = null;
+                nextValueIsOntologyId = false;
+                return this;
+            }
+            writeDeferredName();
+        }
+
+        target().writeByte(NULL);
+        afterValue();
+        return this;
+    }
+
+    @Override
+    public JsonWriter value(boolean value) throws IOException {
+        writeDeferredName();
+        target().writeByte(value ? TRUE : FALSE);
+        afterValue();
+        return this;
+    }
+
+    @Override
+    public JsonWriter value(Boolean value) throws IOException {
+        if(value == null) {
+            return nullValue();
+        }
+        return value(value.booleanValue());
+    }
+
+    @Override
+    public JsonWriter value(double value) throws IOException {
+        if(!isLenient() && (Double.isNaN(value) || Double.isInfinite(value))) {
+            throw new IllegalArgumentException("Numeric values must be finite, but was " + value);
+        }
+        return number(Double.toString(value));
+    }
+
+    @Override
+    public JsonWriter value(long value) throws IOException {
+        return number(Long.toString(value));
+    }
+
+    @Override
+    public JsonWriter value(Number value) throws IOException {
+
+        if(value == null) {
+            return nullValue();
+        }
+
+        String string = value.toString();
+        if(!isLenient() && (string.equals("-Infinity") || string.equals("Infinity") || string.equals("NaN"))) {
+            throw new IllegalArgumentException("Numeric values must be finite, but was " + value);
+        }
+        return number(string);
+    }
+
+    // Copies an ontology that is already in the binary format, e.g. one written to a
+    // separate file by another BinaryJsonWriter, as the next element of the top level array.
+    // [start, end) must be the bytes of the ontology as given by its index entry (or by
+    // getPosition() before and after writing it).
+    //
+    public void appendOntology(String ontologyId, FileChannel source, long start, long end) throws IOException {
+
+        if(depth != 2 || stack[1] != ARRAY || stack[0] != OBJECT) {
+            throw new IllegalStateException("ontologies can only be appended to the top level array");
+        }
+
+        flushPending();
+
+        ByteBuffer buf = ByteBuffer.allocate(FLUSH_SIZE);
+
+        for(long pos = start; pos < end; ) {
+
+            buf.clear();
+            buf.limit((int) Math.min(buf.capacity(), end - pos));
+
+            int n = source.read(buf, pos);
+            if(n <= 0) {
+                throw new IOException("unexpected end of ontology being appended");
+            }
+
+            out.write(buf.array(), 0, n);
+            pos += n;
+        }
+
+        index.add(new IndexEntry(ontologyId, written, end - start));
+        written += end - start;
+
+        // the appended ontology leaves the reader's dictionary empty, as any ontology does
+        dictionary.clear();
+    }
+
+    @Override
+    public void flush() throws IOException {
+        flushPending();
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+
+        if(depth != 0 || deferredName != null) {
+            throw new IOException("Incomplete document");
+        }
+
+        long indexOffset = getPosition();
+
+        pending.writeByte(INDEX);
+        pending.writeVarLong(index.size());
+        for(IndexEntry entry : index) {
+            pending.writeLiteral(entry.ontologyId);
+            pending.writeLong(entry.offset);
+            pending.writeLong(entry.length);
+        }
+        pending.writeLong(indexOffset);
+        pending.write(MAGIC, 0, MAGIC.length);
+
+        flushPending();
+        out.close();
+    }
+
+    private JsonWriter number(String value) throws IOException {
+        writeDeferredName();
+        ByteOutput target = target();
+        target.writeByte(NUMBER);
+        writeString(target, value);
+        afterValue();
+        return this;
+    }
+
+    private JsonWriter close(int kind, int tag) throws IOException {
+
+        if(depth == 0 || stack[depth - 1] != kind || deferredName != null) {
+            throw new IllegalStateException("Nesting problem.");
+        }
+
+        target().writeByte(tag);
+        -- depth;
+
+        if(depth == recordDepth) {
+            finishRecord();
+        }
+
+        if(kind == ONTOLOGY) {
+            if(ontologyId != null) {
+                index.add(new IndexEntry(ontologyId, ontologyOffset, getPosition() - ontologyOffset));
+            }
+            dictionary.clear();
+        }
+
+        afterValue();
+        return this;
+    }
+
+    private void push(int kind) {
+        if(depth == stack.length) {
+            stack = Arrays.copyOf(stack, depth * 2);
+        }
+        stack[depth ++] = kind;
+    }
+
+    private void writeDeferredName() {
+
+        nextValueIsOntologyId = false;
+
+        if(deferredName != null) {
+
+            ByteOutput target = target();
+            target.writeByte(NAME);
+            writeString(target, deferredName);
+
+            nextValueIsOntologyId = depth == 3 && stack[2] == ONTOLOGY && deferredName.equals("ontologyId");
+            deferredName = null;
+        }
+    }
+
+    private void writeString(ByteOutput target, String s) {
+
+        Integer id = dictionary.get(s);
+
+        if(id != null) {
+            target.writeVarLong(FIRST_STRING_ID + id);
+            return;
+        }
+
+        if(s.length() > MAX_DICTIONARY_STRING_LENGTH || dictionary.size() >= MAX_DICTIONARY_SIZE) {
+            target.writeVarLong(LITERAL_STRING);
+            target.writeLiteral(s);
+            return;
+        }
+
+        id = dictionary.size();
+        dictionary.put(s, id);
+
+        if(recordDepth != -1) {
+            // the string goes in the record header, so it can be skipped over
+            recordStrings.add(s);
+            target.writeVarLong(FIRST_STRING_ID + id);
+        } else {
+            target.writeVarLong(NEW_STRING);
+            target.writeLiteral(s);
+        }
+    }
+
+    private void finishRecord() throws IOException {
+
+        recordHeader.reset();
+        recordHeader.writeVarLong(recordStrings.size());
+        for(String s : recordStrings) {
+            recordHeader.writeLiteral(s);
+        }
+
+        pending.writeByte(RECORD);
+        pending.writeVarLong(recordHeader.size() + record.size());
+        recordHeader.writeTo(pending);
+        record.writeTo(pending);
+
+        record.reset();
+        recordStrings.clear();
+        recordDepth = -1;
+    }
+
+    private void afterValue() throws IOException {
+        if(recordDepth == -1 && pending.size() >= FLUSH_SIZE) {
+            flushPending();
+        }
+    }
+
+    private ByteOutput target() {
+        return recordDepth != -1 ? record : pending;
+    }
+
+    private void flushPending() throws IOException {
+        pending.writeTo(out);
+        written += pending.size();
+        pending.reset();
+    }
+}
@@ -0,0 +1,140 @@
+package uk.ac.ebi.ols4.binaryjson;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+// Buffered reading of the primitives of the binary format, keeping track of the position
+// in the file so that records can be skipped.
+//
+class ByteInput implements Closeable {
+
+    static final int BUFFER_SIZE = 64 * 1024;
+
+    InputStream in;
+
+    byte[] buf = new byte[BUFFER_SIZE];
+    int pos = 0;
+    int limit = 0;
+
+    // position in the file of buf[0]
+    long bufferStart;
+
+    ByteInput(InputStream in, long position) {
+        this.in = in;
+        this.bufferStart = position;
+    }
+
+    long position() {
+        return bufferStart + pos;
+    }
+
+    int readByte() throws IOException {
+        if(pos == limit && !fill()) {
+            throw new EOFException("unexpected end of binary ontologies file at offset " + position());
+        }
+        return buf[pos ++] & 0xff;
+    }
+
+    int readVarInt() throws IOException {
+        long value = readVarLong();
+        if(value > Integer.MAX_VALUE) {
+            throw new IOException("varint out of range at offset " + position());
+        }
+        return (int) value;
+    }
+
+    long readVarLong() throws IOException {
+        long value = 0;
+        for(int shift = 0; ; shift += 7) {
+            int b = readByte();
+            value |= (long) (b & 0x7f) << shift;
+            if((b & 0x80) == 0) {
+                return value;
+            }
+        }
+    }
+
+    long readLong() throws IOException {
+        long value = 0;
+        for(int i = 0; i < 8; ++ i) {
+            value = (value << 8) | readByte();
+        }
+        return value;
+    }
+
+    String readLiteral() throws IOException {
+
+        int length = readVarInt();
+
+        if(limit - pos >= length) {
+            String s = new String(buf, pos, length, StandardCharsets.UTF_8);
+            pos += length;
+            return s;
+        }
+
+        byte[] bytes = new byte[length];
+        for(int n = 0; n < length; ) {
+            if(pos == limit && !fill()) {
+                throw new EOFException("unexpected end of binary ontologies file at offset " + position());
+            }
+            int chunk = Math.min(length - n, limit - pos);
+            System.arraycopy(buf, pos, bytes, n, chunk);
+            pos += chunk;
+            n += chunk;
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    void skipTo(long position) throws IOException {
+
+        if(position < position()) {
+            throw new IOException("cannot skip backwards to offset " + position);
+        }
+
+        if(position <= bufferStart + limit) {
+            pos = (int) (position - bufferStart);
+            return;
+        }
+
+        long remaining = position - (bufferStart + limit);
+
+        while(remaining > 0) {
+            long skipped = in.skip(remaining);
+            if(skipped <= 0) {
+                if(in.read() == -1) {
+                    throw new EOFException("unexpected end of binary ontologies file skipping to offset " + position);
+                }
+                skipped = 1;
+            }
+            remaining -= skipped;
+        }
+
+        bufferStart = position;
+        pos = 0;
+        limit = 0;
+    }
+
+    private boolean fill() throws IOException {
+
+        bufferStart += limit;
+        pos = 0;
+        limit = 0;
+
+        int n = in.read(buf, 0, buf.length);
+
+        if(n <= 0) {
+            return false;
+        }
+
+        limit = n;
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
@@ -0,0 +1,36 @@
+package uk.ac.ebi.ols4.binaryjson;
+
+import java.io.ByteArrayOutputStream;
+
+// A growable buffer with the primitives of the binary format.
+//
+class ByteOutput extends ByteArrayOutputStream {
+
+    ByteOutput(int size) {
+        super(size);
+    }
+
+    void writeByte(int b) {
+        write(b);
+    }
+
+    void writeVarLong(long value) {
+        while((value & ~0x7fL) != 0) {
+            write((int) ((value & 0x7f) | 0x80));
+            value >>>= 7;
+        }
+        write((int) value);
+    }
+
+    void writeLong(long value) {
+        for(int shift = 56; shift >= 0; shift -= 8) {
+            write((int) (value >>> shift));
+        }
+    }
+
+    void writeLiteral(String s) {
+        byte[] bytes = BinaryJson.utf8(s);
+        writeVarLong(bytes.length);
+        write(bytes, 0, bytes.length);
+    }
+}
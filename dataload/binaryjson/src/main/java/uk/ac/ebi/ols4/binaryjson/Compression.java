@@ -0,0 +1,93 @@
+package uk.ac.ebi.ols4.binaryjson;
+
+import com.github.luben.zstd.ZstdInputStream;
+import com.github.luben.zstd.ZstdOutputStream;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+// Optional compression of the intermediate files (either format) passed between rdf2json,
+// the linker, json2neo and json2solr. Writers choose it with --compression; readers
+// recognise it from the first bytes of the file, so nothing needs to be told what a file
+// was written with.
+//
+public enum Compression {
+
+    NONE,
+    GZIP,
+    ZSTD;
+
+    static final byte[] GZIP_MAGIC = { (byte) 0x1f, (byte) 0x8b };
+    static final byte[] ZSTD_MAGIC = { (byte) 0x28, (byte) 0xb5, (byte) 0x2f, (byte) 0xfd };
+
+    // zstd's default level; higher levels are much slower for a few percent
+    static final int ZSTD_LEVEL = 3;
+
+    static final int GZIP_BUFFER_SIZE = 64 * 1024;
+
+    // The value of a --compression option (none, gzip or zstd; null means none)
+    //
+    public static Compression fromOption(String value) {
+
+        if(value == null) {
+            return NONE;
+        }
+
+        try {
+            return valueOf(value.toUpperCase());
+        } catch(IllegalArgumentException e) {
+            throw new IllegalArgumentException("unknown compression " + value + " (expected none, gzip or zstd)");
+        }
+    }
+
+    public OutputStream compress(OutputStream out) throws IOException {
+        switch(this) {
+            case GZIP:
+                return new GZIPOutputStream(out, GZIP_BUFFER_SIZE);
+            case ZSTD:
+                return new ZstdOutputStream(out, ZSTD_LEVEL);
+            default:
+                return out;
+        }
+    }
+
+    // Which compression a stream was written with. The stream must support mark(), and is
+    // left where it was.
+    //
+    public static Compression detect(InputStream in) throws IOException {
+
+        in.mark(ZSTD_MAGIC.length);
+        byte[] header = in.readNBytes(ZSTD_MAGIC.length);
+        in.reset();
+
+        if(startsWith(header, ZSTD_MAGIC)) {
+            return ZSTD;
+        }
+        if(startsWith(header, GZIP_MAGIC)) {
+            return GZIP;
+        }
+        return NONE;
+    }
+
+    // Decompresses a stream with whichever compression it was written with.
+    //
+    public static InputStream decompress(BufferedInputStream in) throws IOException {
+        switch(detect(in)) {
+            case GZIP:
+                return new GZIPInputStream(in, GZIP_BUFFER_SIZE);
+            case ZSTD:
+                return new ZstdInputStream(in);
+            default:
+                return in;
+        }
+    }
+
+    private static boolean startsWith(byte[] bytes, byte[] prefix) {
+        return bytes.length >= prefix.length && Arrays.equals(bytes, 0, prefix.length, prefix, 0, prefix.length);
+    }
+}
@@ -10,16 +10,34 @@ SCRIPT_PATH=$(dirname $(readlink -f $0))
 CONFIG_URL=$1
 OUTDIR=$2
 
-JSON_PATH=$OUTDIR/ontologies.json
-JSON_PATH_LINKED=$OUTDIR/ontologies_linked.json
+# BINARY_INTERMEDIATE=true passes the ontologies between the stages in the compact binary
+# format (see binaryjson) rather than as JSON
+if [ "$BINARY_INTERMEDIATE" == "true" ]; then
+    JSON_PATH=$OUTDIR/ontologies.olsbin
+    JSON_PATH_LINKED=$OUTDIR/ontologies_linked.olsbin
+else
+    JSON_PATH=$OUTDIR/ontologies.json
+    JSON_PATH_LINKED=$OUTDIR/ontologies_linked.json
+fi
+
+# COMPACT_INTERMEDIATE=true writes the JSON without indentation, and
+# INTERMEDIATE_COMPRESSION=gzip or zstd compresses the intermediate files (json2neo and
+# json2solr recognise compressed input by themselves)
+INTERMEDIATE_ARGS=()
+if [ "$COMPACT_INTERMEDIATE" == "true" ]; then
+    INTERMEDIATE_ARGS+=(--compact)
+fi
+if [ -n "$INTERMEDIATE_COMPRESSION" ]; then
+    INTERMEDIATE_ARGS+=(--compression "$INTERMEDIATE_COMPRESSION")
+fi
 
 rm -f $OUTDIR/*
 
 echo rdf2json
-java -DentityExpansionLimit=0 -DtotalEntitySizeLimit=0 -Djdk.xml.totalEntitySizeLimit=0 -Djdk.xml.entityExpansionLimit=0 -jar $SCRIPT_PATH/rdf2json/target/rdf2json-1.0-SNAPSHOT.jar --config "$CONFIG_URL" --output "$JSON_PATH" "${@:3}"
+java -DentityExpansionLimit=0 -DtotalEntitySizeLimit=0 -Djdk.xml.totalEntitySizeLimit=0 -Djdk.xml.entityExpansionLimit=0 -jar $SCRIPT_PATH/rdf2json/target/rdf2json-1.0-SNAPSHOT.jar --config "$CONFIG_URL" --output "$JSON_PATH" "${INTERMEDIATE_ARGS[@]}" "${@:3}"
 
 echo linker
-java -jar $SCRIPT_PATH/linker/target/linker-1.0-SNAPSHOT.jar --input "$JSON_PATH" --output "$JSON_PATH_LINKED"
+java -jar $SCRIPT_PATH/linker/target/linker-1.0-SNAPSHOT.jar --input "$JSON_PATH" --output "$JSON_PATH_LINKED" "${INTERMEDIATE_ARGS[@]}"
 
 echo json2neo
 java -jar $SCRIPT_PATH/json2neo/target/json2neo-1.0-SNAPSHOT.jar --input "$JSON_PATH_LINKED" --outDir $OUTDIR
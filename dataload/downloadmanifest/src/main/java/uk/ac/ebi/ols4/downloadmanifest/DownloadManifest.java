@@ -0,0 +1,216 @@
+package uk.ac.ebi.ols4.downloadmanifest;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+// What the predownloader downloaded, written to manifest.json in the download path at the
+// end of each run.
+//
+// For each URL it records the file it was saved to, the size, modification time and
+// SHA-256 of that file, when the server was last asked for it and what happened, the HTTP
+// validators, and the imports found in it, which together with the ontologies from the
+// configs give the import graph.
+//
+// Later stages read the manifest (read) to find out what changed without reading the
+// files themselves: getSha256 gives the hash of a downloaded file straight from the
+// manifest as long as the file is still the one the manifest describes, and
+// getImportClosure gives the files an ontology is loaded from.
+//
+public class DownloadManifest {
+
+    public static final String FILENAME = "manifest.json";
+
+    public static final String DOWNLOADED = "downloaded";
+    public static final String RESUMED = "resumed";
+    public static final String NOT_MODIFIED = "not modified";
+    public static final String FAILED = "failed";
+
+    private static final Gson gson = new GsonBuilder().setPrettyPrinting().disableHtmlEscaping().create();
+
+    public static class Entry {
+
+        public String url;
+
+        // the name of the file in the download path
+        public String file;
+
+        public long size;
+        public String sha256;
+
+        // of the file, in ms since the epoch; if it has changed since, so may the contents
+        public long modified;
+
+        // when the server was last asked for the file (ISO-8601), and with what outcome:
+        // DOWNLOADED, RESUMED, NOT_MODIFIED or FAILED. A file that failed may still be there
+        // from an earlier run, in which case the size etc. are of that file.
+        public String fetched;
+        public String status;
+
+        public String etag;
+        public String lastModified;
+        public String contentType;
+
+        public List<String> imports = new ArrayList<>();
+    }
+
+    // the URLs of the ontologies in the configs
+    public List<String> ontologies = new ArrayList<>();
+
+    public Map<String, Entry> files = new TreeMap<>();
+
+    private transient Path downloadPath;
+
+    public DownloadManifest(Path downloadPath) {
+        this.downloadPath = downloadPath;
+    }
+
+    // for gson
+    private DownloadManifest() {
+    }
+
+    // The manifest in downloadPath, or null if there isn't one
+    //
+    public static DownloadManifest read(String downloadPath) throws IOException {
+
+        Path path = Paths.get(downloadPath, FILENAME);
+
+        if(!Files.exists(path)) {
+            return null;
+        }
+
+        DownloadManifest manifest;
+
+        try(Reader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            manifest = gson.fromJson(reader, DownloadManifest.class);
+        }
+
+        manifest.downloadPath = Paths.get(downloadPath);
+        return manifest;
+    }
+
+    // Replaces the manifest in the download path, so that a reader never sees half of one
+    //
+    public void write() throws IOException {
+
+        Path path = downloadPath.resolve(FILENAME);
+        Path temp = downloadPath.resolve(FILENAME + ".tmp");
+
+        try(Writer writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+            gson.toJson(this, writer);
+        }
+
+        Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    public synchronized void add(Entry entry) {
+        files.put(entry.url, entry);
+    }
+
+    public synchronized Entry get(String url) {
+        return files.get(url);
+    }
+
+    // The SHA-256 of file, which was downloaded from url: from the manifest if the file is
+    // still the one the manifest describes (same place, size and modification time), and
+    // otherwise worked out from the file.
+    //
+    public String getSha256(String url, File file) throws IOException {
+
+        Entry entry = get(url);
+
+        if(entry != null && entry.sha256 != null && isFile(entry, file.toPath())) {
+            return entry.sha256;
+        }
+
+        return sha256(file.toPath());
+    }
+
+    // Whether path is the file the entry describes
+    //
+    boolean isFile(Entry entry, Path path) throws IOException {
+
+        if(entry.file == null || !Files.isRegularFile(path)) {
+            return false;
+        }
+
+        return path.toAbsolutePath().normalize().equals(downloadPath.resolve(entry.file).toAbsolutePath().normalize())
+                && Files.size(path) == entry.size
+                && Files.getLastModifiedTime(path).toMillis() == entry.modified;
+    }
+
+    // url and everything it imports, directly or indirectly, in the order they were found
+    //
+    public Set<String> getImportClosure(String url) {
+
+        Set<String> closure = new LinkedHashSet<>();
+        Deque<String> queue = new ArrayDeque<>();
+
+        queue.add(url);
+
+        while(!queue.isEmpty()) {
+
+            String next = queue.remove();
+
+            if(!closure.add(next)) {
+                continue;
+            }
+
+            Entry entry = get(next);
+
+            if(entry != null) {
+                queue.addAll(entry.imports);
+            }
+        }
+
+        return closure;
+    }
+
+    public Collection<Entry> getEntries() {
+        return files.values();
+    }
+
+    public static String sha256(Path path) throws IOException {
+
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch(NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+
+        byte[] buf = new byte[1024 * 1024];
+        try(InputStream is = Files.newInputStream(path)) {
+            for(int n; (n = is.read(buf)) > 0; ) {
+                digest.update(buf, 0, n);
+            }
+        }
+
+        StringBuilder sb = new StringBuilder();
+        for(byte b : digest.digest()) {
+            sb.append(String.format("%02x", b));
+        }
+        return sb.toString();
+    }
+}
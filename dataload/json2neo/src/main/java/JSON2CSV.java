@@ -18,7 +18,7 @@ public class JSON2CSV {
 
         Options options = new Options();
 
-        Option input = new Option(null, "input", true, "ontologies JSON input filename");
+        Option input = new Option(null, "input", true, "ontologies JSON (or binary, optionally gzip or zstd compressed) input filename");
         input.setRequired(true);
         options.addOption(input);
 
@@ -4,6 +4,7 @@ import com.google.gson.stream.JsonToken;
 import org.apache.commons.cli.*;
 import org.apache.commons.csv.CSVFormat;
 import org.apache.commons.csv.CSVPrinter;
+import uk.ac.ebi.ols4.binaryjson.BinaryJson;
 
 import java.io.*;
 import java.nio.charset.Charset;
@@ -27,8 +28,8 @@ public class NeoConverter {
 
     public void convert() throws IOException {
 
-        extractorReader = new JsonReader(new InputStreamReader(new FileInputStream(inputFilePath)));
-        reader = new JsonReader(new InputStreamReader(new FileInputStream(inputFilePath)));
+        extractorReader = BinaryJson.openReader(inputFilePath);
+        reader = BinaryJson.openReader(inputFilePath);
 
         reader.beginObject(); extractorReader.beginObject();
 
@@ -149,7 +149,7 @@ public class OntologyWriter {
 
         while(reader.peek() != JsonToken.END_ARRAY) {
 
-            Map<String, Object> entity = gson.fromJson(reader, Map.class);
+            Map<String, Object> entity = (Map<String, Object>) gson.fromJson(reader, Object.class);
 
             String[] row = new String[csvHeader.size()];
             int n = 0;
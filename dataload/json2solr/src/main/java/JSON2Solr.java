@@ -2,6 +2,7 @@ import com.google.gson.Gson;
 import com.google.gson.stream.JsonReader;
 import com.google.gson.stream.JsonToken;
 import org.apache.commons.cli.*;
+import uk.ac.ebi.ols4.binaryjson.BinaryJson;
 
 import java.io.*;
 import java.util.*;
@@ -14,7 +15,7 @@ public class JSON2Solr {
 
         Options options = new Options();
 
-        Option input = new Option(null, "input", true, "ontologies JSON input filename");
+        Option input = new Option(null, "input", true, "ontologies JSON (or binary, optionally gzip or zstd compressed) input filename");
         input.setRequired(true);
         options.addOption(input);
 
@@ -52,14 +53,14 @@ public class JSON2Solr {
         String individualsOutName = outPath + "/individuals.jsonl";
         String autocompleteOutName = outPath + "/autocomplete.jsonl";
 
-        ontologiesWriter = new PrintStream(ontologiesOutName);
-        classesWriter = new PrintStream(classesOutName);
-        propertiesWriter = new PrintStream(propertiesOutName);
-        individualsWriter = new PrintStream(individualsOutName);
-        autocompleteWriter = new PrintStream(autocompleteOutName);
+        ontologiesWriter = openOutput(ontologiesOutName);
+        classesWriter = openOutput(classesOutName);
+        propertiesWriter = openOutput(propertiesOutName);
+        individualsWriter = openOutput(individualsOutName);
+        autocompleteWriter = openOutput(autocompleteOutName);
 
 
-        JsonReader reader = new JsonReader(new InputStreamReader(new FileInputStream(inputFilePath)));
+        JsonReader reader = BinaryJson.openReader(inputFilePath);
 
         reader.beginObject();
 
@@ -87,7 +88,7 @@ public class JSON2Solr {
 
                             while (reader.peek() != JsonToken.END_ARRAY) {
 
-                                Map<String, Object> _class = gson.fromJson(reader, Map.class);
+                                Map<String, Object> _class = (Map<String, Object>) gson.fromJson(reader, Object.class);
 
                                 Map<String, Object> flattenedClass = new TreeMap<>();
 
@@ -112,7 +113,7 @@ public class JSON2Solr {
 
                             while (reader.peek() != JsonToken.END_ARRAY) {
 
-                                Map<String, Object> property = gson.fromJson(reader, Map.class);
+                                Map<String, Object> property = (Map<String, Object>) gson.fromJson(reader, Object.class);
 
                                 Map<String, Object> flattenedProperty = new TreeMap<>();
 
@@ -136,7 +137,7 @@ public class JSON2Solr {
 
                             while (reader.peek() != JsonToken.END_ARRAY) {
 
-                                Map<String, Object> individual = gson.fromJson(reader, Map.class);
+                                Map<String, Object> individual = (Map<String, Object>) gson.fromJson(reader, Object.class);
 
                                 Map<String, Object> flattenedIndividual = new TreeMap<>();
 
@@ -192,6 +193,18 @@ public class JSON2Solr {
 
         reader.endObject();
         reader.close();
+
+        ontologiesWriter.close();
+        classesWriter.close();
+        propertiesWriter.close();
+        individualsWriter.close();
+        autocompleteWriter.close();
+    }
+
+    // Every entity is printed separately, so the files need a buffer of their own
+    //
+    static private PrintStream openOutput(String path) throws FileNotFoundException {
+        return new PrintStream(new BufferedOutputStream(new FileOutputStream(path), BinaryJson.BUFFER_SIZE));
     }
 
     static private void flattenProperties(Map<String,Object> properties, Map<String,Object> flattened) {
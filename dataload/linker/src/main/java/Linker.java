@@ -1,6 +1,8 @@
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import org.apache.commons.cli.*;
+import uk.ac.ebi.ols4.binaryjson.BinaryJson;
+import uk.ac.ebi.ols4.binaryjson.Compression;
 
 import java.io.*;
 import java.nio.charset.StandardCharsets;
@@ -15,11 +17,11 @@ public class Linker {
 
         Options options = new Options();
 
-        Option input = new Option(null, "input", true, "unlinked ontologies JSON input filename");
+        Option input = new Option(null, "input", true, "unlinked ontologies JSON (or binary, optionally gzip or zstd compressed) input filename");
         input.setRequired(true);
         options.addOption(input);
 
-        Option output = new Option(null, "output", true, "linked ontologies JSON output filename");
+        Option output = new Option(null, "output", true, "linked ontologies JSON output filename (or ending in " + BinaryJson.FILE_EXTENSION + " for the binary format)");
         output.setRequired(true);
         options.addOption(output);
 
@@ -27,6 +29,14 @@ public class Linker {
         leveldbPath.setRequired(false);
         options.addOption(leveldbPath);
 
+        Option compact = new Option(null, "compact", false, "Write the output JSON without indentation");
+        compact.setRequired(false);
+        options.addOption(compact);
+
+        Option compression = new Option(null, "compression", true, "Compress the output with none (default), gzip or zstd. Compressed input is recognised automatically.");
+        compression.setRequired(false);
+        options.addOption(compression);
+
         CommandLineParser parser = new DefaultParser();
         HelpFormatter formatter = new HelpFormatter();
         CommandLine cmd;
@@ -44,6 +54,8 @@ public class Linker {
         String inputFilePath = cmd.getOptionValue("input");
         String outputFilePath = cmd.getOptionValue("output");
         String leveldb_path = cmd.getOptionValue("leveldbPath");
+        boolean bCompact = cmd.hasOption("compact");
+        Compression outputCompression = Compression.fromOption(cmd.getOptionValue("compression"));
 
         LevelDB leveldb = leveldb_path != null ? new LevelDB(leveldb_path) : null;
 
@@ -55,7 +67,7 @@ public class Linker {
     //        gson.toJson(pass1Result, new FileWriter(outputFilePath));
     //        Files.write(Path.of(outputFilePath), gson.toJson(pass1Result).getBytes(StandardCharsets.UTF_8));
 
-            LinkerPass2.run(inputFilePath, outputFilePath, leveldb, pass1Result);
+            LinkerPass2.run(inputFilePath, outputFilePath, bCompact, outputCompression, leveldb, pass1Result);
 
         } finally {
             if(leveldb != null)
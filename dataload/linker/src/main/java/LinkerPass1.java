@@ -8,10 +8,9 @@ import com.google.gson.JsonElement;
 import com.google.gson.JsonParser;
 import com.google.gson.stream.JsonReader;
 import com.google.gson.stream.JsonToken;
+import uk.ac.ebi.ols4.binaryjson.BinaryJson;
 
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.util.*;
 import java.util.stream.Collectors;
 
@@ -45,9 +44,7 @@ public class LinkerPass1 {
 
         LinkerPass1Result result = new LinkerPass1Result();
 
-        FileInputStream is = new FileInputStream(inputJsonFilename);
-        InputStreamReader reader = new InputStreamReader(is);
-        JsonReader jsonReader = new JsonReader(reader);
+        JsonReader jsonReader = BinaryJson.openReader(inputJsonFilename);
 
         int nOntologies = 0;
 
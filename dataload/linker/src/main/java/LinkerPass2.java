@@ -7,6 +7,8 @@ import com.google.gson.JsonPrimitive;
 import com.google.gson.stream.JsonReader;
 import com.google.gson.stream.JsonToken;
 import com.google.gson.stream.JsonWriter;
+import uk.ac.ebi.ols4.binaryjson.BinaryJson;
+import uk.ac.ebi.ols4.binaryjson.Compression;
 
 import java.io.*;
 import java.util.*;
@@ -18,11 +20,11 @@ public class LinkerPass2 {
     public static final OboDatabaseUrlService dbUrls = new OboDatabaseUrlService();
     public static final Bioregistry bioregistry = new Bioregistry();
 
-    public static void run(String inputJsonFilename, String outputJsonFilename, LevelDB leveldb, LinkerPass1.LinkerPass1Result pass1Result) throws IOException {
+    public static void run(String inputJsonFilename, String outputJsonFilename, boolean compact, Compression compression,
+                           LevelDB leveldb, LinkerPass1.LinkerPass1Result pass1Result) throws IOException {
 
-        JsonReader jsonReader = new JsonReader(new InputStreamReader(new FileInputStream(inputJsonFilename)));
-        JsonWriter jsonWriter = new JsonWriter(new OutputStreamWriter(new FileOutputStream(outputJsonFilename)));
-        jsonWriter.setIndent("  ");
+        JsonReader jsonReader = BinaryJson.openReader(inputJsonFilename);
+        JsonWriter jsonWriter = BinaryJson.openWriter(outputJsonFilename, compact, compression);
 
         System.out.println("--- Linker Pass 2: Processing " + inputJsonFilename);
         int nOntologies = 0;
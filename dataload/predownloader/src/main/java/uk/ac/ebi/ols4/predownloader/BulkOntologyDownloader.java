@@ -1,23 +1,66 @@
-
 package uk.ac.ebi.ols4.predownloader;
 
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.ArrayList;
+import java.util.Map;
+import java.util.Queue;
 import java.util.Set;
-import java.util.LinkedHashSet;
-
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import uk.ac.ebi.ols4.downloadmanifest.DownloadManifest;
+
+// Downloads the ontologies and, in turn, everything they import.
+//
+// Downloads run on a fixed pool of threads from one queue. The imports of an ontology are
+// queued as soon as it has been downloaded, so a slow server only holds up the chains of
+// imports that go through it rather than everything discovered after it.
+//
+// What was downloaded is recorded in a DownloadManifest, written once everything has been
+// downloaded.
+//
+// No more than MAX_DOWNLOADS_PER_HOST downloads from the same host run at once, so that
+// the pool isn't filled with downloads queueing on one slow server (or hammering it) while
+// those from other hosts wait. The others are held back until one for that host finishes.
+//
 public class BulkOntologyDownloader {
 
     static final int NUM_THREADS = 16;
 
+    static final int MAX_DOWNLOADS_PER_HOST = 4;
+
     Set<String> urlsToDownload;
     Set<String> urlsAlreadyProcessed;
     String downloadPath;
     boolean loadLocalFiles;
 
-    Set<OntologyDownloaderThread> threads = new HashSet<>();
+    // shared by all of the downloads, so connections to the same host are reused
+    CloseableHttpClient client;
+
+    // what this run downloaded, and what the previous run did (if there was one)
+    DownloadManifest manifest;
+    DownloadManifest previousManifest;
+
+    // downloads waiting for their host to have a free slot, and the number running per host
+    Map<String, Queue<String>> waitingByHost = new HashMap<>();
+    Map<String, Integer> runningByHost = new HashMap<>();
+
+    // downloads queued or running
+    int outstanding = 0;
+
+    ExecutorService pool;
 
     public BulkOntologyDownloader(List<String> ontologyUrls, String downloadPath, boolean loadLocalFiles) {
         this.urlsToDownload = new LinkedHashSet<String>(ontologyUrls);
@@ -28,52 +71,126 @@ public class BulkOntologyDownloader {
 
     public void downloadAll() {
 
-	while(urlsToDownload.size() > 0) {
+        manifest = new DownloadManifest(Paths.get(downloadPath));
+        manifest.ontologies.addAll(urlsToDownload);
+
+        try {
+            previousManifest = DownloadManifest.read(downloadPath);
+        } catch(IOException e) {
+            System.out.println("Could not read the previous " + DownloadManifest.FILENAME + " (" + e + ")");
+        }
+
+        RequestConfig config = RequestConfig.custom()
+                .setConnectTimeout(5000)
+                .setConnectionRequestTimeout(5000)
+                .setSocketTimeout(5000).build();
+
+        // never fewer connections per host than downloads per host, so a download never
+        // waits for a connection
+        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+        connectionManager.setMaxTotal(NUM_THREADS);
+        connectionManager.setDefaultMaxPerRoute(MAX_DOWNLOADS_PER_HOST);
+
+        client = HttpClientBuilder.create()
+                .setDefaultRequestConfig(config)
+                .setConnectionManager(connectionManager)
+                .build();
+
+        AtomicInteger threadNumber = new AtomicInteger();
+
+        pool = Executors.newFixedThreadPool(NUM_THREADS, r -> {
+            Thread t = new Thread(r, "Downloader thread " + threadNumber.getAndIncrement());
+            t.setDaemon(true);
+            return t;
+        });
+
+        try {
+            synchronized(this) {
+
+                for(String url : urlsToDownload) {
+                    enqueue(url);
+                }
+                urlsToDownload.clear();
+
+                while(outstanding > 0) {
+                    wait();
+                }
+            }
+
+            manifest.write();
+
+        } catch(InterruptedException | IOException e) {
+            throw new RuntimeException(e);
+        } finally {
+            pool.shutdownNow();
+            try {
+                client.close();
+            } catch(IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private synchronized void enqueue(String url) {
+
+        if(!urlsAlreadyProcessed.add(url)) {
+            return;
+        }
+
+        ++ outstanding;
+
+        String host = getHost(url);
+
+        if(runningByHost.getOrDefault(host, 0) < MAX_DOWNLOADS_PER_HOST) {
+            start(url, host);
+        } else {
+            waitingByHost.computeIfAbsent(host, h -> new ArrayDeque<>()).add(url);
+        }
+    }
+
+    private synchronized void start(String url, String host) {
 
-		List<Thread> threads = new ArrayList<>();
-		Set<String> imports = new LinkedHashSet<>();
+        runningByHost.merge(host, 1, Integer::sum);
 
-		for(int i = 0; i < NUM_THREADS; ++ i) {
+        pool.submit(() -> {
 
-			if(urlsToDownload.size() == 0) {
-				break;
-			}
+            Set<String> imports = new LinkedHashSet<>();
 
-			Iterator<String> it = urlsToDownload.iterator();
-			String nextUrl = it.next();
-			it.remove();
+            try {
+                new OntologyDownloaderThread(this, url, imports::addAll).run();
+            } finally {
+                finished(host, imports);
+            }
+        });
+    }
 
-			urlsAlreadyProcessed.add(nextUrl);
+    private synchronized void finished(String host, Collection<String> imports) {
 
-			OntologyDownloaderThread downloader =
-				new OntologyDownloaderThread(this, nextUrl, importUrls -> {
-					imports.addAll(importUrls);
-				});
+        System.out.println(Thread.currentThread().getName() + " finished");
 
-			Thread t = new Thread(downloader, "Downloader thread " + i);
-			threads.add(t);
+        runningByHost.merge(host, -1, Integer::sum);
 
-			t.start();
-		}
+        Queue<String> waiting = waitingByHost.get(host);
 
-		for(Thread t : threads) {
-			try {
-				t.join();
-				System.out.println(t.getName() + " finished");
-			} catch (InterruptedException e) {
-				// TODO Auto-generated catch block
-				e.printStackTrace();
-			}
-		}
+        if(waiting != null && !waiting.isEmpty()) {
+            start(waiting.remove(), host);
+        }
 
-		for(String importUrl : imports) {
-			if(!urlsAlreadyProcessed.contains(importUrl)) {
-				urlsAlreadyProcessed.add(importUrl);
-				urlsToDownload.add(importUrl);
-			}
-		}
-	}
+        for(String importUrl : imports) {
+            enqueue(importUrl);
+        }
+
+        -- outstanding;
+        notifyAll();
+    }
 
+    private static String getHost(String url) {
+        try {
+            String host = URI.create(url).getHost();
+            return host != null ? host.toLowerCase() : "";
+        } catch(IllegalArgumentException e) {
+            return "";
+        }
     }
 
 }
@@ -0,0 +1,487 @@
+package uk.ac.ebi.ols4.predownloader;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.PushbackReader;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.apache.jena.riot.Lang;
+
+// Finds the owl:imports of an ontology without parsing it into triples.
+//
+// RDF/XML is read with StAX and Turtle with a small tokenizer that only understands as
+// much of the syntax as it needs to (prefixes, IRIs, strings, comments and punctuation).
+// Both stop at the end of the ontology header, i.e. the first top level element or
+// statement that declares an owl:Ontology, which is where the OWL API, ROBOT etc. write
+// the imports. That is usually the first few lines of the file. A declaration with nothing
+// else in it doesn't count, as some writers put one in for each import
+// (<owl:Ontology rdf:about="..."/>) before the real header.
+//
+// N-Triples has no header (the triples can be in any order), so every line is checked,
+// but with a plain substring test that is much cheaper than parsing.
+//
+// scan returns null for anything it can't handle (other formats, syntax it doesn't
+// understand, or malformed files), in which case the file should be parsed instead.
+//
+public class ImportsScanner {
+
+    static final String OWL = "http://www.w3.org/2002/07/owl#";
+    static final String RDF = "http://www.w3.org/1999/02/22-rdf-syntax-ns#";
+    static final String XML = "http://www.w3.org/XML/1998/namespace";
+
+    static final String OWL_IMPORTS = OWL + "imports";
+    static final String OWL_ONTOLOGY = OWL + "Ontology";
+    static final String RDF_TYPE = RDF + "type";
+
+    public static Set<String> scan(InputStream is, Lang lang, String baseUri) {
+
+        try {
+            if(lang == Lang.RDFXML) {
+                return scanRdfXml(is, baseUri);
+            }
+            if(lang == Lang.TURTLE) {
+                return new TurtleScanner(is, baseUri).scan();
+            }
+            if(lang == Lang.NTRIPLES) {
+                return scanNTriples(is);
+            }
+        } catch(Exception e) {
+            System.out.println("Could not scan " + baseUri + " for imports (" + e + ")");
+        }
+
+        return null;
+    }
+
+    private static Set<String> scanRdfXml(InputStream is, String baseUri) throws XMLStreamException {
+
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+
+        // entities declared in the file (e.g. &obo;) are used in rdf:resource all the time
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, true);
+        factory.setProperty(XMLInputFactory.IS_REPLACING_ENTITY_REFERENCES, true);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+
+        XMLStreamReader reader = factory.createXMLStreamReader(is);
+
+        Set<String> imports = new LinkedHashSet<>();
+
+        // xml:base of each open element
+        Deque<String> bases = new ArrayDeque<>();
+        bases.push(baseUri);
+
+        int depth = 0;
+
+        // top level node elements are the children of rdf:RDF, or the root if there is none
+        int topDepth = 1;
+
+        boolean topIsOntology = false, topHasProperties = false;
+        boolean inImports = false;
+
+        try {
+            while(reader.hasNext()) {
+
+                int event = reader.next();
+
+                if(event == XMLStreamConstants.START_ELEMENT) {
+
+                    ++ depth;
+
+                    String base = reader.getAttributeValue(XML, "base");
+                    bases.push(base != null ? resolve(bases.peek(), base) : bases.peek());
+
+                    String ns = reader.getNamespaceURI();
+                    String name = reader.getLocalName();
+
+                    if(depth == 1 && RDF.equals(ns) && name.equals("RDF")) {
+                        topDepth = 2;
+                    } else if(depth == topDepth) {
+                        topIsOntology = OWL.equals(ns) && name.equals("Ontology");
+                        topHasProperties = false;
+                    } else if(depth == topDepth + 1) {
+
+                        String resource = reader.getAttributeValue(RDF, "resource");
+
+                        if(RDF.equals(ns) && name.equals("type")) {
+                            if(resource != null && resolve(bases.peek(), resource).equals(OWL_ONTOLOGY)) {
+                                topIsOntology = true;
+                            }
+                        } else {
+                            topHasProperties = true;
+                        }
+
+                        if(OWL.equals(ns) && name.equals("imports")) {
+                            if(resource != null) {
+                                imports.add(resolve(bases.peek(), resource));
+                            } else {
+                                // <owl:imports><owl:Ontology rdf:about="..."/></owl:imports>
+                                inImports = true;
+                            }
+                        }
+                    } else if(depth == topDepth + 2 && inImports) {
+
+                        String about = reader.getAttributeValue(RDF, "about");
+
+                        if(about != null) {
+                            imports.add(resolve(bases.peek(), about));
+                        }
+                        inImports = false;
+                    }
+
+                } else if(event == XMLStreamConstants.END_ELEMENT) {
+
+                    if(depth == topDepth && topIsOntology && topHasProperties) {
+                        break;
+                    }
+                    if(depth == topDepth + 1) {
+                        inImports = false;
+                    }
+
+                    bases.pop();
+                    -- depth;
+                }
+            }
+        } finally {
+            reader.close();
+        }
+
+        return imports;
+    }
+
+    static final Pattern NTRIPLES_IMPORT = Pattern.compile(
+            "^\\s*\\S+\\s+<" + Pattern.quote(OWL_IMPORTS) + ">\\s+<([^>]*)>");
+
+    private static Set<String> scanNTriples(InputStream is) throws IOException {
+
+        Set<String> imports = new LinkedHashSet<>();
+
+        BufferedReader reader = new BufferedReader(new InputStreamReader(is, StandardCharsets.UTF_8));
+
+        for(String line = reader.readLine(); line != null; line = reader.readLine()) {
+
+            if(line.indexOf(OWL_IMPORTS) == -1) {
+                continue;
+            }
+
+            Matcher m = NTRIPLES_IMPORT.matcher(line);
+
+            if(m.find()) {
+                imports.add(m.group(1));
+            }
+        }
+
+        return imports;
+    }
+
+    private static String resolve(String base, String iri) {
+
+        URI uri = URI.create(iri);
+
+        if(uri.isAbsolute() || base == null) {
+            return iri;
+        }
+
+        return URI.create(base).resolve(uri).toString();
+    }
+
+    // Just enough of Turtle to follow the statements at the top level: what the subject,
+    // predicate and objects are, and where each statement ends. Anything inside [ ] and
+    // ( ) is skipped over.
+    //
+    static class TurtleScanner {
+
+        PushbackReader reader;
+        String base;
+        Map<String, String> prefixes = new HashMap<>();
+
+        TurtleScanner(InputStream is, String baseUri) {
+            this.reader = new PushbackReader(new BufferedReader(new InputStreamReader(is, StandardCharsets.UTF_8)), 2);
+            this.base = baseUri;
+        }
+
+        Set<String> scan() throws IOException {
+
+            Set<String> imports = new LinkedHashSet<>();
+
+            String predicate = null;
+            boolean expectPredicate = false, expectObject = false, isOntology = false, hasProperties = false;
+            int nesting = 0;
+
+            for(String token = next(); token != null; token = next()) {
+
+                if(token.equals("[") || token.equals("(")) {
+                    ++ nesting;
+                    continue;
+                }
+
+                if(token.equals("]") || token.equals(")")) {
+                    if(-- nesting == 0) {
+                        // the nested bnode or list was the subject or an object
+                        expectObject = false;
+                        expectPredicate = predicate == null;
+                    }
+                    continue;
+                }
+
+                if(nesting > 0) {
+                    continue;
+                }
+
+                if(token.equals(".")) {
+                    if(isOntology && hasProperties) {
+                        break;
+                    }
+                    predicate = null;
+                    expectPredicate = expectObject = isOntology = hasProperties = false;
+                    continue;
+                }
+
+                if(token.equals(";")) {
+                    expectPredicate = true;
+                    expectObject = false;
+                    continue;
+                }
+
+                if(token.equals(",")) {
+                    expectObject = true;
+                    continue;
+                }
+
+                if(expectPredicate) {
+                    predicate = token.equals("a") ? RDF_TYPE : resolveTerm(token);
+                    hasProperties |= !RDF_TYPE.equals(predicate);
+                    expectPredicate = false;
+                    expectObject = true;
+                    continue;
+                }
+
+                if(expectObject) {
+
+                    if(predicate != null && predicate.equals(OWL_IMPORTS)) {
+                        String object = resolveTerm(token);
+                        if(object != null) {
+                            imports.add(object);
+                        }
+                    }
+
+                    if(predicate != null && predicate.equals(RDF_TYPE) && OWL_ONTOLOGY.equals(resolveTerm(token))) {
+                        isOntology = true;
+                    }
+
+                    expectObject = false;
+                    continue;
+                }
+
+                if(predicate == null) {
+
+                    if(token.equalsIgnoreCase("@prefix") || token.equalsIgnoreCase("prefix")) {
+                        String prefix = next();
+                        String iri = next();
+                        if(prefix == null || !prefix.endsWith(":") || iri == null || !iri.startsWith("<")) {
+                            throw new IOException("bad prefix declaration");
+                        }
+                        prefixes.put(prefix.substring(0, prefix.length() - 1), resolve(base, iri.substring(1, iri.length() - 1)));
+                        continue;
+                    }
+
+                    if(token.equalsIgnoreCase("@base") || token.equalsIgnoreCase("base")) {
+                        String iri = next();
+                        if(iri == null || !iri.startsWith("<")) {
+                            throw new IOException("bad base declaration");
+                        }
+                        base = resolve(base, iri.substring(1, iri.length() - 1));
+                        continue;
+                    }
+
+                    // the subject
+                    predicate = "";
+                    expectPredicate = true;
+                    continue;
+                }
+
+                // a language tag or datatype after a literal object
+                if(token.startsWith("@") || token.startsWith("^^")) {
+                    if(token.equals("^^")) {
+                        next();
+                    }
+                    continue;
+                }
+
+                throw new IOException("unexpected " + token);
+            }
+
+            return imports;
+        }
+
+        // the IRI of an <iri> or prefixed name, or null for literals, bnodes etc.
+        //
+        private String resolveTerm(String token) throws IOException {
+
+            if(token.startsWith("<")) {
+                return resolve(base, token.substring(1, token.length() - 1));
+            }
+
+            if(token.startsWith("\"") || token.startsWith("'") || token.startsWith("_:")) {
+                return null;
+            }
+
+            int colon = token.indexOf(':');
+
+            if(colon == -1) {
+                // numbers and booleans
+                return null;
+            }
+
+            String namespace = prefixes.get(token.substring(0, colon));
+
+            if(namespace == null) {
+                throw new IOException("undeclared prefix in " + token);
+            }
+
+            return namespace + token.substring(colon + 1).replace("\\", "");
+        }
+
+        // The next token: an <iri>, a string (with its quotes), one of the punctuation
+        // characters, or a run of anything else (prefixed names, keywords, numbers...).
+        //
+        private String next() throws IOException {
+
+            int c = read();
+
+            for(;;) {
+                while(c != -1 && Character.isWhitespace(c)) {
+                    c = read();
+                }
+                if(c != '#') {
+                    break;
+                }
+                while(c != -1 && c != '\n' && c != '\r') {
+                    c = read();
+                }
+            }
+
+            if(c == -1) {
+                return null;
+            }
+
+            StringBuilder sb = new StringBuilder();
+            sb.append((char) c);
+
+            if(c == '<') {
+                do {
+                    c = read();
+                    if(c == -1) {
+                        throw new IOException("unterminated IRI");
+                    }
+                    sb.append((char) c);
+                } while(c != '>');
+                return sb.toString();
+            }
+
+            if(c == '"' || c == '\'') {
+                readString((char) c, sb);
+                return sb.toString();
+            }
+
+            if(c == '.' || c == ';' || c == ',' || c == '[' || c == ']' || c == '(' || c == ')') {
+                return sb.toString();
+            }
+
+            for(;;) {
+                c = reader.read();
+                if(isDelimiter(c)) {
+                    unread(c);
+                    break;
+                }
+                if(c == '.') {
+                    // a prefixed name can't end with a dot, so a dot followed by a delimiter
+                    // ends the statement
+                    int d = reader.read();
+                    unread(d);
+                    if(d == '.' || isDelimiter(d)) {
+                        unread(c);
+                        break;
+                    }
+                }
+                sb.append((char) c);
+            }
+
+            return sb.toString();
+        }
+
+        private static boolean isDelimiter(int c) {
+            return c == -1 || Character.isWhitespace(c) || c == '<' || c == '"' || c == '\''
+                    || c == ';' || c == ',' || c == '[' || c == ']' || c == '(' || c == ')' || c == '#';
+        }
+
+        private void unread(int c) throws IOException {
+            if(c != -1) {
+                reader.unread(c);
+            }
+        }
+
+        private void readString(char quote, StringBuilder sb) throws IOException {
+
+            boolean isLong = false;
+
+            if(peek() == quote) {
+                read();
+                if(peek() == quote) {
+                    read();
+                    isLong = true;
+                } else {
+                    // empty string
+                    sb.append(quote);
+                    return;
+                }
+            }
+
+            int quotes = 0;
+
+            for(;;) {
+                int c = read();
+                if(c == -1) {
+                    throw new IOException("unterminated string");
+                }
+                if(c == '\\') {
+                    read();
+                    quotes = 0;
+                    continue;
+                }
+                if(c == quote) {
+                    if(!isLong || ++ quotes == 3) {
+                        sb.append(quote);
+                        return;
+                    }
+                } else {
+                    quotes = 0;
+                }
+            }
+        }
+
+        private int peek() throws IOException {
+            int c = reader.read();
+            unread(c);
+            return c;
+        }
+
+        private int read() throws IOException {
+            return reader.read();
+        }
+    }
+}
@@ -1,37 +1,35 @@
 
 package uk.ac.ebi.ols4.predownloader;
 
-import java.io.File;
+import java.io.BufferedInputStream;
 import java.io.FileInputStream;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.net.MalformedURLException;
-import java.net.URL;
+import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
-import java.nio.file.OpenOption;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.nio.file.StandardOpenOption;
-import java.util.ArrayList;
+import java.time.Instant;
 import java.util.Collection;
 import java.util.LinkedHashSet;
-import java.util.List;
 import java.util.Set;
 import java.util.function.Consumer;
-import java.util.function.Function;
 
-import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.ProxyInputStream;
 import org.apache.commons.io.input.TeeInputStream;
+import org.apache.commons.io.output.NullOutputStream;
 import org.apache.http.Header;
 import org.apache.http.HttpEntity;
 import org.apache.http.HttpResponse;
-import org.apache.http.client.HttpClient;
-import org.apache.http.client.config.RequestConfig;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.util.EntityUtils;
 import org.apache.jena.graph.Triple;
 import org.apache.jena.riot.Lang;
 import org.apache.jena.riot.RDFLanguages;
@@ -39,6 +37,7 @@ import org.apache.jena.riot.RDFParser;
 import org.apache.jena.riot.RDFParserBuilder;
 import org.apache.jena.riot.system.StreamRDF;
 import org.apache.jena.sparql.core.Quad;
+import uk.ac.ebi.ols4.downloadmanifest.DownloadManifest;
 
 public class OntologyDownloaderThread implements Runnable {
 
@@ -46,6 +45,14 @@ public class OntologyDownloaderThread implements Runnable {
     String ontologyUrl;
     Consumer<Collection<String>> consumeImports;
 
+    // whether the file was scanned for imports while it was being downloaded, and the
+    // imports found (null if ImportsScanner couldn't handle it)
+    boolean scanned = false;
+    Set<String> scannedImports = null;
+
+    // for the manifest
+    String downloadStatus = DownloadManifest.FAILED;
+
     public OntologyDownloaderThread(BulkOntologyDownloader downloader, String ontologyUrl, Consumer<Collection<String>> consumeImports) {
 
         super();
@@ -66,18 +73,89 @@ public class OntologyDownloaderThread implements Runnable {
         Set<String> importUrls = new LinkedHashSet<>();
 
         long begin = System.nanoTime();
+        String fetched = Instant.now().toString();
 
         try {
 
-            String mimetype = downloadURL(ontologyUrl, path);
+            String mimetype = downloadURL(downloader.client, ontologyUrl, path);
+
+            Lang lang = getLang(mimetype);
+
+            // not modified or resumed, so it has to be scanned now
+            if(!scanned) {
+                try(InputStream is = new BufferedInputStream(new FileInputStream(path))) {
+                    scannedImports = ImportsScanner.scan(is, lang, ontologyUrl);
+                }
+            }
 
-            Lang lang = RDFLanguages.contentTypeToLang(mimetype);
-            if(lang == null) {
-                lang = Lang.RDFXML;
+            if(scannedImports != null) {
+                importUrls.addAll(scannedImports);
+            } else {
+                parseImports(path, lang, importUrls);
             }
 
+        } catch (Exception e) {
+
+            e.printStackTrace();
+        }
+
+        long end = System.nanoTime();
+
+        System.out.println(Thread.currentThread().getName() + " Downloading and scanning for imports " + ontologyUrl + " took " + ((end-begin) / 1000 / 1000 / 1000) + "s");
+
+        downloader.manifest.add(createManifestEntry(path, fetched, importUrls));
+
+        consumeImports.accept(importUrls);
+    }
+
+    private DownloadManifest.Entry createManifestEntry(String path, String fetched, Set<String> importUrls) {
+
+        DownloadManifest.Entry entry = new DownloadManifest.Entry();
+        entry.url = ontologyUrl;
+        entry.fetched = fetched;
+        entry.status = downloadStatus;
+        entry.imports.addAll(importUrls);
+
+        Path file = Paths.get(path);
+
+        try {
+            if(Files.exists(file)) {
+
+                entry.file = file.getFileName().toString();
+                entry.size = Files.size(file);
+                entry.modified = Files.getLastModifiedTime(file).toMillis();
+
+                // a file that hasn't changed since the last run isn't hashed again
+                entry.sha256 = downloader.previousManifest != null ?
+                        downloader.previousManifest.getSha256(ontologyUrl, file.toFile()) :
+                        DownloadManifest.sha256(file);
+
+                entry.etag = readSidecar(file, ".etag");
+                entry.lastModified = readSidecar(file, ".lastmodified");
+                entry.contentType = readSidecar(file, ".mimetype");
+            }
+        } catch(IOException e) {
+            e.printStackTrace();
+        }
+
+        return entry;
+    }
+
+    private static Lang getLang(String mimetype) {
+
+        Lang lang = RDFLanguages.contentTypeToLang(mimetype);
+
+        return lang != null ? lang : Lang.RDFXML;
+    }
+
+    // for files ImportsScanner can't handle
+    //
+    private void parseImports(String path, Lang lang, Set<String> importUrls) throws IOException {
+
+        try(InputStream is = new FileInputStream(path)) {
+
             // parse to look for imports only
-            createParser(lang).source(new FileInputStream(path)).parse(new StreamRDF() {
+            createParser(lang).source(is).parse(new StreamRDF() {
                 public void start() {}
                 public void quad(Quad quad) {}
                 public void base(String base) {}
@@ -90,17 +168,7 @@ public class OntologyDownloaderThread implements Runnable {
                     }
                 }
             });
-
-        } catch (Exception e) {
-
-            e.printStackTrace();
         }
-
-        long end = System.nanoTime();
-
-        System.out.println(Thread.currentThread().getName() + " Downloading and parsing for imports " + ontologyUrl + " took " + ((end-begin) / 1000 / 1000 / 1000) + "s");
-
-        consumeImports.accept(importUrls);
     }
 
     private String urlToFilename(String url) {
@@ -115,28 +183,246 @@ public class OntologyDownloaderThread implements Runnable {
                 .checking(false);
     }
 
-    private static String downloadURL(String url, String filename) throws FileNotFoundException, IOException {
+    // Downloads url to filename and returns its content type.
+    //
+    // The ETag and Last-Modified of each download are kept in .etag and .lastmodified files
+    // next to its .mimetype file. If the file has been downloaded before, the request is
+    // conditional on them, and if the server says it hasn't changed (304) the file is kept
+    // as it is rather than downloaded again.
+    //
+    // The download is written to filename.part (with its own sidecar files), which only
+    // replaces filename once it is complete, so an interrupted run never leaves a truncated
+    // file behind. The next run asks the server for the rest of the .part file with a Range
+    // request. The request has an If-Range, so if the file has changed since the .part file
+    // was started the server sends all of it again.
+    //
+    // client is shared with the other downloads, so the response must be closed to give
+    // the connection back to its pool
+    //
+    private String downloadURL(CloseableHttpClient client, String url, String filename) throws IOException {
+
+        Path file = Paths.get(filename);
+        Path part = Paths.get(filename + ".part");
+
+        long resumeFrom = Files.exists(part) ? Files.size(part) : 0;
+        String ifRange = resumeFrom > 0 ? getIfRangeValidator(part) : null;
 
-        RequestConfig config = RequestConfig.custom()
-                .setConnectTimeout(5000)
-                .setConnectionRequestTimeout(5000)
-                .setSocketTimeout(5000).build();
+        HttpGet request = new HttpGet(url);
 
-        CloseableHttpClient client = HttpClientBuilder.create().setDefaultRequestConfig(config).build();
+        if(ifRange != null) {
+            request.setHeader("Range", "bytes=" + resumeFrom + "-");
+            request.setHeader("If-Range", ifRange);
+        } else if(Files.exists(file)) {
+            String etag = readSidecar(file, ".etag");
+            String lastModified = readSidecar(file, ".lastmodified");
+            if(etag != null) {
+                request.setHeader("If-None-Match", etag);
+            }
+            if(lastModified != null) {
+                request.setHeader("If-Modified-Since", lastModified);
+            }
+        }
 
-        HttpGet request = new HttpGet(url);
-        HttpResponse response = client.execute(request);
-        HttpEntity entity = response.getEntity();
-        if (entity != null) {
-            entity.writeTo(new FileOutputStream(filename));
-            Header contentTypeHeader = entity.getContentType();
-            String contentType = contentTypeHeader != null ? contentTypeHeader.getValue() : "";
-            Files.write(Paths.get(filename + ".mimetype"), contentType.getBytes(StandardCharsets.UTF_8), StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
-            return contentType;
+        boolean resumed;
+        Header contentTypeHeader = null;
+
+        try(CloseableHttpResponse response = client.execute(request)) {
+
+            int status = response.getStatusLine().getStatusCode();
+            HttpEntity entity = response.getEntity();
+
+            if(status == HttpStatus.SC_NOT_MODIFIED) {
+                System.out.println(Thread.currentThread().getName() + " " + url + " not modified, keeping " + filename);
+                EntityUtils.consume(entity);
+
+                // a .part file left over that couldn't be resumed
+                deleteWithSidecars(part);
+
+                downloadStatus = DownloadManifest.NOT_MODIFIED;
+
+                String contentType = readSidecar(file, ".mimetype");
+                return contentType != null ? contentType : "";
+            }
+
+            resumed = status == HttpStatus.SC_PARTIAL_CONTENT && ifRange != null
+                    && getContentRangeStart(response) == resumeFrom;
+
+            if(!resumed && status != HttpStatus.SC_OK) {
+                EntityUtils.consume(entity);
+
+                if(status == HttpStatus.SC_REQUESTED_RANGE_NOT_SATISFIABLE || status == HttpStatus.SC_PARTIAL_CONTENT) {
+                    // the .part file doesn't fit what the server has (e.g. the file on the
+                    // server is now smaller than it), so start again from the beginning
+                    deleteWithSidecars(part);
+                    return downloadURL(client, url, filename);
+                }
+
+                throw new IOException("Downloading " + url + " failed: " + response.getStatusLine());
+            }
+
+            if(resumed) {
+                System.out.println(Thread.currentThread().getName() + " Resuming download of " + url + " from byte " + resumeFrom);
+            } else {
+                contentTypeHeader = entity != null ? entity.getContentType() : null;
+
+                // written before the body, so that the .part file can be resumed if the
+                // download is interrupted
+                writeSidecar(part, ".mimetype", contentTypeHeader != null ? contentTypeHeader.getValue() : "");
+                writeSidecar(part, ".etag", getHeader(response, "ETag"));
+                writeSidecar(part, ".lastmodified", getHeader(response, "Last-Modified"));
+            }
+
+            try(OutputStream os = Files.newOutputStream(part, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    resumed ? StandardOpenOption.APPEND : StandardOpenOption.TRUNCATE_EXISTING)) {
+                if(entity == null) {
+                    // empty file
+                } else if(resumed) {
+                    entity.writeTo(os);
+                } else {
+                    scanWhileDownloading(entity, url, contentTypeHeader != null ? contentTypeHeader.getValue() : "", os);
+                }
+            }
+        }
+
+        // The validators of the old file go first: if we are stopped before the new ones are
+        // in place, the next run downloads the file again rather than keeping it because the
+        // old file's validators still match.
+        //
+        Files.deleteIfExists(Paths.get(filename + ".etag"));
+        Files.deleteIfExists(Paths.get(filename + ".lastmodified"));
+
+        Files.move(part, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+
+        for(String sidecar : new String[] { ".mimetype", ".etag", ".lastmodified" }) {
+            Path partSidecar = Paths.get(part + sidecar);
+            if(Files.exists(partSidecar)) {
+                Files.move(partSidecar, Paths.get(filename + sidecar), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+
+        downloadStatus = resumed ? DownloadManifest.RESUMED : DownloadManifest.DOWNLOADED;
+
+        String contentType = readSidecar(file, ".mimetype");
+        return contentType != null ? contentType : "";
+    }
+
+    // Scans the body for imports as it is written to os, rather than reading the file again
+    // afterwards. The scan usually stops at the end of the ontology header, and the rest of
+    // the body is then just copied.
+    //
+    private void scanWhileDownloading(HttpEntity entity, String url, String contentType, OutputStream os) throws IOException {
+
+        DownloadStream body = new DownloadStream(new TeeInputStream(entity.getContent(), os));
+
+        Set<String> imports = ImportsScanner.scan(body, getLang(contentType), url);
+
+        IOUtils.copy(body, NullOutputStream.NULL_OUTPUT_STREAM);
+
+        // the scanner gives up on any exception, including the download failing
+        if(body.error != null) {
+            throw body.error;
+        }
+
+        scanned = true;
+        scannedImports = imports;
+    }
+
+    // Remembers if reading the body failed, and keeps returning EOF once it has been reached
+    // (HttpClient closes the body at EOF, after which reading it again throws)
+    //
+    private static class DownloadStream extends ProxyInputStream {
+
+        IOException error;
+        boolean eof = false;
+
+        DownloadStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            return eof ? -1 : super.read();
+        }
+
+        @Override
+        public int read(byte[] b) throws IOException {
+            return eof ? -1 : super.read(b);
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            return eof ? -1 : super.read(b, off, len);
+        }
+
+        @Override
+        protected void afterRead(int n) {
+            if(n == -1) {
+                eof = true;
+            }
+        }
+
+        @Override
+        protected void handleIOException(IOException e) throws IOException {
+            error = e;
+            throw e;
+        }
+    }
+
+    // If-Range needs a strong ETag; otherwise the Last-Modified date will do. Without either
+    // a .part file can't be resumed, because there is no way to know it is still current.
+    //
+    private static String getIfRangeValidator(Path part) throws IOException {
+
+        String etag = readSidecar(part, ".etag");
+
+        if(etag != null && !etag.startsWith("W/")) {
+            return etag;
+        }
+
+        return readSidecar(part, ".lastmodified");
+    }
+
+    // the first byte in a Content-Range of "bytes <first>-<last>/<length>", or -1
+    //
+    private static long getContentRangeStart(HttpResponse response) {
+
+        String contentRange = getHeader(response, "Content-Range");
+
+        if(contentRange == null || !contentRange.startsWith("bytes ") || contentRange.indexOf('-') == -1) {
+            return -1;
+        }
+
+        try {
+            return Long.parseLong(contentRange.substring("bytes ".length(), contentRange.indexOf('-')).trim());
+        } catch(NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static String getHeader(HttpResponse response, String name) {
+        Header header = response.getFirstHeader(name);
+        return header != null ? header.getValue() : null;
+    }
+
+    private static String readSidecar(Path path, String extension) throws IOException {
+        Path sidecar = Paths.get(path + extension);
+        return Files.exists(sidecar) ? new String(Files.readAllBytes(sidecar), StandardCharsets.UTF_8) : null;
+    }
+
+    private static void writeSidecar(Path path, String extension, String value) throws IOException {
+        Path sidecar = Paths.get(path + extension);
+        if(value != null) {
+            Files.write(sidecar, value.getBytes(StandardCharsets.UTF_8), StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
         } else {
-            return "";
+            Files.deleteIfExists(sidecar);
         }
     }
 
+    private static void deleteWithSidecars(Path path) throws IOException {
+        Files.deleteIfExists(path);
+        for(String sidecar : new String[] { ".mimetype", ".etag", ".lastmodified" }) {
+            Files.deleteIfExists(Paths.get(path + sidecar));
+        }
+    }
 
 }
@@ -0,0 +1,250 @@
+package uk.ac.ebi.rdf2json;
+
+import org.apache.jena.graph.Triple;
+import org.apache.jena.riot.system.StreamRDF;
+import org.apache.jena.riot.system.StreamRDF2;
+import org.apache.jena.riot.system.StreamRDFBase;
+import org.apache.jena.riot.thrift.BinRDF;
+import org.apache.jena.sparql.core.Quad;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Set;
+
+// Keeps the triples of owl:imports in memory for the rest of the run (--importCacheSizeMB),
+// so that a file imported by many ontologies (BFO, RO, the uberon and NCBITaxon slices...)
+// is only parsed once rather than once per ontology that imports it.
+//
+// The triples are kept in Jena's RDF-Thrift binary format, which is compact and much faster
+// to read back than RDF/XML is to parse. The buffers are never changed once they have been
+// written, so any number of graphs can replay the same import at once. The least recently
+// used imports are dropped to keep the total under the size limit, and an import that
+// doesn't fit on its own is just parsed every time.
+//
+// If a graph asks for an import that another graph is parsing, it waits for that parse to
+// finish and replays it rather than parsing the same file twice.
+//
+public class ImportCache {
+
+    static final int CHUNK_SIZE = 1024 * 1024;
+
+    long maxSize;
+
+    // url -> triples, in least recently used order
+    private final LinkedHashMap<String, Buffer> imports = new LinkedHashMap<>(16, 0.75f, true);
+    private long size = 0;
+
+    // urls being parsed by some graph
+    private final Set<String> parsing = new HashSet<>();
+
+    public ImportCache(long maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    // Streams the triples of the import at url into dest, replaying them if they are cached
+    // and otherwise with parser (caching the triples as they go past).
+    //
+    public void parse(String url, ParseCache.Parser parser, StreamRDF dest) throws IOException {
+
+        Buffer cached;
+
+        synchronized(this) {
+            while(parsing.contains(url)) {
+                try {
+                    wait();
+                } catch(InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+            cached = imports.get(url);
+            if(cached == null) {
+                parsing.add(url);
+            }
+        }
+
+        if(cached != null) {
+            System.out.println("Using cached triples for import " + url + " (--importCacheSizeMB)");
+            BinRDF.inputStreamToStream(cached.newInputStream(), ParseCache.withFreshBlankNodes(dest));
+            return;
+        }
+
+        Buffer buffer = new Buffer(maxSize);
+
+        try {
+            parser.parse(new StreamRDF2(dest, new Recorder(buffer)));
+        } finally {
+            synchronized(this) {
+                parsing.remove(url);
+                if(buffer.complete && !buffer.overflowed) {
+                    add(url, buffer);
+                }
+                notifyAll();
+            }
+        }
+    }
+
+    private void add(String url, Buffer buffer) {
+
+        Iterator<Buffer> lru = imports.values().iterator();
+
+        while(size + buffer.size > maxSize && lru.hasNext()) {
+            size -= lru.next().size;
+            lru.remove();
+        }
+
+        imports.put(url, buffer);
+        size += buffer.size;
+    }
+
+    // Writes the triples to the buffer as RDF-Thrift, until they don't fit
+    //
+    private static class Recorder extends StreamRDFBase {
+
+        Buffer buffer;
+        StreamRDF thrift;
+
+        Recorder(Buffer buffer) {
+            this.buffer = buffer;
+
+            // values=false keeps the lexical form of every literal as it was in the source
+            this.thrift = BinRDF.streamToOutputStream(buffer, false);
+        }
+
+        @Override
+        public void start() {
+            thrift.start();
+        }
+
+        @Override
+        public void triple(Triple triple) {
+            if(!buffer.overflowed) {
+                thrift.triple(triple);
+            }
+        }
+
+        @Override
+        public void quad(Quad quad) {
+            if(!buffer.overflowed) {
+                thrift.quad(quad);
+            }
+        }
+
+        @Override
+        public void base(String base) {
+            if(!buffer.overflowed) {
+                thrift.base(base);
+            }
+        }
+
+        @Override
+        public void prefix(String prefix, String iri) {
+            if(!buffer.overflowed) {
+                thrift.prefix(prefix, iri);
+            }
+        }
+
+        @Override
+        public void finish() {
+            if(!buffer.overflowed) {
+                thrift.finish();
+                buffer.trim();
+                buffer.complete = true;
+            }
+        }
+    }
+
+    // An append-only list of fixed size chunks, so that large imports are neither copied as
+    // they grow nor limited to the 2 GB of a single array. Once it has overflowed the rest
+    // of what is written to it is thrown away.
+    //
+    private static class Buffer extends OutputStream {
+
+        long maxSize;
+
+        List<byte[]> chunks = new ArrayList<>();
+        long size = 0;
+
+        boolean complete = false;
+        boolean overflowed = false;
+
+        Buffer(long maxSize) {
+            this.maxSize = maxSize;
+        }
+
+        @Override
+        public void write(int b) {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+
+            if(overflowed) {
+                return;
+            }
+
+            if(size + len > maxSize) {
+                overflowed = true;
+                chunks = null;
+                return;
+            }
+
+            while(len > 0) {
+                int pos = (int) (size % CHUNK_SIZE);
+                if(pos == 0) {
+                    chunks.add(new byte[CHUNK_SIZE]);
+                }
+                int n = Math.min(len, CHUNK_SIZE - pos);
+                System.arraycopy(b, off, chunks.get(chunks.size() - 1), pos, n);
+                off += n;
+                len -= n;
+                size += n;
+            }
+        }
+
+        // most imports are much smaller than a chunk
+        void trim() {
+            int used = (int) (size % CHUNK_SIZE);
+            if(used > 0) {
+                chunks.set(chunks.size() - 1, Arrays.copyOf(chunks.get(chunks.size() - 1), used));
+            }
+        }
+
+        InputStream newInputStream() {
+
+            return new InputStream() {
+
+                long pos = 0;
+
+                @Override
+                public int read() {
+                    if(pos >= size) {
+                        return -1;
+                    }
+                    byte b = chunks.get((int) (pos / CHUNK_SIZE))[(int) (pos % CHUNK_SIZE)];
+                    ++ pos;
+                    return b & 0xff;
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) {
+                    if(pos >= size) {
+                        return -1;
+                    }
+                    int chunkPos = (int) (pos % CHUNK_SIZE);
+                    int n = (int) Math.min(Math.min(len, CHUNK_SIZE - chunkPos), size - pos);
+                    System.arraycopy(chunks.get((int) (pos / CHUNK_SIZE)), chunkPos, b, off, n);
+                    pos += n;
+                    return n;
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,319 @@
+package uk.ac.ebi.rdf2json;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.stream.JsonWriter;
+import uk.ac.ebi.ols4.binaryjson.BinaryJsonWriter;
+import uk.ac.ebi.ols4.downloadmanifest.DownloadManifest;
+import uk.ac.ebi.rdf2json.helpers.RawJsonCopier;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+// Reuses the previous output for ontologies that haven't changed (--incremental).
+//
+// A manifest is kept next to the output which records, for each ontology, a hash of its
+// config and of every file it was loaded from (the ontology and its imports), and where
+// the ontology is in the output. On the next run the same files are hashed again before
+// anything is loaded, and if the hash is unchanged the bytes of the ontology are copied
+// from the previous output as they are, without parsing them.
+//
+// The SHA-256 of a predownloaded file is taken from the predownloader's manifest if the
+// file hasn't changed since (see DownloadManifest), so an unchanged ontology is found to be
+// unchanged without reading its files.
+//
+// The hash also covers the rdf2json jar and the options that change the output, so any
+// change to those reloads everything. Ontologies that have to be downloaded (rather than
+// being predownloaded or local files) are always reloaded.
+//
+// The new output is written to a temporary file which replaces the previous output (and
+// then the manifest is replaced) only once it is complete, so an interrupted run leaves
+// the previous output and manifest as they were.
+//
+public class IncrementalOutput {
+
+    public static final String MANIFEST_SUFFIX = ".manifest.json";
+
+    private static final Gson gson = new GsonBuilder().setPrettyPrinting().disableHtmlEscaping().create();
+
+    static class Manifest {
+
+        // "json", "compact json" or "binary"; the ontologies can only be copied into the same format
+        String format;
+
+        // hash of the rdf2json jar and of the options which change the output
+        String toolHash;
+
+        Map<String, Entry> ontologies = new LinkedHashMap<>();
+    }
+
+    static class Entry {
+
+        String hash;
+
+        // the files the ontology was loaded from, which are hashed again next time
+        List<String> sources;
+
+        // [start, end) of the ontology in the output; for JSON, start may be before the
+        // separator from the previous ontology
+        long start;
+        long end;
+    }
+
+    Path outputPath;
+    Path tempOutputPath;
+    Path manifestPath;
+
+    boolean loadLocalFiles;
+    String downloadedPath;
+
+    // the predownloader's manifest, or null
+    DownloadManifest downloads;
+
+    Manifest previous;
+    Manifest manifest = new Manifest();
+
+    FileChannel previousOutput;
+
+    int numReused = 0;
+
+    public IncrementalOutput(String outputFilePath, String format, boolean noDates, boolean loadLocalFiles, String downloadedPath, DownloadManifest downloads) throws IOException {
+
+        this.outputPath = Paths.get(outputFilePath);
+        this.tempOutputPath = Paths.get(outputFilePath + ".incremental");
+        this.manifestPath = Paths.get(outputFilePath + MANIFEST_SUFFIX);
+        this.loadLocalFiles = loadLocalFiles;
+        this.downloadedPath = downloadedPath;
+        this.downloads = downloads;
+
+        manifest.format = format;
+        manifest.toolHash = hashTool(noDates);
+
+        if(Files.exists(manifestPath) && Files.exists(outputPath)) {
+
+            try(Reader reader = Files.newBufferedReader(manifestPath, StandardCharsets.UTF_8)) {
+                previous = gson.fromJson(reader, Manifest.class);
+            }
+
+            if(!manifest.format.equals(previous.format)) {
+                System.out.println("Previous output is " + previous.format + " rather than " + format + "; reloading all ontologies (--incremental)");
+                previous = null;
+            } else if(!manifest.toolHash.equals(previous.toolHash)) {
+                System.out.println("rdf2json or its options have changed since the previous output; reloading all ontologies (--incremental)");
+                previous = null;
+            } else {
+                previousOutput = FileChannel.open(outputPath);
+            }
+
+        } else {
+            System.out.println("No previous output and manifest at " + outputPath + "; loading all ontologies (--incremental)");
+        }
+    }
+
+    // Where to write the output; it is moved into place by finish()
+    //
+    public String getTempOutputPath() {
+        return tempOutputPath.toString();
+    }
+
+    // Whether the ontology is unchanged since the previous output, i.e. its config and the
+    // files it was loaded from last time are the same, so that it can be copied from there.
+    //
+    public boolean isUnchanged(String ontologyId, Map<String, Object> config) throws IOException {
+
+        if(previous == null) {
+            return false;
+        }
+
+        Entry previousEntry = previous.ontologies.get(ontologyId);
+
+        if(previousEntry == null) {
+            return false;
+        }
+
+        String hash = hash(config, previousEntry.sources);
+
+        return hash != null && hash.equals(previousEntry.hash);
+    }
+
+    // Copies an unchanged ontology (see isUnchanged) from the previous output as the next
+    // element of the ontologies array. output must be the channel of the file that writer
+    // writes to.
+    //
+    public void copyUnchanged(String ontologyId, JsonWriter writer, FileChannel output) throws IOException {
+
+        System.out.println("Unchanged since the previous output; copying ontology " + ontologyId + " (--incremental)");
+
+        Entry previousEntry = previous.ontologies.get(ontologyId);
+
+        writer.flush();
+        long start = output.position();
+
+        if(writer instanceof BinaryJsonWriter) {
+            ((BinaryJsonWriter) writer).appendOntology(ontologyId, previousOutput, previousEntry.start, previousEntry.end);
+        } else {
+            RawJsonCopier.appendArrayElement(writer, output, previousOutput, previousEntry.start, previousEntry.end);
+        }
+
+        writer.flush();
+        long end = output.position();
+
+        add(ontologyId, previousEntry.hash, previousEntry.sources, start, end);
+        ++ numReused;
+    }
+
+    // Records an ontology that was loaded and written to [start, end) of the output.
+    //
+    public void written(String ontologyId, Map<String, Object> config, List<String> sources, long start, long end) throws IOException {
+
+        String hash = hash(config, sources);
+
+        if(hash != null) {
+            add(ontologyId, hash, sources, start, end);
+        }
+    }
+
+    // Called once the output has been written and closed.
+    //
+    public void finish() throws IOException {
+
+        if(previousOutput != null) {
+            previousOutput.close();
+        }
+
+        Files.move(tempOutputPath, outputPath, StandardCopyOption.REPLACE_EXISTING);
+
+        Path tempManifestPath = Paths.get(manifestPath + ".incremental");
+        try(Writer writer = Files.newBufferedWriter(tempManifestPath, StandardCharsets.UTF_8)) {
+            gson.toJson(manifest, writer);
+        }
+        Files.move(tempManifestPath, manifestPath, StandardCopyOption.REPLACE_EXISTING);
+
+        System.out.println("Reused " + numReused + " unchanged ontologies from the previous output (--incremental)");
+    }
+
+    private void add(String ontologyId, String hash, List<String> sources, long start, long end) {
+        Entry entry = new Entry();
+        entry.hash = hash;
+        entry.sources = sources;
+        entry.start = start;
+        entry.end = end;
+        manifest.ontologies.put(ontologyId, entry);
+    }
+
+    // SHA-256 of the config and the contents of the source files, or null if any of the
+    // files would have to be downloaded.
+    //
+    private String hash(Map<String, Object> config, List<String> sources) throws IOException {
+
+        MessageDigest digest = newDigest();
+
+        update(digest, gson.toJson(sortKeys(config)));
+
+        for(String url : sources) {
+
+            File file = OntologyGraph.getLocalSourceFile(url, loadLocalFiles, downloadedPath);
+
+            if(file == null || !file.exists()) {
+                return null;
+            }
+
+            update(digest, url);
+            update(digest, downloads != null ? downloads.getSha256(url, file) : DownloadManifest.sha256(file.toPath()));
+        }
+
+        return toHex(digest.digest());
+    }
+
+    private static String hashTool(boolean noDates) throws IOException {
+
+        MessageDigest digest = newDigest();
+
+        update(digest, "noDates=" + noDates);
+
+        try {
+            Path jar = Paths.get(IncrementalOutput.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+            if(Files.isRegularFile(jar)) {
+                updateWithFile(digest, jar);
+            }
+        } catch(Exception e) {
+            System.out.println("Could not hash the rdf2json jar: " + e);
+        }
+
+        return toHex(digest.digest());
+    }
+
+    // The config with its keys in a fixed order, so that the hash doesn't depend on the
+    // order of the keys in the config files.
+    //
+    @SuppressWarnings("unchecked")
+    private static Object sortKeys(Object value) {
+
+        if(value instanceof Map) {
+            Map<String, Object> sorted = new TreeMap<>();
+            for(var entry : ((Map<String, Object>) value).entrySet()) {
+                sorted.put(entry.getKey(), sortKeys(entry.getValue()));
+            }
+            return sorted;
+        }
+
+        if(value instanceof Collection) {
+            List<Object> list = new ArrayList<>();
+            for(Object element : (Collection<Object>) value) {
+                list.add(sortKeys(element));
+            }
+            return list;
+        }
+
+        return value;
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch(NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static void update(MessageDigest digest, String s) {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        digest.update(Integer.toString(bytes.length).getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) ':');
+        digest.update(bytes);
+    }
+
+    private static void updateWithFile(MessageDigest digest, Path path) throws IOException {
+        byte[] buf = new byte[64 * 1024];
+        try(InputStream is = Files.newInputStream(path)) {
+            for(int n; (n = is.read(buf)) > 0; ) {
+                digest.update(buf, 0, n);
+            }
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder();
+        for(byte b : bytes) {
+            sb.append(String.format("%02x", b));
+        }
+        return sb.toString();
+    }
+}
@@ -4,7 +4,11 @@ import com.google.gson.stream.JsonWriter;
 
 import org.apache.jena.riot.RDFLanguages;
 import uk.ac.ebi.rdf2json.annotators.*;
+import uk.ac.ebi.rdf2json.helpers.HierarchyIndex;
+import uk.ac.ebi.rdf2json.helpers.IriDictionary;
+import uk.ac.ebi.rdf2json.helpers.JsonTokenBuffer;
 import uk.ac.ebi.rdf2json.helpers.RdfListEvaluator;
+import uk.ac.ebi.rdf2json.helpers.SpillingNodeMap;
 import uk.ac.ebi.rdf2json.properties.*;
 
 import org.apache.jena.riot.Lang;
@@ -20,8 +24,13 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.stream.Collectors;
 import static uk.ac.ebi.rdf2json.OntologyNode.NodeType.*;
 
@@ -32,10 +41,22 @@ public class OntologyGraph implements StreamRDF {
     public Set<String> languages = new TreeSet<>();
     public long sourceFileTimestamp;
 
+    // every file parsed (the ontology, then its imports) in the order they were parsed
+    public List<String> sourceUrls = new ArrayList<>();
+
     public int numberOfClasses = 0;
     public int numberOfProperties = 0;
     public int numberOfIndividuals = 0;
 
+    // time taken by each annotator in ms
+    public Map<String, Long> annotatorTimings = new LinkedHashMap<>();
+
+    // resources used by each phase of loading and writing (see Profile)
+    public Profile profile = new Profile();
+
+    // the phase the file being parsed belongs to, for the threads of ParallelNTriplesParser
+    Profile.Measurement parsing;
+
     private RDFParserBuilder createParser(Lang lang) {
 
         if(lang != null) {
@@ -50,19 +71,22 @@ public class OntologyGraph implements StreamRDF {
         }
     }
 
-    private void parseRDF(String url)  {
+    private void parseRDF(String url, boolean isImport)  {
+
+        sourceUrls.add(url);
 
         try {
             if (loadLocalFiles && !url.contains("://")) {
                 System.out.println("Using local file for " + url);
 		sourceFileTimestamp = new File(url).lastModified();
-                createParser(RDFLanguages.filenameToLang(url, Lang.RDFXML))
-                        .source(new FileInputStream(url)).parse(this);
+                parseFile(url, new File(url), RDFLanguages.filenameToLang(url, Lang.RDFXML), isImport);
             } else {
                 if (downloadedPath != null) {
                     String existingDownload = downloadedPath + "/" + urlToFilename(url);
                     try {
-                        FileInputStream is = new FileInputStream(existingDownload);
+                        if(!new File(existingDownload).exists()) {
+                            throw new FileNotFoundException(existingDownload);
+                        }
                         System.out.println("Using predownloaded file for " + url);
 			sourceFileTimestamp = new File(existingDownload).lastModified();
                         Lang lang = null;
@@ -74,43 +98,60 @@ public class OntologyGraph implements StreamRDF {
                         if(lang == null) {
                             lang = Lang.RDFXML;
                         }
-                        createParser(lang).source(is).parse(this);
+                        parseFile(url, new File(existingDownload), lang, isImport);
                     } catch (Exception e) {
                         System.out.println("Downloading (not predownloaded) " + url);
 			sourceFileTimestamp = System.currentTimeMillis();
-                        createParser(null).source(url).parse(this);
+                        parse(url, dest -> createParser(null).source(url).parse(dest), isImport);
                     }
                 } else {
                     System.out.println("Downloading (no predownload path provided) " + url);
 		    sourceFileTimestamp = System.currentTimeMillis();
-                    createParser(null).source(url).parse(this);
+                    parse(url, dest -> createParser(null).source(url).parse(dest), isImport);
                 }
             }
-        } catch (FileNotFoundException e) {
+        } catch (IOException e) {
             throw new RuntimeException(e);
         }
     }
 
-    private String urlToFilename(String url) {
-        return url.replaceAll("[^a-zA-Z0-9\\.\\-]", "_");
-    }
-
-
-    private boolean loadLocalFiles;
+    private void parseFile(String url, File file, Lang lang, boolean isImport) throws IOException {
 
-    String downloadedPath;
+        ParseCache.Parser parser;
 
+        if(parseParallelism > 1 && RDFLanguages.sameLang(lang, Lang.NTRIPLES) && file.length() > ParallelNTriplesParser.CHUNK_SIZE) {
+            parser = dest -> ParallelNTriplesParser.parse(file, parseParallelism, () -> createParser(lang), dest, parsing);
+        } else {
+            parser = dest -> {
+                try(FileInputStream is = new FileInputStream(file)) {
+                    createParser(lang).source(is).parse(dest);
+                }
+            };
+        }
 
-    OntologyGraph(Map<String, Object> config, boolean loadLocalFiles, boolean noDates, String downloadedPath) {
+        if(parseCache != null) {
+            ParseCache.Parser uncached = parser;
+            parser = dest -> parseCache.parse(url, file, lang, uncached, dest);
+        }
 
-        this.loadLocalFiles = loadLocalFiles;
-        this.downloadedPath = downloadedPath;
+        parse(url, parser, isImport);
+    }
 
-        long startTime = System.nanoTime();
+    // Parses into this graph, going through the import cache for imports
+    //
+    private void parse(String url, ParseCache.Parser parser, boolean isImport) throws IOException {
+        if(isImport && importCache != null) {
+            importCache.parse(url, parser, this);
+        } else {
+            parser.parse(this);
+        }
+    }
 
-        this.config = config;
+    static String urlToFilename(String url) {
+        return url.replaceAll("[^a-zA-Z0-9\\.\\-]", "_");
+    }
 
-        languages.add("en");
+    static String getOntologyUrl(Map<String, Object> config) {
 
         String url = (String) config.get("ontology_purl");
 
@@ -134,13 +175,96 @@ public class OntologyGraph implements StreamRDF {
 
         }
 
+        return url;
+    }
+
+    // The file parseRDF would read the ontology from, or null if it would have to be downloaded
+    //
+    static File getLocalSourceFile(String url, boolean loadLocalFiles, String downloadedPath) {
+
+        if (loadLocalFiles && !url.contains("://")) {
+            return new File(url);
+        }
+
+        if (downloadedPath != null) {
+            File existingDownload = new File(downloadedPath + "/" + urlToFilename(url));
+            if(existingDownload.exists()) {
+                return existingDownload;
+            }
+        }
+
+        return null;
+    }
+
+
+    private boolean loadLocalFiles;
+
+    String downloadedPath;
+
+    ParseCache parseCache;
+    ImportCache importCache;
+    int parseParallelism;
+    int writeParallelism;
+
+    // number of top level nodes written by each task with --writeParallelism
+    static final int WRITE_CHUNK_SIZE = 1000;
+
+
+    OntologyGraph(Map<String, Object> config, boolean loadLocalFiles, boolean noDates, String downloadedPath,
+                  ParseCache parseCache, ImportCache importCache, Path spillDir, int spillCacheSize, int importParallelism,
+                  int parseParallelism, int annotatorParallelism, int writeParallelism) {
+
+        this.loadLocalFiles = loadLocalFiles;
+        this.downloadedPath = downloadedPath;
+        this.parseCache = parseCache;
+        this.importCache = importCache;
+        this.parseParallelism = parseParallelism;
+
+        if(spillDir != null) {
+            try {
+                nodes = new SpillingNodeMap(dictionary, spillDir, spillCacheSize);
+            } catch(IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        // Nothing else can close the spill file of a graph that failed to load, as the
+        // caller never gets hold of it
+        //
+        try {
+            load(config, noDates, spillDir, importParallelism, annotatorParallelism, writeParallelism);
+        } catch(RuntimeException | Error e) {
+            try {
+                close();
+            } catch(IOException closeException) {
+                e.addSuppressed(closeException);
+            }
+            throw e;
+        }
+    }
+
+    // Parses the ontology and its imports and runs the annotators
+    //
+    private void load(Map<String, Object> config, boolean noDates, Path spillDir, int importParallelism,
+                      int annotatorParallelism, int writeParallelism) {
+
+        long startTime = System.nanoTime();
+
+        this.config = config;
+
+        languages.add("en");
+
+        String url = getOntologyUrl(config);
+
         if(url == null) {
             System.out.println("Could not determine URL for ontology " + (String)config.get("id"));
             return;
         }
 
         System.out.println("load ontology from: " + url);
-        parseRDF(url);
+        parsing = profile.start("parse");
+        parseRDF(url, false);
+        parsing.finish(nodes.size());
 
         // Before we evaluate imports, mark all the nodes so far as not imported
         for(String id : nodes.keySet()) {
@@ -151,14 +275,35 @@ public class OntologyGraph implements StreamRDF {
         }
 
 
-        while(importUrls.size() > 0) {
-            String importUrl = importUrls.get(0);
-            importUrls.remove(0);
+        if(importParallelism > 1 && importUrls.size() > 0) {
+
+            new ParallelImportLoader(this, importParallelism).loadImports();
+
+        } else {
+
+            // Each file is only loaded once, so an import reached by several paths isn't
+            // loaded again and an import cycle can't loop forever. ParallelImportLoader does
+            // the same, so --importParallelism doesn't change the output.
+            //
+            Set<String> loadedUrls = new HashSet<>(sourceUrls);
+
+            while(importUrls.size() > 0) {
+                String importUrl = importUrls.get(0);
+                importUrls.remove(0);
+
+                if(!loadedUrls.add(importUrl)) {
+                    continue;
+                }
 
-            System.out.println("import: " + importUrl);
-            parseRDF(importUrl);
+                System.out.println("import: " + importUrl);
+                parsing = profile.start("import " + importUrl);
+                parseRDF(importUrl, true);
+                parsing.finish(nodes.size());
+            }
         }
 
+        parsing = null;
+
         // Now the imports are done, mark everything else as imported
         for(String id : nodes.keySet()) {
             OntologyNode c = nodes.get(id);
@@ -245,31 +390,215 @@ public class OntologyGraph implements StreamRDF {
 
 
         long endTime = System.nanoTime();
-        System.out.println("load ontology: " + ((endTime - startTime) / 1000 / 1000 / 1000));
-
-        SearchableAnnotationValuesAnnotator.annotateSearchableAnnotationValues(this);
-        InverseOfAnnotator.annotateInverseOf(this);
-        NegativePropertyAssertionAnnotator.annotateNegativePropertyAssertions(this);
-        OboSynonymTypeNameAnnotator.annotateOboSynonymTypeNames(this); // n.b. this one labels axioms so must run before the ReifiedPropertyAnnotator
-        DirectParentsAnnotator.annotateDirectParents(this);
-        RelatedAnnotator.annotateRelated(this);
-        HierarchicalParentsAnnotator.annotateHierarchicalParents(this); // must run after RelatedAnnotator
-        AncestorsAnnotator.annotateAncestors(this);
-        HierarchyMetricsAnnotator.annotateHierarchyMetrics(this); // must run after HierarchicalParentsAnnotator
-        ShortFormAnnotator.annotateShortForms(this);
-        DefinitionAnnotator.annotateDefinitions(this);
-        SynonymAnnotator.annotateSynonyms(this);
-        ReifiedPropertyAnnotator.annotateReifiedProperties(this);
-        OntologyMetadataAnnotator.annotateOntologyMetadata(this);
-        HierarchyFlagsAnnotator.annotateHierarchyFlags(this); // must run after DirectParentsAnnotator and HierarchicalParentsAnnotator
-        IsObsoleteAnnotator.annotateIsObsolete(this);
-        LabelAnnotator.annotateLabels(this); // must run after ShortFormAnnotator
-        ConfigurablePropertyAnnotator.annotateConfigurableProperties(this);
-        PreferredRootsAnnotator.annotatePreferredRoots(this);
-        DisjointWithAnnotator.annotateDisjointWith(this);
-        HasIndividualsAnnotator.annotateHasIndividuals(this);
-        EquivalenceAnnotator.annotateEquivalance(this);
+        System.out.println("load ontology: " + Profile.formatSeconds(endTime - startTime));
+
+        if(spillDir != null && annotatorParallelism > 1) {
+            // the spilling node map moves nodes in and out of memory on every get()
+            System.out.println("--annotatorParallelism is not supported with --spillDir; annotating sequentially");
+            annotatorParallelism = 1;
+        }
+
+        annotatorTimings = createAnnotatorPipeline().run(this, annotatorParallelism);
+
+        if(spillDir != null && writeParallelism > 1) {
+            System.out.println("--writeParallelism is not supported with --spillDir; writing sequentially");
+            writeParallelism = 1;
+        }
+
+        this.writeParallelism = writeParallelism;
+
+    }
+
+
+    // The annotators and the properties each of them reads and writes. Steps that depend on
+    // each other must stay in this order; see AnnotatorPipeline.
+    //
+    private AnnotatorPipeline createAnnotatorPipeline() {
+
+        AnnotatorPipeline pipeline = new AnnotatorPipeline();
+
+        pipeline.addNodeAnnotator("searchableAnnotationValues", SearchableAnnotationValuesAnnotator::new)
+                .reads(AnnotatorPipeline.ANY)
+                .writes("searchableAnnotationValues");
+
+        pipeline.add("inverseOf", InverseOfAnnotator::annotateInverseOf)
+                .reads("http://www.w3.org/2002/07/owl#inverseOf")
+                .writes("http://www.w3.org/2002/07/owl#inverseOf");
+
+        pipeline.add("negativePropertyAssertions", NegativePropertyAssertionAnnotator::annotateNegativePropertyAssertions)
+                .reads("http://www.w3.org/2002/07/owl#sourceIndividual", "http://www.w3.org/2002/07/owl#assertionProperty",
+                        "http://www.w3.org/2002/07/owl#targetIndividual", "http://www.w3.org/2002/07/owl#targetValue")
+                .writes("negativePropertyAssertion+*");
+
+        // labels axioms, so must run before reification
+        pipeline.add("oboSynonymTypeNames", OboSynonymTypeNameAnnotator::annotateOboSynonymTypeNames)
+                .reads("http://www.geneontology.org/formats/oboInOwl#hasSynonymType", "http://www.w3.org/2000/01/rdf-schema#label")
+                .writes("oboSynonymTypeName");
+
+        pipeline.add("directParents", DirectParentsAnnotator::annotateDirectParents)
+                .reads("http://www.w3.org/2000/01/rdf-schema#subClassOf", "http://www.w3.org/2000/01/rdf-schema#subPropertyOf",
+                        "http://www.w3.org/1999/02/22-rdf-syntax-ns#type")
+                .writes("directParent");
+
+        pipeline.add("related", RelatedAnnotator::annotateRelated)
+                .reads("http://www.w3.org/2000/01/rdf-schema#subClassOf", "http://www.w3.org/2002/07/owl#onProperty", "http://www.w3.org/2002/07/owl#someValuesFrom",
+                        "http://www.w3.org/2002/07/owl#hasValue", "http://www.w3.org/2002/07/owl#intersectionOf",
+                        "http://www.w3.org/2002/07/owl#oneOf", "http://www.w3.org/1999/02/22-rdf-syntax-ns#first",
+                        "http://www.w3.org/1999/02/22-rdf-syntax-ns#rest")
+                .writes("relatedTo", "relatedFrom");
+
+        pipeline.add("hierarchicalParents", HierarchicalParentsAnnotator::annotateHierarchicalParents)
+                .reads("http://www.w3.org/2000/01/rdf-schema#subClassOf", "relatedTo", "http://www.w3.org/2002/07/owl#inverseOf")
+                .writes("hierarchicalParent");
+
+        // the ancestors are evaluated when the graph is written, from the final parents
+        pipeline.add("ancestors", AncestorsAnnotator::annotateAncestors)
+                .reads("directParent", "hierarchicalParent")
+                .writes("directAncestor", "hierarchicalAncestor");
+
+        pipeline.add("hierarchyMetrics", HierarchyMetricsAnnotator::annotateHierarchyMetrics)
+                .reads("directParent", "hierarchicalParent")
+                .writes("numDirectDescendants", "numHierarchicalDescendants");
+
+        pipeline.addNodeAnnotator("shortForms", ShortFormAnnotator::new)
+                .writes("shortForm", "curie");
+
+        pipeline.addNodeAnnotator("definitions", DefinitionAnnotator::new)
+                .reads(DefinitionAnnotator.getDefinitionProperties(this))
+                .writes("definition");
+
+        pipeline.addNodeAnnotator("synonyms", SynonymAnnotator::new)
+                .reads(SynonymAnnotator.getSynonymProperties(this))
+                .writes("synonym");
+
+        // adds axioms to (and possibly values of) any property
+        pipeline.add("reifiedProperties", ReifiedPropertyAnnotator::annotateReifiedProperties)
+                .reads(AnnotatorPipeline.ANY)
+                .writes(AnnotatorPipeline.ANY);
+
+        pipeline.add("ontologyMetadata", OntologyMetadataAnnotator::annotateOntologyMetadata)
+                .writes("ontologyId", "ontologyPreferredPrefix", "ontologyIri");
+
+        pipeline.add("hierarchyFlags", HierarchyFlagsAnnotator::annotateHierarchyFlags)
+                .reads("directParent", "hierarchicalParent")
+                .writes("hasDirectParent", "hasHierarchicalParent", "hasDirectChildren", "hasHierarchicalChildren");
+
+        pipeline.addNodeAnnotator("isObsolete", IsObsoleteAnnotator::new)
+                .reads("http://www.w3.org/2002/07/owl#deprecated", "http://www.w3.org/2000/01/rdf-schema#subClassOf")
+                .writes("isObsolete");
+
+        pipeline.addNodeAnnotator("labels", LabelAnnotator::new)
+                .reads(LabelAnnotator.getLabelProperties(this))
+                .reads("shortForm")
+                .writes("label");
+
+        pipeline.add("configurableProperties", ConfigurablePropertyAnnotator::annotateConfigurableProperties)
+                .reads(HierarchicalParentsAnnotator.getHierarchicalProperties(this))
+                .reads(DefinitionAnnotator.getDefinitionProperties(this))
+                .reads(SynonymAnnotator.getSynonymProperties(this))
+                .writes("hierarchicalProperty", "definitionProperty", "synonymProperty");
+
+        pipeline.add("preferredRoots", PreferredRootsAnnotator::annotatePreferredRoots)
+                .reads("http://purl.obolibrary.org/obo/IAO_0000700", "http://www.ebi.ac.uk/ols/vocabulary/hasPreferredRootTerm")
+                .writes("hasPreferredRoot", "isPreferredRoot");
+
+        pipeline.add("disjointWith", DisjointWithAnnotator::annotateDisjointWith)
+                .reads("http://www.w3.org/2002/07/owl#members", "http://www.w3.org/2002/07/owl#distinctMembers",
+                        "http://www.w3.org/1999/02/22-rdf-syntax-ns#first", "http://www.w3.org/1999/02/22-rdf-syntax-ns#rest")
+                .writes("http://www.w3.org/2002/07/owl#disjointWith", "http://www.w3.org/2002/07/owl#propertyDisjointWith",
+                        "http://www.w3.org/2002/07/owl#differentFrom");
+
+        pipeline.addNodeAnnotator("hasIndividuals", HasIndividualsAnnotator::new)
+                .reads("http://www.w3.org/1999/02/22-rdf-syntax-ns#type")
+                .writes("hasIndividuals");
+
+        pipeline.add("equivalence", EquivalenceAnnotator::annotateEquivalance)
+                .reads("http://www.w3.org/2002/07/owl#equivalentClass", "http://www.w3.org/2002/07/owl#equivalentProperty")
+                .writes("http://www.w3.org/2002/07/owl#equivalentClass", "http://www.w3.org/2002/07/owl#equivalentProperty");
+
+        return pipeline;
+    }
+
+    // A partial graph holding the triples of a single import (see ParallelImportLoader).
+    // It has its own dictionary so that it can be parsed on another thread. Also used by
+    // the benchmarks to time triple() on its own.
+    //
+    OntologyGraph(boolean loadLocalFiles, String downloadedPath, ParseCache parseCache, ImportCache importCache, int parseParallelism) {
+        this.loadLocalFiles = loadLocalFiles;
+        this.downloadedPath = downloadedPath;
+        this.parseCache = parseCache;
+        this.importCache = importCache;
+        this.parseParallelism = parseParallelism;
+    }
+
+    OntologyGraph parseImport(String importUrl, Profile.Measurement measurement) {
+        OntologyGraph partial = new OntologyGraph(loadLocalFiles, downloadedPath, parseCache, importCache, parseParallelism);
+        partial.parsing = measurement;
+        partial.parseRDF(importUrl, true);
+        return partial;
+    }
+
+    // Adds the triples of a partial graph as if they had been parsed into this graph.
+    // Values are re-interned in our own dictionary.
+    //
+    void mergeImport(OntologyGraph partial) {
+
+        for(Map.Entry<String, OntologyNode> entry : partial.nodes.entrySet()) {
+
+            OntologyNode partialNode = entry.getValue();
+
+            String id = dictionary.intern(entry.getKey());
+
+            OntologyNode node = nodes.get(id);
+
+            if(node == null) {
+                node = new OntologyNode();
+                if(partialNode.uri != null) {
+                    node.uri = id;
+                }
+                nodes.put(id, node);
+            }
+
+            node.types.addAll(partialNode.types);
+
+            for(String predicate : partialNode.properties.getPropertyPredicates()) {
+
+                String internedPredicate = dictionary.intern(predicate);
+
+                for(PropertyValue value : partialNode.properties.getPropertyValues(predicate)) {
+                    node.properties.addProperty(internedPredicate, reintern(value));
+                }
+            }
+
+            if(ontologyNode == null && partialNode == partial.ontologyNode) {
+                ontologyNode = node;
+            }
+        }
+
+        numberOfClasses += partial.numberOfClasses;
+        numberOfProperties += partial.numberOfProperties;
+        numberOfIndividuals += partial.numberOfIndividuals;
+
+        languages.addAll(partial.languages);
+
+        sourceFileTimestamp = partial.sourceFileTimestamp;
 
+        sourceUrls.addAll(partial.sourceUrls);
+    }
+
+    private PropertyValue reintern(PropertyValue value) {
+        switch(value.getType()) {
+            case LITERAL:
+                PropertyValueLiteral literal = (PropertyValueLiteral) value;
+                return new PropertyValueLiteral(literal.getValue(),
+                        dictionary.intern(literal.getDatatype()), dictionary.intern(literal.getLang()));
+            case URI:
+                return new PropertyValueURI(dictionary.intern(((PropertyValueURI) value).getUri()));
+            case BNODE:
+                return new PropertyValueBNode(dictionary.intern(((PropertyValueBNode) value).getId()));
+            default:
+                throw new RuntimeException("unexpected value type in parsed import: " + value.getType());
+        }
     }
 
 
@@ -284,6 +613,8 @@ public class OntologyGraph implements StreamRDF {
 
     public void write(JsonWriter writer) throws IOException {
 
+        Profile.Measurement writing = profile.start("write");
+
         writer.beginObject();
 
         writer.name("ontologyId");
@@ -324,16 +655,11 @@ public class OntologyGraph implements StreamRDF {
         writer.name("classes");
         writer.beginArray();
 
-        for(String id : nodes.keySet()) {
-            OntologyNode c = nodes.get(id);
-            if (c.uri == null) {
-                // don't print bnodes at top level
-                continue;
-            }
+        writeEntities(writer, writing, (w, c) -> {
             if (c.types.contains(OntologyNode.NodeType.CLASS)) {
-                writeNode(writer, c, OntologyNode.NodeType.toString(classTypes));
+                writeNode(w, c, OntologyNode.NodeType.toString(classTypes));
             }
-        }
+        });
 
         writer.endArray();
 
@@ -341,22 +667,17 @@ public class OntologyGraph implements StreamRDF {
         writer.name("properties");
         writer.beginArray();
 
-        for(String id : nodes.keySet()) {
-            OntologyNode c = nodes.get(id);
-            if (c.uri == null) {
-                // don't print bnodes at top level
-                continue;
-            }
+        writeEntities(writer, writing, (w, c) -> {
             if (c.types.contains(OntologyNode.NodeType.OBJECT_PROPERTY)) {
-                writeNode(writer, c, OntologyNode.NodeType.toString(objectPropertyTypes));
+                writeNode(w, c, OntologyNode.NodeType.toString(objectPropertyTypes));
             } else if (c.types.contains(OntologyNode.NodeType.ANNOTATION_PROPERTY)) {
-                writeNode(writer, c, OntologyNode.NodeType.toString(annotationPropertyTypes));
+                writeNode(w, c, OntologyNode.NodeType.toString(annotationPropertyTypes));
             } else if (c.types.contains(OntologyNode.NodeType.DATA_PROPERTY)) {
-                writeNode(writer, c, OntologyNode.NodeType.toString(dataPropertyTypes));
+                writeNode(w, c, OntologyNode.NodeType.toString(dataPropertyTypes));
             } else if (c.types.contains(OntologyNode.NodeType.PROPERTY)) {
-                writeNode(writer, c, OntologyNode.NodeType.toString(propertyTypes));
+                writeNode(w, c, OntologyNode.NodeType.toString(propertyTypes));
             }
-        }
+        });
 
         writer.endArray();
 
@@ -364,22 +685,106 @@ public class OntologyGraph implements StreamRDF {
         writer.name("individuals");
         writer.beginArray();
 
-        for(String id : nodes.keySet()) {
-            OntologyNode c = nodes.get(id);
-            if (c.uri == null) {
-                // don't print bnodes at top level
-                continue;
-            }
+        writeEntities(writer, writing, (w, c) -> {
             if (c.types.contains(OntologyNode.NodeType.INDIVIDUAL)) {
-                writeNode(writer, c, OntologyNode.NodeType.toString(individualTypes));
+                writeNode(w, c, OntologyNode.NodeType.toString(individualTypes));
             }
-        }
+        });
 
         writer.endArray();
 
 
         writer.endObject();
 
+        writing.finish(nodes.size());
+    }
+
+
+    // Writes a node (or nothing, if it doesn't belong in the array being written)
+    private interface EntityWriter {
+        void write(JsonWriter writer, OntologyNode c) throws IOException;
+    }
+
+    // Calls entityWriter for every top level node in order of their ids.
+    //
+    // With --writeParallelism, chunks of nodes are written to JsonTokenBuffers on several
+    // threads, which is where the time goes (ancestor closures, rdf:Lists and nested bnodes
+    // are all worked out while writing). The buffers are replayed on writer in order, so the
+    // output is exactly the same as writing the nodes one after another.
+    //
+    private void writeEntities(JsonWriter writer, Profile.Measurement measurement, EntityWriter entityWriter) throws IOException {
+
+        if(writeParallelism <= 1) {
+            for(String id : nodes.keySet()) {
+                OntologyNode c = nodes.get(id);
+                if (c.uri == null) {
+                    // don't print bnodes at top level
+                    continue;
+                }
+                entityWriter.write(writer, c);
+            }
+            return;
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(writeParallelism, r -> {
+            Thread t = new Thread(r, "rdf2json writer");
+            t.setDaemon(true);
+            return t;
+        });
+
+        // Only a few chunks are written ahead of the one being replayed, so that the
+        // buffered tokens don't take over the heap.
+        //
+        Deque<Future<JsonTokenBuffer>> writing = new ArrayDeque<>();
+
+        try {
+            List<OntologyNode> chunk = new ArrayList<>(WRITE_CHUNK_SIZE);
+
+            for(String id : nodes.keySet()) {
+                OntologyNode c = nodes.get(id);
+                if (c.uri == null) {
+                    // don't print bnodes at top level
+                    continue;
+                }
+                chunk.add(c);
+
+                if(chunk.size() == WRITE_CHUNK_SIZE) {
+                    if(writing.size() == writeParallelism * 2) {
+                        writing.remove().get().replay(writer);
+                    }
+                    writing.add(submitChunk(pool, measurement, chunk, entityWriter));
+                    chunk = new ArrayList<>(WRITE_CHUNK_SIZE);
+                }
+            }
+
+            if(!chunk.isEmpty()) {
+                writing.add(submitChunk(pool, measurement, chunk, entityWriter));
+            }
+
+            while(!writing.isEmpty()) {
+                writing.remove().get().replay(writer);
+            }
+
+        } catch(InterruptedException e) {
+            throw new RuntimeException(e);
+        } catch(ExecutionException e) {
+            if(e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private static Future<JsonTokenBuffer> submitChunk(ExecutorService pool, Profile.Measurement measurement, List<OntologyNode> chunk, EntityWriter entityWriter) {
+        return pool.submit(measurement.onWorker(() -> {
+            JsonTokenBuffer buffer = new JsonTokenBuffer();
+            for(OntologyNode c : chunk) {
+                entityWriter.write(buffer, c);
+            }
+            return buffer;
+        }));
     }
 
 
@@ -451,7 +856,7 @@ public class OntologyGraph implements StreamRDF {
 
 
     public void writePropertyValue(JsonWriter writer, PropertyValue value, Set<String> types) throws IOException {
-        if (value.axioms.size() > 0) {
+        if (value.hasAxioms()) {
             // reified
             writer.beginObject();
             writer.name("type");
@@ -462,7 +867,7 @@ public class OntologyGraph implements StreamRDF {
             writeValue(writer, value);
             writer.name("axioms");
             writer.beginArray();
-            for(PropertySet axiom : value.axioms) {
+            for(PropertySet axiom : value.getAxioms()) {
                 writer.beginObject();
                 writeProperties(writer, axiom, null);
                 writer.endObject();
@@ -480,8 +885,6 @@ public class OntologyGraph implements StreamRDF {
         return uri.startsWith("http://www.w3.org/2001/XMLSchema#");
     }
     public void writeValue(JsonWriter writer, PropertyValue value) throws IOException {
-        assert (value.axioms == null);
-
         switch(value.getType()) {
             case BNODE:
                 OntologyNode c = nodes.get(((PropertyValueBNode) value).getId());
@@ -534,9 +937,9 @@ public class OntologyGraph implements StreamRDF {
                 break;
             case ANCESTORS:
                 PropertyValueAncestors ancestors = (PropertyValueAncestors) value;
-                Set<String> ancestorIris = ancestors.getAncestors(this);
+                List<String> ancestorIris = ancestors.getAncestors(this);
                 if(ancestorIris.size() == 1) {
-                    writer.value(ancestorIris.iterator().next());
+                    writer.value(ancestorIris.get(0));
                 } else {
                     writer.beginArray();
                     for(String ancestorIri : ancestorIris) {
@@ -556,9 +959,27 @@ public class OntologyGraph implements StreamRDF {
 
 
 
+    // a SpillingNodeMap rather than a TreeMap with --spillDir
     public Map<String, OntologyNode> nodes = new TreeMap<>();
     public OntologyNode ontologyNode = null;
 
+    // every node id, predicate and value IRI is interned here so each distinct string is held once
+    public IriDictionary dictionary = new IriDictionary();
+
+    private Map<String, HierarchyIndex> hierarchyIndexes = new HashMap<>();
+
+    // Built on first use for each hierarchy predicate, so must not be called until the
+    // parents for that predicate are final.
+    //
+    public synchronized HierarchyIndex getHierarchyIndex(String hierarchyPredicate) {
+        HierarchyIndex index = hierarchyIndexes.get(hierarchyPredicate);
+        if(index == null) {
+            index = new HierarchyIndex(this, hierarchyPredicate);
+            hierarchyIndexes.put(hierarchyPredicate, index);
+        }
+        return index;
+    }
+
     private OntologyNode getOrCreateNode(Node node) {
         String id = nodeIdFromJenaNode(node);
         OntologyNode entity = nodes.get(id);
@@ -596,7 +1017,6 @@ public class OntologyGraph implements StreamRDF {
 
     public void handleLiteralTriple(Triple triple) {
 
-        String subjId = nodeIdFromJenaNode(triple.getSubject());
         OntologyNode subjNode = getOrCreateNode(triple.getSubject());
 
         String lang = triple.getObject().getLiteralLanguage();
@@ -604,7 +1024,8 @@ public class OntologyGraph implements StreamRDF {
             languages.add(lang);
         }
 
-        subjNode.properties.addProperty(triple.getPredicate().getURI(), PropertyValue.fromJenaNode(triple.getObject()));
+        subjNode.properties.addProperty(dictionary.intern(triple.getPredicate().getURI()),
+                PropertyValue.fromJenaNode(triple.getObject(), dictionary));
 
     }
 
@@ -626,7 +1047,8 @@ public class OntologyGraph implements StreamRDF {
                 break;
         }
 
-        subjNode.properties.addProperty(triple.getPredicate().getURI(), PropertyValue.fromJenaNode(triple.getObject()));
+        subjNode.properties.addProperty(dictionary.intern(triple.getPredicate().getURI()),
+                PropertyValue.fromJenaNode(triple.getObject(), dictionary));
 
 
     }
@@ -742,10 +1164,10 @@ public class OntologyGraph implements StreamRDF {
 
     public String nodeIdFromJenaNode(Node node)  {
         if(node.isURI()) {
-            return node.getURI();
+            return dictionary.intern(node.getURI());
         }
         if(node.isBlank()) {
-            return node.getBlankNodeId().toString();
+            return dictionary.intern(node.getBlankNodeId().toString());
         }
         throw new RuntimeException("unknown node type");
     }
@@ -838,6 +1260,58 @@ public class OntologyGraph implements StreamRDF {
     }
 
 
+    // Releases the spill file, if any. The graph can't be used afterwards.
+    //
+    public void close() throws IOException {
+        if(nodes instanceof SpillingNodeMap) {
+            ((SpillingNodeMap) nodes).close();
+        }
+    }
+
+    // A hash of the subgraph below a bnode value which is the same for any two subgraphs
+    // areSubgraphsIsomorphic() considers isomorphic, so candidates can be found by hash
+    // (see PropertySet). Cycles, which areSubgraphsIsomorphic() can't compare, are cut off.
+    //
+    public int subgraphHash(PropertyValue rootNode) {
+        return subgraphHash(rootNode, new ArrayList<>());
+    }
+
+    private int subgraphHash(PropertyValue rootNode, List<OntologyNode> path) {
+
+        OntologyNode node = nodes.get(nodeIdFromPropertyValue(rootNode));
+
+        if(node == null) {
+            return 0;
+        }
+
+        for(OntologyNode onPath : path) {
+            if(onPath == node) {
+                return 1;
+            }
+        }
+
+        path.add(node);
+
+        int hash = 1;
+
+        for(String predicate : node.properties.getPropertyPredicates()) {
+
+            List<PropertyValue> values = node.properties.getPropertyValues(predicate);
+
+            hash = (hash * 31 + predicate.hashCode()) * 31 + values.size();
+
+            for(PropertyValue value : values) {
+                hash = hash * 31 + (value.getType() == PropertyValue.Type.BNODE ?
+                        subgraphHash(value, path) : value.valueHash());
+            }
+        }
+
+        path.remove(path.size() - 1);
+
+        return hash;
+    }
+
+
     public OntologyNode getNodeForPropertyValue(PropertyValue value) {
 
         switch(value.getType()) {
@@ -39,7 +39,7 @@ public class OntologyNode {
     
 
     public String uri;
-    public Set<NodeType> types = new TreeSet<>();
+    public Set<NodeType> types = EnumSet.noneOf(NodeType.class);
 //    List<OntologyNode> parents;
     public PropertySet properties = new PropertySet();
 
@@ -0,0 +1,125 @@
+package uk.ac.ebi.rdf2json;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+// Loads the owl:imports closure of an ontology for --importParallelism.
+//
+// Each import is parsed into its own partial OntologyGraph on a worker pool. As soon as
+// an import has been parsed, its own imports are queued too, so the whole closure is
+// parsed concurrently rather than one level at a time.
+//
+// The partial graphs are merged into the main graph in the same breadth-first order the
+// sequential loader parses the imports in, so the order of property values (and which
+// owl:Ontology becomes the ontology node, if the main file has none) is unchanged. As in
+// the sequential loader, each file (including the ontology itself) is only loaded once.
+//
+public class ParallelImportLoader {
+
+    OntologyGraph graph;
+    ExecutorService pool;
+
+    private final Map<String, Future<OntologyGraph>> parsed = new HashMap<>();
+
+    // the files already in the graph before its imports (i.e. the ontology itself)
+    private Set<String> alreadyLoaded;
+
+    public ParallelImportLoader(OntologyGraph graph, int parallelism) {
+        this.graph = graph;
+        this.pool = Executors.newFixedThreadPool(parallelism, r -> {
+            Thread t = new Thread(r, "rdf2json import parser");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    // Parses and merges every import in graph.importUrls, and their imports in turn.
+    //
+    public void loadImports() {
+
+        try {
+            alreadyLoaded = new HashSet<>(graph.sourceUrls);
+
+            Queue<String> queue = new ArrayDeque<>(graph.importUrls);
+            graph.importUrls.clear();
+
+            for(String importUrl : queue) {
+                submit(importUrl);
+            }
+
+            Set<String> merged = new HashSet<>(alreadyLoaded);
+
+            while(!queue.isEmpty()) {
+
+                String importUrl = queue.remove();
+
+                if(!merged.add(importUrl)) {
+                    continue;
+                }
+
+                OntologyGraph partial = getParsed(importUrl);
+
+                System.out.println("merge import: " + importUrl);
+                Profile.Measurement merging = graph.profile.start("merge import " + importUrl);
+                graph.mergeImport(partial);
+                merging.finish(graph.nodes.size());
+
+                queue.addAll(partial.importUrls);
+            }
+
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private synchronized void submit(String importUrl) {
+
+        if(parsed.containsKey(importUrl) || alreadyLoaded.contains(importUrl)) {
+            return;
+        }
+
+        parsed.put(importUrl, pool.submit(() -> {
+
+            System.out.println("import: " + importUrl);
+            Profile.Measurement parsing = graph.profile.start("import " + importUrl);
+            OntologyGraph partial = graph.parseImport(importUrl, parsing);
+            parsing.finish(partial.nodes.size());
+
+            // start on the next level straight away; these are always submitted
+            // before this import is merged, so getParsed() will find them
+            for(String nestedImportUrl : partial.importUrls) {
+                submit(nestedImportUrl);
+            }
+
+            return partial;
+        }));
+    }
+
+    private OntologyGraph getParsed(String importUrl) {
+
+        Future<OntologyGraph> future;
+
+        synchronized(this) {
+            future = parsed.get(importUrl);
+        }
+
+        try {
+            return future.get();
+        } catch(InterruptedException e) {
+            throw new RuntimeException(e);
+        } catch(ExecutionException e) {
+            if(e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new RuntimeException(e.getCause());
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package uk.ac.ebi.rdf2json;
+
+import org.apache.jena.graph.Triple;
+import org.apache.jena.riot.RDFParserBuilder;
+import org.apache.jena.riot.lang.LabelToNode;
+import org.apache.jena.riot.system.StreamRDF;
+import org.apache.jena.riot.system.StreamRDFBase;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+
+// Parses a large N-Triples file on several threads (--parseParallelism).
+//
+// N-Triples has one triple per line, so the file is split into chunks on line boundaries
+// and each chunk is parsed on its own into a list of triples. The lists are passed on to
+// dest in file order on the calling thread, so dest sees exactly the triples a single
+// parser would have given it, in the same order, and doesn't need to be thread safe.
+//
+// Blank node labels are only meaningful within a file, so every chunk's parser allocates
+// blank nodes from the same seed (which is new for each file) to make the same label in
+// two chunks the same node.
+//
+public class ParallelNTriplesParser {
+
+    // smaller files aren't worth splitting
+    static final long CHUNK_SIZE = 8 * 1024 * 1024;
+
+    static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    // measurement (if not null) is the phase the parse belongs to (see Profile)
+    //
+    public static void parse(File file, int parallelism, Supplier<RDFParserBuilder> parserFactory, StreamRDF dest,
+                             Profile.Measurement measurement) throws IOException {
+
+        try(FileChannel channel = FileChannel.open(file.toPath())) {
+
+            List<long[]> chunks = split(channel);
+            UUID blankNodeSeed = UUID.randomUUID();
+
+            System.out.println("Parsing " + file + " in " + chunks.size() + " chunks on " + parallelism + " threads (--parseParallelism)");
+
+            ExecutorService pool = Executors.newFixedThreadPool(parallelism, r -> {
+                Thread t = new Thread(r, "rdf2json N-Triples parser");
+                t.setDaemon(true);
+                return t;
+            });
+
+            // Only a few chunks are parsed ahead of the one being passed on to dest, so that
+            // the triples waiting to be passed on don't take over the heap.
+            //
+            Deque<Future<List<Triple>>> parsing = new ArrayDeque<>();
+            int next = 0;
+
+            dest.start();
+
+            try {
+                while(next < chunks.size() || !parsing.isEmpty()) {
+
+                    while(next < chunks.size() && parsing.size() < parallelism * 2) {
+                        long[] chunk = chunks.get(next ++);
+                        Callable<List<Triple>> task = () -> parseChunk(channel, chunk[0], chunk[1], parserFactory.get(), blankNodeSeed);
+                        parsing.add(pool.submit(measurement != null ? measurement.onWorker(task) : task));
+                    }
+
+                    for(Triple triple : parsing.remove().get()) {
+                        dest.triple(triple);
+                    }
+                }
+            } catch(InterruptedException e) {
+                throw new RuntimeException(e);
+            } catch(ExecutionException e) {
+                if(e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw new IOException(e.getCause());
+            } finally {
+                pool.shutdownNow();
+            }
+
+            dest.finish();
+        }
+    }
+
+    // [start, end) of each chunk; every chunk but the last ends just after a newline
+    //
+    private static List<long[]> split(FileChannel channel) throws IOException {
+
+        List<long[]> chunks = new ArrayList<>();
+        ByteBuffer buf = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        long size = channel.size();
+
+        for(long start = 0; start < size; ) {
+
+            long end = Math.min(start + CHUNK_SIZE, size);
+
+            // move the end forward to the start of the next line
+            search:
+            while(end < size) {
+                buf.clear();
+                int n = channel.read(buf, end);
+                for(int i = 0; i < n; ++ i) {
+                    if(buf.get(i) == '\n') {
+                        end += i + 1;
+                        break search;
+                    }
+                }
+                end += n;
+            }
+
+            chunks.add(new long[] { start, end });
+            start = end;
+        }
+
+        return chunks;
+    }
+
+    private static List<Triple> parseChunk(FileChannel channel, long start, long end, RDFParserBuilder parser, UUID blankNodeSeed) {
+
+        List<Triple> triples = new ArrayList<>();
+
+        parser.labelToNode(LabelToNode.createScopeByDocumentHash(blankNodeSeed))
+                .source(new RangeInputStream(channel, start, end))
+                .parse(new StreamRDFBase() {
+                    @Override
+                    public void triple(Triple triple) {
+                        triples.add(triple);
+                    }
+                });
+
+        return triples;
+    }
+
+    // Reads [start, end) of a channel with positional reads, so that several can read the
+    // same channel at once.
+    //
+    private static class RangeInputStream extends InputStream {
+
+        FileChannel channel;
+        long pos;
+        long end;
+
+        RangeInputStream(FileChannel channel, long start, long end) {
+            this.channel = channel;
+            this.pos = start;
+            this.end = end;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) == -1 ? -1 : (b[0] & 0xff);
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+
+            if(pos >= end) {
+                return -1;
+            }
+
+            ByteBuffer buf = ByteBuffer.wrap(b, off, (int) Math.min(len, end - pos));
+            int n = channel.read(buf, pos);
+
+            if(n <= 0) {
+                return -1;
+            }
+
+            pos += n;
+            return n;
+        }
+    }
+}
@@ -0,0 +1,309 @@
+package uk.ac.ebi.rdf2json;
+
+import com.google.gson.stream.JsonWriter;
+import uk.ac.ebi.ols4.binaryjson.BinaryJson;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+// Loads several ontologies at once for --parallelism.
+//
+// Each ontology is written to its own temporary JSON (or binary, see BinaryJson) fragment.
+// The caller appends the fragments to the main output in config order, so the result is
+// the same as a sequential run.
+//
+// Peak memory is bounded by a heap budget. Before it starts, each ontology reserves an
+// estimate of the heap it will need based on the size of its source file. Ontologies are
+// started largest first, and an ontology only starts if its reservation fits in what is
+// left of the budget, so two huge ontologies never run together.
+//
+public class ParallelOntologyLoader {
+
+    // OntologyGraph needs roughly this much heap per byte of source file
+    // (ncbitaxon is ~1.5 GB of RDF/XML and needed 32 GB to load)
+    static final long HEAP_BYTES_PER_SOURCE_BYTE = 20;
+
+    // used when the source file isn't on disk, so we can't size it
+    static final long DEFAULT_HEAP_ESTIMATE = 1024L * 1024 * 1024;
+
+    public static class Fragment {
+        public String ontologyId;
+        public Path path;
+        public long start;
+        public long end;
+
+        // the files the ontology was loaded from (see OntologyGraph.sourceUrls)
+        public List<String> sourceUrls;
+    }
+
+    private static class Task {
+        int index;
+        String ontologyId;
+        Map<String, Object> config;
+        long heapReservation;
+        CompletableFuture<Fragment> result = new CompletableFuture<>();
+    }
+
+    int parallelism;
+    long heapBudget;
+    Path fragmentDir;
+    boolean binaryOutput;
+    boolean compact;
+    boolean loadLocalFiles;
+    boolean noDates;
+    String downloadedPath;
+    ParseCache parseCache;
+    ImportCache importCache;
+    Path spillDir;
+    int spillCacheSize;
+    int importParallelism;
+    int parseParallelism;
+    int annotatorParallelism;
+    int writeParallelism;
+    Path profileDir;
+
+    private final List<Task> pending = new ArrayList<>();
+    private long reserved = 0;
+    private int running = 0;
+
+    public ParallelOntologyLoader(int parallelism, long heapBudget, Path fragmentDir, boolean binaryOutput, boolean compact,
+                                  boolean loadLocalFiles, boolean noDates, String downloadedPath, ParseCache parseCache,
+                                  ImportCache importCache, Path spillDir, int spillCacheSize, int importParallelism,
+                                  int parseParallelism, int annotatorParallelism, int writeParallelism, Path profileDir) {
+        this.parallelism = parallelism;
+        this.heapBudget = heapBudget;
+        this.fragmentDir = fragmentDir;
+        this.binaryOutput = binaryOutput;
+        this.compact = compact;
+        this.loadLocalFiles = loadLocalFiles;
+        this.noDates = noDates;
+        this.downloadedPath = downloadedPath;
+        this.parseCache = parseCache;
+        this.importCache = importCache;
+        this.spillDir = spillDir;
+        this.spillCacheSize = spillCacheSize;
+        this.importParallelism = importParallelism;
+        this.parseParallelism = parseParallelism;
+        this.annotatorParallelism = annotatorParallelism;
+        this.writeParallelism = writeParallelism;
+        this.profileDir = profileDir;
+    }
+
+    // Starts loading all of the ontologies and returns one future per config, in config order.
+    // A future completes with null if nothing was written for that ontology.
+    //
+    public List<CompletableFuture<Fragment>> loadAll(List<Map<String, Object>> configs) {
+
+        List<CompletableFuture<Fragment>> results = new ArrayList<>();
+
+        for(int i = 0; i < configs.size(); ++ i) {
+            Task task = new Task();
+            task.index = i;
+            task.config = configs.get(i);
+            task.ontologyId = ((String) task.config.get("id")).toLowerCase();
+            task.heapReservation = Math.min(estimateHeap(task.config), heapBudget);
+            pending.add(task);
+            results.add(task.result);
+        }
+
+        pending.sort(Comparator.comparingLong((Task task) -> task.heapReservation).reversed());
+
+        for(int i = 0; i < parallelism; ++ i) {
+            Thread t = new Thread(this::runWorker, "rdf2json worker " + i);
+            t.setDaemon(true);
+            t.start();
+        }
+
+        return results;
+    }
+
+    private long estimateHeap(Map<String, Object> config) {
+
+        String url = OntologyGraph.getOntologyUrl(config);
+
+        if(url != null) {
+            File sourceFile = OntologyGraph.getLocalSourceFile(url, loadLocalFiles, downloadedPath);
+            if(sourceFile != null && sourceFile.exists()) {
+                return sourceFile.length() * HEAP_BYTES_PER_SOURCE_BYTE;
+            }
+        }
+
+        return DEFAULT_HEAP_ESTIMATE;
+    }
+
+    private void runWorker() {
+
+        for(;;) {
+
+            Task task;
+
+            try {
+                task = takeNextTask();
+            } catch(InterruptedException e) {
+                return;
+            }
+
+            if(task == null) {
+                return;
+            }
+
+            try {
+                task.result.complete(load(task));
+            } catch(Throwable t) {
+                t.printStackTrace();
+                task.result.complete(null);
+            } finally {
+                release(task);
+            }
+        }
+    }
+
+    // The largest pending ontology that fits in the remaining heap budget. If nothing is
+    // running the largest one starts regardless, as its reservation is capped at the budget.
+    //
+    private synchronized Task takeNextTask() throws InterruptedException {
+
+        for(;;) {
+
+            if(pending.isEmpty()) {
+                return null;
+            }
+
+            for(Iterator<Task> it = pending.iterator(); it.hasNext(); ) {
+                Task task = it.next();
+                if(running == 0 || reserved + task.heapReservation <= heapBudget) {
+                    it.remove();
+                    reserved += task.heapReservation;
+                    ++ running;
+                    return task;
+                }
+            }
+
+            wait();
+        }
+    }
+
+    private synchronized void release(Task task) {
+        reserved -= task.heapReservation;
+        -- running;
+        notifyAll();
+    }
+
+    private Fragment load(Task task) throws IOException {
+
+        System.out.println("--- Loading ontology: " + task.ontologyId + " (reserved "
+                + (task.heapReservation / 1024 / 1024) + " MB of heap budget)");
+
+        OntologyGraph graph = new OntologyGraph(task.config, loadLocalFiles, noDates, downloadedPath, parseCache, importCache, spillDir, spillCacheSize, importParallelism, parseParallelism, annotatorParallelism, writeParallelism);
+
+        try {
+            return write(task, graph);
+        } finally {
+            graph.close();
+        }
+    }
+
+    private Fragment write(Task task, OntologyGraph graph) throws IOException {
+
+        if(graph.ontologyNode == null) {
+            System.out.println("No Ontology node found for " + task.ontologyId + "; nothing will be written");
+            return null;
+        }
+
+        Fragment fragment = new Fragment();
+        fragment.ontologyId = task.ontologyId;
+        fragment.sourceUrls = graph.sourceUrls;
+        fragment.path = fragmentDir.resolve(task.index + "_" + OntologyGraph.urlToFilename(task.ontologyId)
+                + (binaryOutput ? BinaryJson.FILE_EXTENSION : ".json"));
+
+        try {
+            writeFragment(task, graph, fragment);
+        } catch(IOException | RuntimeException e) {
+            // so that nothing is left in fragmentDir for an ontology that wasn't written
+            deleteFragment(fragment);
+            throw e;
+        }
+
+        return fragment;
+    }
+
+    private void writeFragment(Task task, OntologyGraph graph, Fragment fragment) throws IOException {
+
+        long startTime = System.nanoTime();
+        System.out.println("Writing ontology: " + task.ontologyId);
+
+        // The fragment is wrapped in the same { "ontologies": [ ... ] } as the main output so
+        // that the ontology is indented exactly as it will be when copied into it (or, in the
+        // binary format, so that it is written as a self-contained ontology).
+        //
+        try(FileOutputStream os = new FileOutputStream(fragment.path.toFile())) {
+
+            JsonWriter writer = BinaryJson.createWriter(new BufferedOutputStream(os, BinaryJson.BUFFER_SIZE), binaryOutput, compact);
+
+            writer.beginObject();
+            writer.name("ontologies");
+            writer.beginArray();
+            writer.flush();
+
+            fragment.start = os.getChannel().position();
+            graph.write(writer);
+            writer.flush();
+            fragment.end = os.getChannel().position();
+
+            writer.endArray();
+            writer.endObject();
+            writer.close();
+        }
+
+        long endTime = System.nanoTime();
+        System.out.println("Write ontology " + task.ontologyId + ": " + Profile.formatSeconds(endTime - startTime));
+
+        if(profileDir != null) {
+            graph.profile.write(profileDir, task.ontologyId, graph);
+        }
+    }
+
+    public static void deleteFragment(Fragment fragment) {
+        try {
+            Files.deleteIfExists(fragment.path);
+        } catch(IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    // Deletes fragmentDir and anything still in it (e.g. the fragments of ontologies that
+    // came after one that failed). Failing to do so doesn't affect the output, so it is only
+    // reported.
+    //
+    public static void deleteFragmentDir(Path fragmentDir) {
+
+        List<Path> paths;
+
+        try(Stream<Path> walk = Files.walk(fragmentDir)) {
+            paths = walk.sorted(Comparator.reverseOrder()).collect(Collectors.toList());
+        } catch(IOException e) {
+            e.printStackTrace();
+            return;
+        }
+
+        for(Path path : paths) {
+            try {
+                Files.deleteIfExists(path);
+            } catch(IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+}
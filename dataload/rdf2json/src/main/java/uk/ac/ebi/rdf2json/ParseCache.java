@@ -0,0 +1,184 @@
+package uk.ac.ebi.rdf2json;
+
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.lang.LabelToNode;
+import org.apache.jena.riot.system.StreamRDF;
+import org.apache.jena.riot.system.StreamRDF2;
+import org.apache.jena.riot.system.StreamRDFWrapper;
+import org.apache.jena.riot.thrift.BinRDF;
+import uk.ac.ebi.ols4.downloadmanifest.DownloadManifest;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.UUID;
+
+// Keeps the triples of each source file in Jena's RDF-Thrift binary format (--parseCacheDir),
+// which is many times faster to read back than RDF/XML is to parse.
+//
+// The cached copy is named after the source and a SHA-256 of its contents (and the language
+// it is parsed as), so a source whose contents change is parsed again, and the copy for its
+// previous contents is deleted. A copy is only moved into place once it has been written
+// completely, so any copy in the cache is valid.
+//
+// The SHA-256 of a predownloaded file is taken from the predownloader's manifest if the
+// file hasn't changed since (see DownloadManifest), so unchanged files aren't read at all.
+//
+public class ParseCache {
+
+    static final String EXTENSION = ".rdft";
+
+    static final int BUFFER_SIZE = 1024 * 1024;
+
+    // leaves room for the hash and extension within the usual 255 byte limit on file names
+    static final int MAX_NAME_LENGTH = 128;
+
+    public interface Parser {
+        void parse(StreamRDF dest) throws IOException;
+    }
+
+    Path dir;
+
+    // the predownloader's manifest, or null
+    DownloadManifest downloads;
+
+    public ParseCache(Path dir, DownloadManifest downloads) throws IOException {
+        this.dir = dir;
+        this.downloads = downloads;
+        Files.createDirectories(dir);
+    }
+
+    // Streams the triples of source into dest, from the cache if it has them and otherwise
+    // with parser (caching the triples as they go past).
+    //
+    public void parse(String url, File source, Lang lang, Parser parser, StreamRDF dest) throws IOException {
+
+        String name = cacheName(url);
+        String hash = hash(url, source, lang);
+        Path cached = dir.resolve(name + "." + hash + EXTENSION);
+
+        if(Files.exists(cached)) {
+
+            System.out.println("Using cached triples for " + url + " (--parseCacheDir)");
+
+            try(InputStream is = new BufferedInputStream(Files.newInputStream(cached), BUFFER_SIZE)) {
+                BinRDF.inputStreamToStream(is, withFreshBlankNodes(dest));
+            }
+            return;
+        }
+
+        // Not Files.createTempFile, which would leave the copy readable only by its owner; the
+        // cache directory may be shared by the users that run the dataload
+        //
+        Path temp = dir.resolve(name + "." + UUID.randomUUID() + ".tmp");
+
+        try {
+            try(OutputStream os = new BufferedOutputStream(Files.newOutputStream(temp, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE), BUFFER_SIZE)) {
+
+                // values=false keeps the lexical form of every literal as it was in the source
+                StreamRDF cache = BinRDF.streamToOutputStream(os, false);
+
+                parser.parse(new StreamRDF2(dest, cache));
+            }
+
+            Files.move(temp, cached, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+
+        deleteOtherVersions(name, cached);
+    }
+
+    // The source URL as a file name, without the leading dots and underscores that local
+    // paths (./testcases/...) would otherwise give, which would make the copies hidden files.
+    // Long URLs are cut short; the copy is told apart by the hash of its contents anyway.
+    //
+    static String cacheName(String url) {
+
+        String name = OntologyGraph.urlToFilename(url).replaceFirst("^[._-]+", "");
+
+        if(name.length() > MAX_NAME_LENGTH) {
+            name = name.substring(0, MAX_NAME_LENGTH);
+        }
+
+        return name.isEmpty() ? "_" : name;
+    }
+
+    // RDF-Thrift keeps the labels of blank nodes, so every time a copy is read back it would
+    // give the same blank nodes. Parsing the source gives new ones each time, which matters
+    // if a graph reads the same file twice (e.g. two of its imports import it): its blank
+    // nodes are then two copies rather than one. This gives the blank nodes of each read
+    // their own labels, allocated the same way the parser allocates them.
+    //
+    static StreamRDF withFreshBlankNodes(StreamRDF dest) {
+
+        LabelToNode labels = LabelToNode.createScopeByDocumentHash(UUID.randomUUID());
+
+        return new StreamRDFWrapper(dest) {
+
+            @Override
+            public void triple(Triple triple) {
+                Node s = triple.getSubject();
+                Node o = triple.getObject();
+                if(s.isBlank() || o.isBlank()) {
+                    triple = Triple.create(fresh(s), triple.getPredicate(), fresh(o));
+                }
+                super.triple(triple);
+            }
+
+            private Node fresh(Node node) {
+                return node.isBlank() ? labels.get(null, node.getBlankNodeLabel()) : node;
+            }
+        };
+    }
+
+    private void deleteOtherVersions(String name, Path current) throws IOException {
+
+        // name + "." + 64 hex digits + EXTENSION
+        int length = name.length() + 1 + 64 + EXTENSION.length();
+
+        try(DirectoryStream<Path> entries = Files.newDirectoryStream(dir, name + ".*" + EXTENSION)) {
+            for(Path entry : entries) {
+                if(!entry.equals(current) && entry.getFileName().toString().length() == length) {
+                    Files.deleteIfExists(entry);
+                }
+            }
+        }
+    }
+
+    private String hash(String url, File source, Lang lang) throws IOException {
+
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch(NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+
+        String contentHash = downloads != null ? downloads.getSha256(url, source) : DownloadManifest.sha256(source.toPath());
+
+        digest.update(lang.getName().getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+        digest.update(contentHash.getBytes(StandardCharsets.UTF_8));
+
+        StringBuilder sb = new StringBuilder();
+        for(byte b : digest.digest()) {
+            sb.append(String.format("%02x", b));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,211 @@
+package uk.ac.ebi.rdf2json;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+// The resources used by each phase of loading and writing an ontology: parsing the
+// ontology, each import, each annotator pass and writing. Written as JSON with --profile,
+// one file per ontology, e.g. to plan the memory of LSF jobs or to find slow annotators.
+//
+// For each phase this records the wall time, the CPU time and the bytes allocated by the
+// thread that ran it (plus the worker threads it handed work to, see onWorker), the
+// number of nodes in the graph at the end of the phase, and the peak heap while it ran.
+//
+// The peak heap is the sum of the peaks of the JVM's heap pools, which are reset when a
+// phase starts; it is an upper bound, and only belongs to the phase when phases run one at
+// a time. With --parallelism, --importParallelism or --annotatorParallelism it is
+// the peak of whatever was running at the same time.
+//
+public class Profile {
+
+    private static final Gson gson = new GsonBuilder().setPrettyPrinting().disableHtmlEscaping().create();
+
+    private static final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+    private static final List<MemoryPoolMXBean> heapPools = ManagementFactory.getMemoryPoolMXBeans().stream()
+            .filter(pool -> pool.getType() == MemoryType.HEAP && pool.isValid())
+            .collect(Collectors.toList());
+
+    private static final boolean cpuTimeSupported = threads.isCurrentThreadCpuTimeSupported() && threads.isThreadCpuTimeEnabled();
+
+    private static final boolean allocatedBytesSupported = threads instanceof com.sun.management.ThreadMXBean
+            && ((com.sun.management.ThreadMXBean) threads).isThreadAllocatedMemorySupported()
+            && ((com.sun.management.ThreadMXBean) threads).isThreadAllocatedMemoryEnabled();
+
+    // CPU time and allocated bytes are left out (null) if the JVM can't measure them
+    static class Phase {
+        String name;
+        double wallSeconds;
+        Double cpuSeconds;
+        Long allocatedBytes;
+        long peakHeapBytes;
+        int nodes;
+    }
+
+    static class Report {
+        String ontologyId;
+        double wallSeconds;
+        Double cpuSeconds;
+        Long allocatedBytes;
+        long peakHeapBytes;
+        long maxHeapBytes;
+        int numberOfClasses;
+        int numberOfProperties;
+        int numberOfIndividuals;
+        List<Phase> phases;
+    }
+
+    private final long startTime = System.nanoTime();
+    private final List<Phase> phases = new ArrayList<>();
+
+    public Measurement start(String name) {
+        return new Measurement(name);
+    }
+
+    // A phase that has started. finish() must be called on the thread that started it.
+    //
+    public class Measurement {
+
+        final String name;
+        final long wallStart;
+        final long cpuStart;
+        final long allocatedStart;
+
+        final AtomicLong workerCpu = new AtomicLong();
+        final AtomicLong workerAllocated = new AtomicLong();
+
+        Measurement(String name) {
+            this.name = name;
+            resetPeakHeap();
+            this.wallStart = System.nanoTime();
+            this.cpuStart = cpuTime();
+            this.allocatedStart = allocatedBytes();
+        }
+
+        // Wraps a task that does part of this phase on another thread, so that the CPU time
+        // and allocations of that thread are counted too.
+        //
+        public <T> Callable<T> onWorker(Callable<T> task) {
+            return () -> {
+                long cpu = cpuTime();
+                long allocated = allocatedBytes();
+                try {
+                    return task.call();
+                } finally {
+                    workerCpu.addAndGet(cpuTime() - cpu);
+                    workerAllocated.addAndGet(allocatedBytes() - allocated);
+                }
+            };
+        }
+
+        public void finish(int nodes) {
+
+            Phase phase = new Phase();
+            phase.name = name;
+            phase.wallSeconds = seconds(System.nanoTime() - wallStart);
+            phase.peakHeapBytes = peakHeap();
+            phase.nodes = nodes;
+
+            if(cpuTimeSupported) {
+                phase.cpuSeconds = seconds(cpuTime() - cpuStart + workerCpu.get());
+            }
+            if(allocatedBytesSupported) {
+                phase.allocatedBytes = allocatedBytes() - allocatedStart + workerAllocated.get();
+            }
+
+            synchronized(phases) {
+                phases.add(phase);
+            }
+        }
+    }
+
+    // Writes the report for a graph (once it has been written) to dir/<ontologyId>.json
+    //
+    public void write(Path dir, String ontologyId, OntologyGraph graph) throws IOException {
+
+        Report report = new Report();
+        report.ontologyId = ontologyId;
+        report.wallSeconds = seconds(System.nanoTime() - startTime);
+        report.maxHeapBytes = Runtime.getRuntime().maxMemory();
+        report.numberOfClasses = graph.numberOfClasses;
+        report.numberOfProperties = graph.numberOfProperties;
+        report.numberOfIndividuals = graph.numberOfIndividuals;
+
+        synchronized(phases) {
+            report.phases = new ArrayList<>(phases);
+        }
+
+        double cpuSeconds = 0;
+        long allocatedBytes = 0;
+
+        for(Phase phase : report.phases) {
+            report.peakHeapBytes = Math.max(report.peakHeapBytes, phase.peakHeapBytes);
+            if(phase.cpuSeconds != null) {
+                cpuSeconds += phase.cpuSeconds;
+            }
+            if(phase.allocatedBytes != null) {
+                allocatedBytes += phase.allocatedBytes;
+            }
+        }
+
+        if(cpuTimeSupported) {
+            report.cpuSeconds = cpuSeconds;
+        }
+        if(allocatedBytesSupported) {
+            report.allocatedBytes = allocatedBytes;
+        }
+
+        Files.createDirectories(dir);
+
+        try(Writer writer = Files.newBufferedWriter(dir.resolve(ontologyId + ".json"), StandardCharsets.UTF_8)) {
+            gson.toJson(report, writer);
+        }
+    }
+
+    // Seconds as a decimal, for log messages
+    //
+    public static String formatSeconds(long nanos) {
+        return String.format("%.3fs", seconds(nanos));
+    }
+
+    private static double seconds(long nanos) {
+        return nanos / 1e9;
+    }
+
+    private static long cpuTime() {
+        return cpuTimeSupported ? threads.getCurrentThreadCpuTime() : 0;
+    }
+
+    private static long allocatedBytes() {
+        return allocatedBytesSupported ? ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId()) : 0;
+    }
+
+    private static void resetPeakHeap() {
+        for(MemoryPoolMXBean pool : heapPools) {
+            pool.resetPeakUsage();
+        }
+    }
+
+    private static long peakHeap() {
+        long peak = 0;
+        for(MemoryPoolMXBean pool : heapPools) {
+            peak += pool.getPeakUsage().getUsed();
+        }
+        return peak;
+    }
+}
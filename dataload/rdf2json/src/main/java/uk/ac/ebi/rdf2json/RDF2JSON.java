@@ -1,21 +1,34 @@
 package uk.ac.ebi.rdf2json;
 
 import com.google.gson.Gson;
+import com.google.gson.internal.LazilyParsedNumber;
 import com.google.gson.stream.JsonReader;
-import com.google.gson.stream.JsonToken;
 import com.google.gson.stream.JsonWriter;
 import org.apache.commons.cli.*;
+import uk.ac.ebi.ols4.binaryjson.BinaryJson;
+import uk.ac.ebi.ols4.binaryjson.BinaryJsonWriter;
+import uk.ac.ebi.ols4.binaryjson.Compression;
+import uk.ac.ebi.ols4.downloadmanifest.DownloadManifest;
+import uk.ac.ebi.rdf2json.helpers.JsonOntologyScanner;
+import uk.ac.ebi.rdf2json.helpers.RawJsonCopier;
 
 import java.io.*;
 import java.net.URL;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collection;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
 import java.util.stream.Collectors;
 
 public class RDF2JSON {
@@ -32,11 +45,31 @@ public class RDF2JSON {
         optDownloadedPath.setRequired(false);
         options.addOption(optDownloadedPath);
 
+        Option optParseCacheDir = new Option(null, "parseCacheDir", true, "Optional directory to cache the parsed triples of predownloaded (and local) files in, so that unchanged files don't have to be parsed again");
+        optParseCacheDir.setRequired(false);
+        options.addOption(optParseCacheDir);
+
+        Option optImportCacheSize = new Option(null, "importCacheSizeMB", true, "Optional amount of heap, in MB, to keep the triples of owl:imports in for the rest of the run, so that an import shared by several ontologies is only parsed once (default 0: parse every import)");
+        optImportCacheSize.setRequired(false);
+        options.addOption(optImportCacheSize);
+
         Option optMergeOutputWith = new Option(null, "mergeOutputWith", true, "JSON file to merge our output with. Any existing ontologies not indexed this time will be kept.");
         optMergeOutputWith.setRequired(false);
         options.addOption(optMergeOutputWith);
 
-        Option output = new Option(null, "output", true, "JSON output filename");
+        Option optCompact = new Option(null, "compact", false, "Write the output JSON without indentation");
+        optCompact.setRequired(false);
+        options.addOption(optCompact);
+
+        Option optCompression = new Option(null, "compression", true, "Compress the output with none (default), gzip or zstd");
+        optCompression.setRequired(false);
+        options.addOption(optCompression);
+
+        Option optIncremental = new Option(null, "incremental", false, "Copy ontologies whose config and source files are unchanged since the previous run from the previous output rather than loading them again (keeps a manifest next to the output)");
+        optIncremental.setRequired(false);
+        options.addOption(optIncremental);
+
+        Option output = new Option(null, "output", true, "JSON output filename (or ending in " + BinaryJson.FILE_EXTENSION + " for the binary format)");
         output.setRequired(true);
         options.addOption(output);
 	
@@ -48,6 +81,46 @@ public class RDF2JSON {
         noDates.setRequired(false);
         options.addOption(noDates);
 
+        Option optParallelism = new Option(null, "parallelism", true, "Number of ontologies to load at the same time (default 1)");
+        optParallelism.setRequired(false);
+        options.addOption(optParallelism);
+
+        Option optHeapBudget = new Option(null, "heapBudgetMB", true, "Heap that ontologies loaded in parallel may use between them, in MB (default 3/4 of the max heap)");
+        optHeapBudget.setRequired(false);
+        options.addOption(optHeapBudget);
+
+        Option optSpillDir = new Option(null, "spillDir", true, "Directory to spill blank nodes to while loading, for ontologies too large to hold in memory (default: keep everything in memory)");
+        optSpillDir.setRequired(false);
+        options.addOption(optSpillDir);
+
+        Option optSpillCacheSize = new Option(null, "spillCacheSize", true, "Number of blank nodes to keep in memory with --spillDir (default 100000)");
+        optSpillCacheSize.setRequired(false);
+        options.addOption(optSpillCacheSize);
+
+        Option optImportParallelism = new Option(null, "importParallelism", true, "Number of owl:imports of an ontology to parse at the same time (default 1)");
+        optImportParallelism.setRequired(false);
+        options.addOption(optImportParallelism);
+
+        Option optParseParallelism = new Option(null, "parseParallelism", true, "Number of threads to parse a large N-Triples file with (default 1)");
+        optParseParallelism.setRequired(false);
+        options.addOption(optParseParallelism);
+
+        Option optAnnotatorParallelism = new Option(null, "annotatorParallelism", true, "Number of annotators that may run on an ontology at the same time (default 1)");
+        optAnnotatorParallelism.setRequired(false);
+        options.addOption(optAnnotatorParallelism);
+
+        Option optWriteParallelism = new Option(null, "writeParallelism", true, "Number of threads to write the entities of an ontology with (default 1)");
+        optWriteParallelism.setRequired(false);
+        options.addOption(optWriteParallelism);
+
+        Option optProfile = new Option(null, "profile", false, "Write the time, CPU, allocations and heap used by each phase of loading each ontology to <output>.profile/<ontologyId>.json");
+        optProfile.setRequired(false);
+        options.addOption(optProfile);
+
+        Option optReportHeap = new Option(null, "reportHeap", false, "Print the heap used by each ontology once it has been loaded (forces a GC; for measuring memory use)");
+        optReportHeap.setRequired(false);
+        options.addOption(optReportHeap);
+
         CommandLineParser parser = new DefaultParser();
         HelpFormatter formatter = new HelpFormatter();
         CommandLine cmd;
@@ -66,9 +139,43 @@ public class RDF2JSON {
         String outputFilePath = cmd.getOptionValue("output");
 
 	    String downloadedPath = cmd.getOptionValue("downloadedPath");
+        DownloadManifest downloads = downloadedPath != null ? DownloadManifest.read(downloadedPath) : null;
+        ParseCache parseCache = cmd.hasOption("parseCacheDir") ? new ParseCache(Paths.get(cmd.getOptionValue("parseCacheDir")), downloads) : null;
+        long importCacheSize = Long.parseLong(cmd.getOptionValue("importCacheSizeMB", "0")) * 1024 * 1024;
+        ImportCache importCache = importCacheSize > 0 ? new ImportCache(importCacheSize) : null;
         boolean bLoadLocalFiles = cmd.hasOption("loadLocalFiles");
         boolean bNoDates = cmd.hasOption("noDates");
         String mergeOutputWith = cmd.getOptionValue("mergeOutputWith");
+        int parallelism = Integer.parseInt(cmd.getOptionValue("parallelism", "1"));
+        long heapBudget = cmd.hasOption("heapBudgetMB") ?
+                Long.parseLong(cmd.getOptionValue("heapBudgetMB")) * 1024 * 1024 :
+                Math.max(Runtime.getRuntime().maxMemory() / 4 * 3 - importCacheSize, 0);
+        Path spillDir = cmd.hasOption("spillDir") ? Paths.get(cmd.getOptionValue("spillDir")) : null;
+        int spillCacheSize = Integer.parseInt(cmd.getOptionValue("spillCacheSize", "100000"));
+        int importParallelism = Integer.parseInt(cmd.getOptionValue("importParallelism", "1"));
+        int parseParallelism = Integer.parseInt(cmd.getOptionValue("parseParallelism", "1"));
+        int annotatorParallelism = Integer.parseInt(cmd.getOptionValue("annotatorParallelism", "1"));
+        int writeParallelism = Integer.parseInt(cmd.getOptionValue("writeParallelism", "1"));
+        boolean bReportHeap = cmd.hasOption("reportHeap");
+        Path profileDir = cmd.hasOption("profile") ? Paths.get(outputFilePath + ".profile") : null;
+        boolean bBinaryOutput = BinaryJson.isBinaryPath(outputFilePath);
+        boolean bIncremental = cmd.hasOption("incremental");
+        boolean bCompact = cmd.hasOption("compact");
+        Compression outputCompression = Compression.fromOption(cmd.getOptionValue("compression"));
+
+        if(bReportHeap && parallelism > 1) {
+            // with several ontologies loading at once the heap in use isn't any one ontology's
+            System.out.println("--reportHeap can't be used with --parallelism");
+            System.exit(1);
+            return;
+        }
+
+        if(bIncremental && outputCompression != Compression.NONE) {
+            // the previous output is copied from by byte range, so it can't be compressed
+            System.out.println("--incremental can't be used with --compression");
+            System.exit(1);
+            return;
+        }
 
 
         System.out.println("Configs: " + configFilePaths);
@@ -119,8 +226,18 @@ public class RDF2JSON {
             }
         }
 
-        JsonWriter writer = new JsonWriter(new FileWriter(outputFilePath));
-        writer.setIndent("  ");
+        IncrementalOutput incremental = bIncremental ?
+                new IncrementalOutput(outputFilePath, bBinaryOutput ? "binary" : bCompact ? "compact json" : "json",
+                        bNoDates, bLoadLocalFiles, downloadedPath, downloads) : null;
+
+        // Ontologies that are already serialised (see RawJsonCopier) are written straight to
+        // outputChannel once the writer has been flushed, and outputFile gives the positions
+        // of the ontologies in the file for --incremental.
+        //
+        FileOutputStream outputFile = new FileOutputStream(incremental != null ? incremental.getTempOutputPath() : outputFilePath);
+        OutputStream outputStream = outputCompression.compress(new BufferedOutputStream(outputFile, BinaryJson.BUFFER_SIZE));
+        WritableByteChannel outputChannel = outputCompression == Compression.NONE ? outputFile.getChannel() : Channels.newChannel(outputStream);
+        JsonWriter writer = BinaryJson.createWriter(outputStream, bBinaryOutput, bCompact);
 
         writer.beginObject();
 
@@ -132,96 +249,163 @@ public class RDF2JSON {
 
 
         Set<String> loadedOntologyIds = new HashSet<>();
+        Path fragmentDir = null;
 
-        for(var ontoConfig : mergedConfigs.values()) {
+        if(parallelism > 1) {
 
-            String ontologyId = ((String)ontoConfig.get("id")).toLowerCase();
-            System.out.println("--- Loading ontology: " + ontologyId);
+            System.out.println("Loading up to " + parallelism + " ontologies in parallel with a heap budget of " + (heapBudget / 1024 / 1024) + " MB");
 
-            try {
+            fragmentDir = Files.createTempDirectory(Paths.get(outputFilePath).toAbsolutePath().getParent(), "rdf2json_fragments");
 
-                OntologyGraph graph = new OntologyGraph(ontoConfig, bLoadLocalFiles, bNoDates, downloadedPath);
+            ParallelOntologyLoader loader = new ParallelOntologyLoader(
+                    parallelism, heapBudget, fragmentDir, bBinaryOutput, bCompact, bLoadLocalFiles, bNoDates, downloadedPath, parseCache, importCache, spillDir, spillCacheSize, importParallelism,
+                    parseParallelism, annotatorParallelism, writeParallelism, profileDir);
 
-                if(graph.ontologyNode == null) {
-                    System.out.println("No Ontology node found; nothing will be written");
+            // Ontologies unchanged since the previous run (--incremental) aren't loaded, but are
+            // still copied to the output in config order between the ones that are.
+            //
+            List<Map<String,Object>> configsToLoad = new ArrayList<>();
+            List<String> unchangedOntologyIds = new ArrayList<>();
+
+            for(var ontoConfig : mergedConfigs.values()) {
+                String ontologyId = ((String)ontoConfig.get("id")).toLowerCase();
+                if(incremental != null && incremental.isUnchanged(ontologyId, ontoConfig)) {
+                    unchangedOntologyIds.add(ontologyId);
+                } else {
+                    unchangedOntologyIds.add(null);
+                    configsToLoad.add(ontoConfig);
+                }
+            }
+
+            var futures = loader.loadAll(configsToLoad).iterator();
+
+            for(String unchangedOntologyId : unchangedOntologyIds) {
+
+                if(unchangedOntologyId != null) {
+                    incremental.copyUnchanged(unchangedOntologyId, writer, outputFile.getChannel());
+                    loadedOntologyIds.add(unchangedOntologyId);
                     continue;
                 }
 
-                long startTime3 = System.nanoTime();
-                System.out.println("Writing ontology: " + ontologyId);
-                graph.write(writer);
-                long endTime3 = System.nanoTime();
-                System.out.println("Write ontology " + ontologyId + ": " + ((endTime3 - startTime3) / 1000 / 1000 / 1000));
+                var future = futures.next();
 
-                loadedOntologyIds.add(ontologyId);
+                ParallelOntologyLoader.Fragment fragment;
 
-            } catch(Throwable t) {
-                 t.printStackTrace();
-            }
-        }
+                try {
+                    fragment = future.get();
+                } catch(InterruptedException | ExecutionException e) {
+                    throw new RuntimeException(e);
+                }
 
-        if(mergeOutputWith != null) {
+                if(fragment == null) {
+                    continue;
+                }
 
-            // Need to look for any ontologies that we didn't load but were loaded last time, and
-            // keep the old versions of them from the previous JSON file.
+                writer.flush();
+                long start = outputFile.getChannel().position();
 
-            System.out.println("Adding previously loaded ontologies from " + mergeOutputWith + " (--mergeOutputWith)");
-            long startTime = System.nanoTime();
+                try(FileChannel fragmentChannel = FileChannel.open(fragment.path)) {
+                    if(bBinaryOutput) {
+                        ((BinaryJsonWriter) writer).appendOntology(fragment.ontologyId, fragmentChannel, fragment.start, fragment.end);
+                    } else {
+                        RawJsonCopier.appendArrayElement(writer, outputChannel, fragmentChannel, fragment.start, fragment.end);
+                    }
+                }
 
-            JsonReader scanReader = new JsonReader(new InputStreamReader(new FileInputStream(mergeOutputWith)));
-            JsonReader actualReader = new JsonReader(new InputStreamReader(new FileInputStream(mergeOutputWith)));
+                writer.flush();
+                long end = outputFile.getChannel().position();
 
-            scanReader.beginObject();
-            actualReader.beginObject();
+                if(incremental != null) {
+                    incremental.written(fragment.ontologyId, mergedConfigs.get(fragment.ontologyId), fragment.sourceUrls, start, end);
+                }
 
-            while (scanReader.peek() != JsonToken.END_OBJECT) {
-    
-                String name = scanReader.nextName();
-                actualReader.nextName();
-    
-                if (name.equals("ontologies")) {
+                ParallelOntologyLoader.deleteFragment(fragment);
 
-                    scanReader.beginArray();
-                    actualReader.beginArray();
+                loadedOntologyIds.add(fragment.ontologyId);
+            }
+        } else {
 
-                    while (scanReader.peek() != JsonToken.END_ARRAY) {
+            for(var ontoConfig : mergedConfigs.values()) {
 
-                        scanReader.beginObject();
+                String ontologyId = ((String)ontoConfig.get("id")).toLowerCase();
 
-                        String key = scanReader.nextName();
+                if(incremental != null && incremental.isUnchanged(ontologyId, ontoConfig)) {
+                    incremental.copyUnchanged(ontologyId, writer, outputFile.getChannel());
+                    loadedOntologyIds.add(ontologyId);
+                    continue;
+                }
 
-                        if(!key.equals("ontologyId")) {
-                            throw new RuntimeException("mergeOutputWith does not look like rdf2json output?");
-                        }
+                System.out.println("--- Loading ontology: " + ontologyId);
+
+                try {
 
-                        String ontologyId = scanReader.nextString().toLowerCase();
+                    OntologyGraph graph = new OntologyGraph(ontoConfig, bLoadLocalFiles, bNoDates, downloadedPath, parseCache, importCache, spillDir, spillCacheSize, importParallelism, parseParallelism, annotatorParallelism, writeParallelism);
 
-                        if(!loadedOntologyIds.contains(ontologyId)) {
+                    // closed whatever happens, so that a failure doesn't leave its spill file behind
+                    try {
 
-                            System.out.println("Keeping output for ontology " + ontologyId + " from previous run (--mergeOutputWith)");
+                        if(graph.ontologyNode == null) {
+                            System.out.println("No Ontology node found; nothing will be written");
+                            continue;
+                        }
 
-                            Map<String,Object> ontology = gson.fromJson(actualReader, Map.class);
-                            writeGenericValue(writer, ontology);
+                        if(bReportHeap) {
+                            reportHeap(ontologyId);
+                        }
 
-                        } else {
-                            actualReader.skipValue();
+                        long startTime3 = System.nanoTime();
+                        System.out.println("Writing ontology: " + ontologyId);
+                        writer.flush();
+                        long start = outputFile.getChannel().position();
+                        graph.write(writer);
+                        writer.flush();
+                        long end = outputFile.getChannel().position();
+                        long endTime3 = System.nanoTime();
+                        System.out.println("Write ontology " + ontologyId + ": " + Profile.formatSeconds(endTime3 - startTime3));
+
+                        if(profileDir != null) {
+                            graph.profile.write(profileDir, ontologyId, graph);
                         }
 
-                        while(scanReader.peek() != JsonToken.END_OBJECT) {
-                            scanReader.nextName();
-                            scanReader.skipValue();
+                        if(incremental != null) {
+                            incremental.written(ontologyId, ontoConfig, graph.sourceUrls, start, end);
                         }
 
-                        scanReader.endObject();
+                        loadedOntologyIds.add(ontologyId);
+
+                    } finally {
+                        graph.close();
                     }
 
-                    scanReader.endArray();
-                    actualReader.endArray();
+                } catch(Throwable t) {
+                     t.printStackTrace();
                 }
             }
+        }
+
+        if(mergeOutputWith != null) {
+
+            // Need to look for any ontologies that we didn't load but were loaded last time, and
+            // keep the old versions of them from the previous JSON file.
+
+            System.out.println("Adding previously loaded ontologies from " + mergeOutputWith + " (--mergeOutputWith)");
+            long startTime = System.nanoTime();
+
+            if(BinaryJson.isCompressedFile(mergeOutputWith)) {
+
+                keepPreviousCompressedOutput(writer, mergeOutputWith, loadedOntologyIds);
+
+            } else if(BinaryJson.isBinaryFile(mergeOutputWith)) {
+
+                keepPreviousBinaryOutput(writer, mergeOutputWith, loadedOntologyIds);
+
+            } else {
+
+                keepPreviousJsonOutput(writer, outputChannel, bCompact, mergeOutputWith, loadedOntologyIds);
+            }
 
             long endTime = System.nanoTime();
-            System.out.println("time to merge output with previous run: " + ((endTime - startTime) / 1000 / 1000 / 1000) + "s");
+            System.out.println("time to merge output with previous run: " + Profile.formatSeconds(endTime - startTime));
         }
 
 
@@ -229,42 +413,195 @@ public class RDF2JSON {
         writer.endObject();
 
         writer.close();
+
+        if(incremental != null) {
+            incremental.finish();
+        }
+
+        if(fragmentDir != null) {
+            ParallelOntologyLoader.deleteFragmentDir(fragmentDir);
+        }
     }
 
 
-    private static void writeGenericValue(JsonWriter writer, Object val) throws IOException {
+    // The ontologies to keep are found in one pass over the previous output without parsing
+    // them, and if we are writing JSON with the same layout (indented or --compact) too
+    // their bytes are copied over as they are.
+    //
+    private static void keepPreviousJsonOutput(JsonWriter writer, WritableByteChannel output, boolean compact, String mergeOutputWith, Set<String> loadedOntologyIds) throws IOException {
+
+        List<JsonOntologyScanner.Range> ranges = JsonOntologyScanner.scan(Paths.get(mergeOutputWith));
+
+        boolean copyRaw = !(writer instanceof BinaryJsonWriter) && JsonOntologyScanner.isCompact(Paths.get(mergeOutputWith)) == compact;
+
+        try(FileChannel previousChannel = FileChannel.open(Paths.get(mergeOutputWith))) {
+
+            for(JsonOntologyScanner.Range range : ranges) {
+
+                String ontologyId = range.ontologyId.toLowerCase();
+
+                if(loadedOntologyIds.contains(ontologyId)) {
+                    continue;
+                }
 
-        if(val instanceof Collection) {
-            writer.beginArray();
-            for(Object entry : ((Collection<Object>) val)) {
-                writeGenericValue(writer, entry);
+                System.out.println("Keeping output for ontology " + ontologyId + " from previous run (--mergeOutputWith)");
+
+                if(copyRaw) {
+                    RawJsonCopier.appendArrayElement(writer, output, previousChannel, range.start, range.end);
+                } else {
+                    JsonReader ontologyReader = new JsonReader(new InputStreamReader(
+                            Channels.newInputStream(previousChannel.position(range.start)), StandardCharsets.UTF_8));
+                    copyValue(ontologyReader, writer);
+                }
             }
-            writer.endArray();
-        } else if(val instanceof Map) {
-            Map<String,Object> map = new TreeMap<String,Object> ( (Map<String,Object>) val );
-            writer.beginObject();
-            for(String k : map.keySet()) {
-                writer.name(k);
-                writeGenericValue(writer, map.get(k));
+        }
+    }
+
+    // A compressed previous output can't be copied from by byte range, so it is read
+    // through from the start and the ontologies to keep are copied token by token.
+    //
+    private static void keepPreviousCompressedOutput(JsonWriter writer, String mergeOutputWith, Set<String> loadedOntologyIds) throws IOException {
+
+        try(JsonReader reader = BinaryJson.openReader(mergeOutputWith)) {
+
+            reader.beginObject();
+
+            while(reader.hasNext()) {
+
+                if(!reader.nextName().equals("ontologies")) {
+                    reader.skipValue();
+                    continue;
+                }
+
+                reader.beginArray();
+
+                while(reader.hasNext()) {
+
+                    reader.beginObject();
+
+                    if(!reader.nextName().equals("ontologyId")) {
+                        throw new RuntimeException("mergeOutputWith does not look like rdf2json output?");
+                    }
+
+                    String ontologyId = reader.nextString();
+
+                    if(loadedOntologyIds.contains(ontologyId.toLowerCase())) {
+                        while(reader.hasNext()) {
+                            reader.nextName();
+                            reader.skipValue();
+                        }
+                        reader.endObject();
+                        continue;
+                    }
+
+                    System.out.println("Keeping output for ontology " + ontologyId.toLowerCase() + " from previous run (--mergeOutputWith)");
+
+                    writer.beginObject();
+                    writer.name("ontologyId");
+                    writer.value(ontologyId);
+                    while(reader.hasNext()) {
+                        writer.name(reader.nextName());
+                        copyValue(reader, writer);
+                    }
+                    reader.endObject();
+                    writer.endObject();
+                }
+
+                reader.endArray();
             }
-            writer.endObject();
-        } else if(val instanceof String) {
-            writer.value((String) val);
-        } else if(val instanceof Long) {
-            writer.value((Long) val);
-        } else if(val instanceof Integer) {
-            writer.value((Integer) val);
-        } else if(val instanceof Double) {
-            writer.value((Double) val);
-        } else if(val instanceof Boolean) {
-            writer.value((Boolean) val);
-        } else if(val == null) {
-            writer.nullValue();
-        } else {
-            throw new RuntimeException("Unknown value type");
+
+            reader.endObject();
         }
+    }
+
+    // The binary format has an index of the ontologies, so there is no need to scan the
+    // previous output for them, and if we are writing the binary format too they can be
+    // copied over as they are.
+    //
+    private static void keepPreviousBinaryOutput(JsonWriter writer, String mergeOutputWith, Set<String> loadedOntologyIds) throws IOException {
 
+        try(FileChannel previousChannel = FileChannel.open(Paths.get(mergeOutputWith))) {
+
+            for(BinaryJson.IndexEntry entry : BinaryJson.readIndex(mergeOutputWith)) {
+
+                String ontologyId = entry.ontologyId.toLowerCase();
+
+                if(loadedOntologyIds.contains(ontologyId)) {
+                    continue;
+                }
+
+                System.out.println("Keeping output for ontology " + ontologyId + " from previous run (--mergeOutputWith)");
+
+                if(writer instanceof BinaryJsonWriter) {
+                    ((BinaryJsonWriter) writer).appendOntology(entry.ontologyId, previousChannel, entry.offset, entry.offset + entry.length);
+                } else {
+                    try(JsonReader ontologyReader = BinaryJson.openOntology(mergeOutputWith, entry.ontologyId)) {
+                        copyValue(ontologyReader, writer);
+                    }
+                }
+            }
+        }
     }
 
+    // The graph is still reachable here, so after a full GC the used heap is (roughly) its
+    // footprint plus the dictionary and whatever the JVM itself holds on to.
+    //
+    private static void reportHeap(String ontologyId) {
+        Runtime runtime = Runtime.getRuntime();
+        System.gc();
+        System.gc();
+        long used = runtime.totalMemory() - runtime.freeMemory();
+        System.out.println("heap used after loading " + ontologyId + ": " + (used / 1024) + " KB");
+    }
 
+    // Copies the next value from reader to writer token by token, keeping the order of the
+    // keys, for when the previous output is in the other format.
+    //
+    private static void copyValue(JsonReader reader, JsonWriter writer) throws IOException {
+
+        int depth = 0;
+
+        do {
+            switch(reader.peek()) {
+                case BEGIN_OBJECT:
+                    reader.beginObject();
+                    writer.beginObject();
+                    ++ depth;
+                    break;
+                case END_OBJECT:
+                    reader.endObject();
+                    writer.endObject();
+                    -- depth;
+                    break;
+                case BEGIN_ARRAY:
+                    reader.beginArray();
+                    writer.beginArray();
+                    ++ depth;
+                    break;
+                case END_ARRAY:
+                    reader.endArray();
+                    writer.endArray();
+                    -- depth;
+                    break;
+                case NAME:
+                    writer.name(reader.nextName());
+                    break;
+                case STRING:
+                    writer.value(reader.nextString());
+                    break;
+                case NUMBER:
+                    writer.value(new LazilyParsedNumber(reader.nextString()));
+                    break;
+                case BOOLEAN:
+                    writer.value(reader.nextBoolean());
+                    break;
+                case NULL:
+                    reader.nextNull();
+                    writer.nullValue();
+                    break;
+                default:
+                    throw new IOException("unexpected " + reader.peek() + " copying previous output");
+            }
+        } while(depth > 0);
+    }
 }
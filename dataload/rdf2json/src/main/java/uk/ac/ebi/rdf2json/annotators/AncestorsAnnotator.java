@@ -14,7 +14,6 @@ public class AncestorsAnnotator {
 
     public static void annotateAncestors(OntologyGraph graph) {
 
-        long startTime3 = System.nanoTime();
         for(String id : graph.nodes.keySet()) {
 
             OntologyNode c = graph.nodes.get(id);
@@ -30,8 +29,6 @@ public class AncestorsAnnotator {
             c.properties.addProperty("directAncestor", new PropertyValueAncestors(c, "directParent"));
         }
 
-        long endTime3 = System.nanoTime();
-        System.out.println("annotate ancestors: " + ((endTime3 - startTime3) / 1000 / 1000 / 1000));
     }
 
 
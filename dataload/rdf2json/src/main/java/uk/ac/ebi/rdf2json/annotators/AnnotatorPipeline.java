@@ -0,0 +1,416 @@
+package uk.ac.ebi.rdf2json.annotators;
+
+import com.google.gson.Gson;
+import uk.ac.ebi.rdf2json.OntologyGraph;
+import uk.ac.ebi.rdf2json.OntologyNode;
+import uk.ac.ebi.rdf2json.Profile;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+// Runs the annotators over a loaded OntologyGraph.
+//
+// Each annotator is added as a step which declares the properties it reads and writes
+// (a trailing * matches any property with that prefix, and ANY matches everything). A step
+// depends on every earlier step it conflicts with: one writes what the other reads or
+// writes. The declaration order is therefore the only ordering rule, and the steps that
+// don't conflict are free to run at the same time.
+//
+// With a parallelism of 1 the steps simply run in declaration order. Otherwise each step is
+// started as soon as the steps it depends on are done. Steps that conflict never overlap,
+// so every property is written by the same steps in the same order and the output is the
+// same either way.
+//
+// Node annotators (see NodeAnnotator) are fused: rather than each of them sweeping over all
+// of the nodes, a node annotator joins the sweep of an earlier one if it doesn't conflict
+// with any of the steps declared in between, which it then runs ahead of. Every node is
+// visited once per sweep, with its node annotators applied in declaration order, so the
+// result is the same as running them one after the other. With a parallelism above 1 the
+// sweep is split into key ranges which are visited on separate threads.
+//
+public class AnnotatorPipeline {
+
+    public static final String ANY = "*";
+
+    public static class Step {
+
+        String name;
+        Consumer<OntologyGraph> annotator;
+        Function<OntologyGraph, NodeAnnotator> nodeAnnotator;
+
+        Set<String> reads = new TreeSet<>();
+        Set<String> writes = new TreeSet<>();
+
+        // indexes of the earlier steps this one has to wait for
+        List<Integer> dependencies = new ArrayList<>();
+
+        Step(String name, Consumer<OntologyGraph> annotator, Function<OntologyGraph, NodeAnnotator> nodeAnnotator) {
+            this.name = name;
+            this.annotator = annotator;
+            this.nodeAnnotator = nodeAnnotator;
+        }
+
+        public Step reads(String... properties) {
+            return reads(Arrays.asList(properties));
+        }
+
+        public Step reads(Collection<String> properties) {
+            reads.addAll(properties);
+            return this;
+        }
+
+        public Step writes(String... properties) {
+            return writes(Arrays.asList(properties));
+        }
+
+        public Step writes(Collection<String> properties) {
+            writes.addAll(properties);
+            return this;
+        }
+
+        public String getName() {
+            return name;
+        }
+    }
+
+    // One or more steps which run as a whole: either a single annotator, or a sweep over the
+    // nodes applying one or more node annotators.
+    //
+    static class Unit {
+
+        List<Integer> members = new ArrayList<>();
+        boolean isSweep;
+
+        // indexes of the earlier units this one has to wait for
+        List<Integer> dependencies = new ArrayList<>();
+    }
+
+    List<Step> steps = new ArrayList<>();
+    List<Unit> units = new ArrayList<>();
+
+    public Step add(String name, Consumer<OntologyGraph> annotator) {
+        Step step = new Step(name, annotator, null);
+        steps.add(step);
+        return step;
+    }
+
+    // Adds an annotator which visits one node at a time. The NodeAnnotator is created from
+    // the graph once per run, just before its sweep starts.
+    //
+    public Step addNodeAnnotator(String name, Function<OntologyGraph, NodeAnnotator> nodeAnnotator) {
+        Step step = new Step(name, null, nodeAnnotator);
+        steps.add(step);
+        return step;
+    }
+
+    // Runs every step and returns the time each one took in ms, in the order they were
+    // started. Fused node annotators are timed together, under their names joined by "+".
+    //
+    public Map<String, Long> run(OntologyGraph graph, int parallelism) {
+
+        long startTime = System.nanoTime();
+
+        resolveDependencies();
+        planUnits();
+
+        long[] durations = parallelism > 1 ? runConcurrently(graph, parallelism) : runSequentially(graph);
+
+        Map<String, Long> timings = new LinkedHashMap<>();
+        for(int u = 0; u < units.size(); ++ u) {
+            timings.put(getName(units.get(u)), durations[u] / 1000 / 1000);
+        }
+
+        long endTime = System.nanoTime();
+        System.out.println("annotate " + steps.size() + " annotators in " + units.size() + " passes (parallelism "
+                + parallelism + "): " + ((endTime - startTime) / 1000 / 1000) + "ms");
+        System.out.println("annotator timings (ms): " + new Gson().toJson(timings));
+
+        return timings;
+    }
+
+    private void resolveDependencies() {
+        for(int j = 0; j < steps.size(); ++ j) {
+            Step step = steps.get(j);
+            step.dependencies.clear();
+            for(int i = 0; i < j; ++ i) {
+                Step earlier = steps.get(i);
+                if(overlaps(earlier.writes, step.reads)
+                        || overlaps(earlier.reads, step.writes)
+                        || overlaps(earlier.writes, step.writes)) {
+                    step.dependencies.add(i);
+                }
+            }
+        }
+    }
+
+    // Groups the steps into units, in the order the units will run in sequentially.
+    //
+    private void planUnits() {
+
+        units.clear();
+
+        // the last sweep, which later node annotators may still join, and the
+        // steps declared since it was started that are not part of it
+        Unit sweep = null;
+        List<Integer> passed = new ArrayList<>();
+
+        for(int i = 0; i < steps.size(); ++ i) {
+
+            Step step = steps.get(i);
+
+            if(step.nodeAnnotator != null) {
+
+                if(sweep != null && !conflictsWithAny(i, passed)) {
+                    sweep.members.add(i);
+                    continue;
+                }
+
+                sweep = new Unit();
+                sweep.isSweep = true;
+                sweep.members.add(i);
+                units.add(sweep);
+                passed.clear();
+
+            } else {
+
+                Unit unit = new Unit();
+                unit.members.add(i);
+                units.add(unit);
+
+                if(sweep != null) {
+                    passed.add(i);
+                }
+            }
+        }
+
+        int[] unitOfStep = new int[steps.size()];
+        for(int u = 0; u < units.size(); ++ u) {
+            for(int i : units.get(u).members) {
+                unitOfStep[i] = u;
+            }
+        }
+
+        for(int u = 0; u < units.size(); ++ u) {
+            Unit unit = units.get(u);
+            Set<Integer> dependencies = new TreeSet<>();
+            for(int i : unit.members) {
+                for(int d : steps.get(i).dependencies) {
+                    if(unitOfStep[d] != u) {
+                        dependencies.add(unitOfStep[d]);
+                    }
+                }
+            }
+            unit.dependencies = new ArrayList<>(dependencies);
+        }
+    }
+
+    private boolean conflictsWithAny(int i, List<Integer> others) {
+        for(int other : others) {
+            if(steps.get(i).dependencies.contains(other)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private long[] runSequentially(OntologyGraph graph) {
+
+        long[] durations = new long[units.size()];
+
+        for(int u = 0; u < units.size(); ++ u) {
+            durations[u] = runUnit(units.get(u), graph, 1);
+        }
+
+        return durations;
+    }
+
+    private long[] runConcurrently(OntologyGraph graph, int parallelism) {
+
+        long[] durations = new long[units.size()];
+
+        int[] numWaiting = new int[units.size()];
+        List<List<Integer>> dependents = new ArrayList<>();
+        for(int u = 0; u < units.size(); ++ u) {
+            dependents.add(new ArrayList<>());
+        }
+        for(int v = 0; v < units.size(); ++ v) {
+            for(int u : units.get(v).dependencies) {
+                dependents.get(u).add(v);
+                ++ numWaiting[v];
+            }
+        }
+
+        ExecutorService pool = newPool(parallelism, "rdf2json annotator");
+
+        try {
+            ExecutorCompletionService<Integer> completed = new ExecutorCompletionService<>(pool);
+            int numRunning = 0;
+
+            for(int u = 0; u < units.size(); ++ u) {
+                if(numWaiting[u] == 0) {
+                    submit(completed, u, graph, parallelism, durations);
+                    ++ numRunning;
+                }
+            }
+
+            while(numRunning > 0) {
+
+                int done = completed.take().get();
+                -- numRunning;
+
+                for(int v : dependents.get(done)) {
+                    if(-- numWaiting[v] == 0) {
+                        submit(completed, v, graph, parallelism, durations);
+                        ++ numRunning;
+                    }
+                }
+            }
+
+        } catch(InterruptedException e) {
+            throw new RuntimeException(e);
+        } catch(ExecutionException e) {
+            throw unwrap(e);
+        } finally {
+            pool.shutdownNow();
+        }
+
+        return durations;
+    }
+
+    private void submit(ExecutorCompletionService<Integer> completed, int u, OntologyGraph graph, int parallelism, long[] durations) {
+        completed.submit(() -> {
+            durations[u] = runUnit(units.get(u), graph, parallelism);
+            return u;
+        });
+    }
+
+    private long runUnit(Unit unit, OntologyGraph graph, int parallelism) {
+
+        long startTime = System.nanoTime();
+        Profile.Measurement measurement = graph.profile.start("annotate " + getName(unit));
+
+        if(unit.isSweep) {
+            sweep(unit, graph, parallelism, measurement);
+        } else {
+            steps.get(unit.members.get(0)).annotator.accept(graph);
+        }
+
+        measurement.finish(graph.nodes.size());
+        return System.nanoTime() - startTime;
+    }
+
+    private void sweep(Unit unit, OntologyGraph graph, int parallelism, Profile.Measurement measurement) {
+
+        List<NodeAnnotator> annotators = new ArrayList<>();
+        for(int i : unit.members) {
+            annotators.add(steps.get(i).nodeAnnotator.apply(graph));
+        }
+
+        if(parallelism <= 1) {
+
+            for(String id : graph.nodes.keySet()) {
+                OntologyNode c = graph.nodes.get(id);
+                for(NodeAnnotator annotator : annotators) {
+                    annotator.annotateNode(graph, c);
+                }
+            }
+
+        } else {
+
+            // more ranges than threads, as some parts of the key space (e.g. the
+            // entities) take much longer to annotate than others (bnodes)
+            //
+            List<String> keys = new ArrayList<>(graph.nodes.keySet());
+            int numRanges = parallelism * 8;
+            int rangeSize = Math.max(1, (keys.size() + numRanges - 1) / numRanges);
+
+            ExecutorService pool = newPool(parallelism, "rdf2json node annotator");
+
+            try {
+                List<Future<?>> ranges = new ArrayList<>();
+
+                for(int start = 0; start < keys.size(); start += rangeSize) {
+                    List<String> range = keys.subList(start, Math.min(start + rangeSize, keys.size()));
+                    ranges.add(pool.submit(measurement.onWorker(() -> {
+                        for(String id : range) {
+                            OntologyNode c = graph.nodes.get(id);
+                            for(NodeAnnotator annotator : annotators) {
+                                annotator.annotateNode(graph, c);
+                            }
+                        }
+                        return null;
+                    })));
+                }
+
+                for(Future<?> range : ranges) {
+                    range.get();
+                }
+
+            } catch(InterruptedException e) {
+                throw new RuntimeException(e);
+            } catch(ExecutionException e) {
+                throw unwrap(e);
+            } finally {
+                pool.shutdownNow();
+            }
+        }
+
+        for(NodeAnnotator annotator : annotators) {
+            annotator.finish(graph);
+        }
+    }
+
+    private String getName(Unit unit) {
+        List<String> names = new ArrayList<>();
+        for(int i : unit.members) {
+            names.add(steps.get(i).name);
+        }
+        return String.join("+", names);
+    }
+
+    private static ExecutorService newPool(int parallelism, String threadName) {
+        return Executors.newFixedThreadPool(parallelism, r -> {
+            Thread t = new Thread(r, threadName);
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    private static RuntimeException unwrap(ExecutionException e) {
+        if(e.getCause() instanceof RuntimeException) {
+            return (RuntimeException) e.getCause();
+        }
+        return new RuntimeException(e.getCause());
+    }
+
+    private static boolean overlaps(Set<String> a, Set<String> b) {
+        for(String x : a) {
+            for(String y : b) {
+                if(matches(x, y) || matches(y, x)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static boolean matches(String pattern, String property) {
+        if(pattern.endsWith("*")) {
+            return property.startsWith(pattern.substring(0, pattern.length() - 1));
+        }
+        return pattern.equals(property);
+    }
+}
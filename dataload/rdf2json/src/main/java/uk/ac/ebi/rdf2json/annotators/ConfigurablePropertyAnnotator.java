@@ -26,8 +26,6 @@ public class ConfigurablePropertyAnnotator {
 	Set<String> synonymProperties = SynonymAnnotator.getSynonymProperties(graph);
 	
 
-        long startTime3 = System.nanoTime();
-
         for(String id : graph.nodes.keySet()) {
             OntologyNode c = graph.nodes.get(id);
             if (c.types.contains(OntologyNode.NodeType.CLASS) ||
@@ -55,9 +53,6 @@ public class ConfigurablePropertyAnnotator {
             }
         }
 
-        long endTime3 = System.nanoTime();
-        System.out.println("annotate configurable properties: " + ((endTime3 - startTime3) / 1000 / 1000 / 1000));
-
 
     }
 }
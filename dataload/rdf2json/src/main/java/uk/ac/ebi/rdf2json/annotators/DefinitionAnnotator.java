@@ -5,7 +5,7 @@ import uk.ac.ebi.rdf2json.OntologyNode;
 import uk.ac.ebi.rdf2json.annotators.helpers.PropertyCollator;
 import uk.ac.ebi.rdf2json.properties.PropertyValue;
 
-public class DefinitionAnnotator {
+public class DefinitionAnnotator implements NodeAnnotator {
 
 	public static Set<String> getDefinitionProperties(OntologyGraph graph) {
 
@@ -27,28 +27,26 @@ public class DefinitionAnnotator {
 		return definitionProperties;
 	}
 
-	public static void annotateDefinitions(OntologyGraph graph) {
-		collateProperties(graph, "definition", getDefinitionProperties(graph));
-	}
+	Set<String> sourceProps;
 
-	private static void collateProperties(OntologyGraph graph, String destProp, Collection<String> sourceProps) {
+	public DefinitionAnnotator(OntologyGraph graph) {
+		sourceProps = getDefinitionProperties(graph);
+	}
 
-		for(String id : graph.nodes.keySet()) {
-			OntologyNode c = graph.nodes.get(id);
+	@Override
+	public void annotateNode(OntologyGraph graph, OntologyNode c) {
 
-			// skip bnodes
-			if(c.uri == null)
-				continue;
+		// skip bnodes
+		if(c.uri == null)
+			return;
 
-			for(String prop : sourceProps) {
-				List<PropertyValue> values = c.properties.getPropertyValues(prop);
-				if(values != null) {
-					for(PropertyValue value : values) {
-						c.properties.addProperty(destProp, value);
-					}
+		for(String prop : sourceProps) {
+			List<PropertyValue> values = c.properties.getPropertyValues(prop);
+			if(values != null) {
+				for(PropertyValue value : values) {
+					c.properties.addProperty("definition", value);
 				}
 			}
 		}
-
 	}
 }
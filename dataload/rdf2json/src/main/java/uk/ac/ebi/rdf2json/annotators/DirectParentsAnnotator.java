@@ -11,7 +11,6 @@ public class DirectParentsAnnotator {
 
     public static void annotateDirectParents(OntologyGraph graph) {
 
-        long startTime3 = System.nanoTime();
         for(String id : graph.nodes.keySet()) {
 
             OntologyNode c = graph.nodes.get(id);
@@ -69,8 +68,6 @@ public class DirectParentsAnnotator {
                 }
             }
         }
-        long endTime3 = System.nanoTime();
-        System.out.println("annotate direct parents: " + ((endTime3 - startTime3) / 1000 / 1000 / 1000));
 
     }
 
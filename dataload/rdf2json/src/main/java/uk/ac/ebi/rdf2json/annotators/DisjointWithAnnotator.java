@@ -14,8 +14,6 @@ public class DisjointWithAnnotator {
 
 	public static void annotateDisjointWith(OntologyGraph graph) {
 
-		long startTime3 = System.nanoTime();
-
 		for(String id : graph.nodes.keySet()) {
 			OntologyNode c = graph.nodes.get(id);
 
@@ -72,8 +70,5 @@ public class DisjointWithAnnotator {
 			}
 		}
 
-		long endTime3 = System.nanoTime();
-		System.out.println("annotate disjointWith: " + ((endTime3 - startTime3) / 1000 / 1000 / 1000));
-
 	}
 }
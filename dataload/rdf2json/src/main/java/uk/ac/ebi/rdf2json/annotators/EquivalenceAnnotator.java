@@ -17,7 +17,6 @@ public class EquivalenceAnnotator {
 	   */
     public static void annotateEquivalance(OntologyGraph graph) {
 
-        long startTime3 = System.nanoTime();
         for(String id : graph.nodes.keySet()) {
 
             OntologyNode c = graph.nodes.get(id);
@@ -61,7 +60,5 @@ public class EquivalenceAnnotator {
 
 	}
 
-        long endTime3 = System.nanoTime();
-        System.out.println("annotate equivalence: " + ((endTime3 - startTime3) / 1000 / 1000 / 1000));
     }
 }
@@ -7,40 +7,50 @@ import uk.ac.ebi.rdf2json.properties.PropertyValue;
 import uk.ac.ebi.rdf2json.properties.PropertyValueLiteral;
 
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
-public class HasIndividualsAnnotator {
+public class HasIndividualsAnnotator implements NodeAnnotator {
 
-    public static void annotateHasIndividuals(OntologyGraph graph) {
+    // The flag goes on the class rather than the individual being visited, so the classes
+    // are collected here and only annotated once every node has been visited.
+    //
+    Set<OntologyNode> classesWithIndividuals = ConcurrentHashMap.newKeySet();
 
-        long startTime3 = System.nanoTime();
-        for(String id : graph.nodes.keySet()) {
-            OntologyNode c = graph.nodes.get(id);
-            if (c.types.contains(OntologyNode.NodeType.INDIVIDUAL)) {
+    public HasIndividualsAnnotator(OntologyGraph graph) {
+    }
+
+    @Override
+    public void annotateNode(OntologyGraph graph, OntologyNode c) {
+
+        if (c.types.contains(OntologyNode.NodeType.INDIVIDUAL)) {
 
-                // skip bnodes
-                if(c.uri == null)
-                    continue;
+            // skip bnodes
+            if(c.uri == null)
+                return;
 
-                List<PropertyValue> types = c.properties.getPropertyValues("http://www.w3.org/1999/02/22-rdf-syntax-ns#type");
+            List<PropertyValue> types = c.properties.getPropertyValues("http://www.w3.org/1999/02/22-rdf-syntax-ns#type");
 
-                if(types != null) {
-                    for(PropertyValue type : types) {
+            if(types != null) {
+                for(PropertyValue type : types) {
 
-                        OntologyNode typeNode = graph.getNodeForPropertyValue(type);
+                    OntologyNode typeNode = graph.getNodeForPropertyValue(type);
 
-                        if(typeNode != null
-                                && typeNode.types.contains(OntologyNode.NodeType.CLASS)
-                                && typeNode.uri != null) {
+                    if(typeNode != null
+                            && typeNode.types.contains(OntologyNode.NodeType.CLASS)
+                            && typeNode.uri != null) {
 
-                            typeNode.properties.addProperty("hasIndividuals", PropertyValueLiteral.fromString("true"));
-                        }
+                        classesWithIndividuals.add(typeNode);
                     }
                 }
             }
+        }
+    }
 
-
+    @Override
+    public void finish(OntologyGraph graph) {
+        for(OntologyNode classNode : classesWithIndividuals) {
+            classNode.properties.addProperty("hasIndividuals", PropertyValueLiteral.fromString("true"));
         }
-        long endTime3 = System.nanoTime();
-        System.out.println("annotate has individuals: " + ((endTime3 - startTime3) / 1000 / 1000 / 1000));
     }
 }
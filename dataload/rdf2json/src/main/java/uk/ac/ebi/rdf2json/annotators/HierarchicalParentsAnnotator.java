@@ -34,7 +34,6 @@ public class HierarchicalParentsAnnotator {
 
 	Set<String> hierarchicalProperties = getHierarchicalProperties(graph);
 
-        long startTime3 = System.nanoTime();
         for(String id : graph.nodes.keySet()) {
             OntologyNode c = graph.nodes.get(id);
             if (c.types.contains(OntologyNode.NodeType.CLASS) ||
@@ -109,8 +108,6 @@ public class HierarchicalParentsAnnotator {
                 }
             }
         }
-        long endTime3 = System.nanoTime();
-        System.out.println("annotate hierarchical parents: " + ((endTime3 - startTime3) / 1000 / 1000 / 1000));
     }
 
 
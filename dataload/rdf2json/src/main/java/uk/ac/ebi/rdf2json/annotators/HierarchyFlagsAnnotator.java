@@ -14,8 +14,6 @@ public class HierarchyFlagsAnnotator {
 
     public static void annotateHierarchyFlags(OntologyGraph graph) {
 
-        long startTime3 = System.nanoTime();
-
         // Set of IRIs that have children
         Set<String> hasChildren = new HashSet<>();
         Set<String> hasHierarchicalChildren = new HashSet<>();
@@ -107,9 +105,6 @@ public class HierarchyFlagsAnnotator {
             }
         }
 
-        long endTime3 = System.nanoTime();
-        System.out.println("annotate hierarchy flags: " + ((endTime3 - startTime3) / 1000 / 1000 / 1000));
-
 
     }
 }
@@ -17,7 +17,6 @@ public class InverseOfAnnotator {
 	   */
     public static void annotateInverseOf(OntologyGraph graph) {
 
-        long startTime3 = System.nanoTime();
         for(String id : graph.nodes.keySet()) {
 
             OntologyNode c = graph.nodes.get(id);
@@ -46,7 +45,5 @@ public class InverseOfAnnotator {
 
 	}
 
-        long endTime3 = System.nanoTime();
-        System.out.println("annotate inverseOf: " + ((endTime3 - startTime3) / 1000 / 1000 / 1000));
     }
 }
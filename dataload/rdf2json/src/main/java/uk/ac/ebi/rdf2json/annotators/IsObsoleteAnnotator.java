@@ -8,30 +8,25 @@ import uk.ac.ebi.rdf2json.properties.PropertyValueURI;
 
 import java.util.List;
 
-public class IsObsoleteAnnotator {
+public class IsObsoleteAnnotator implements NodeAnnotator {
 
-	public static void annotateIsObsolete(OntologyGraph graph) {
-
-		long startTime3 = System.nanoTime();
+	public IsObsoleteAnnotator(OntologyGraph graph) {
+	}
 
-		for(String id : graph.nodes.keySet()) {
-		    OntologyNode c = graph.nodes.get(id);
+	@Override
+	public void annotateNode(OntologyGraph graph, OntologyNode c) {
 
-		    if (c.types.contains(OntologyNode.NodeType.CLASS) ||
+		if (c.types.contains(OntologyNode.NodeType.CLASS) ||
 				c.types.contains(OntologyNode.NodeType.PROPERTY) ||
 				c.types.contains(OntologyNode.NodeType.INDIVIDUAL)) {
 
 			// skip bnodes
 			if(c.uri == null)
-				continue;
-			}
-
-			c.properties.addProperty("isObsolete",
-					PropertyValueLiteral.fromString(isEntityObsolete(c) ? "true" : "false"));
+				return;
 		}
 
-		long endTime3 = System.nanoTime();
-		System.out.println("annotate isObsolete: " + ((endTime3 - startTime3) / 1000 / 1000 / 1000));
+		c.properties.addProperty("isObsolete",
+				PropertyValueLiteral.fromString(isEntityObsolete(c) ? "true" : "false"));
 	}
 
 	private static boolean isEntityObsolete(OntologyNode node) {
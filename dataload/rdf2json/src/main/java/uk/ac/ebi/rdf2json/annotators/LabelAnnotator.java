@@ -6,7 +6,7 @@ import uk.ac.ebi.rdf2json.annotators.helpers.PropertyCollator;
 import uk.ac.ebi.rdf2json.properties.PropertyValue;
 import uk.ac.ebi.rdf2json.properties.PropertyValueLiteral;
 
-public class LabelAnnotator {
+public class LabelAnnotator implements NodeAnnotator {
 
     public static Set<String> getLabelProperties(OntologyGraph graph) {
 
@@ -28,50 +28,43 @@ public class LabelAnnotator {
         return labelProperties;
     }
 
-    public static void annotateLabels(OntologyGraph graph) {
-        collateProperties(graph, "label", getLabelProperties(graph), List.of("shortForm"));
-    }
-
-    private static void collateProperties(OntologyGraph graph, String destProp, Collection<String> sourceProps, Collection<String> fallbackProps) {
+    Set<String> sourceProps;
+    List<String> fallbackProps = List.of("shortForm");
 
-        long startTime3 = System.nanoTime();
+    public LabelAnnotator(OntologyGraph graph) {
+        sourceProps = getLabelProperties(graph);
+    }
 
-        for(String id : graph.nodes.keySet()) {
-            OntologyNode c = graph.nodes.get(id);
+    @Override
+    public void annotateNode(OntologyGraph graph, OntologyNode c) {
 
-            // skip bnodes
-            if(c.uri == null)
-                continue;
+        // skip bnodes
+        if(c.uri == null)
+            return;
 
-            boolean hasEnglishValue = false;
+        boolean hasEnglishValue = false;
 
-            for(String prop : sourceProps) {
-                List<PropertyValue> values = c.properties.getPropertyValues(prop);
-                if(values != null) {
-                    for(PropertyValue value : values) {
-                        c.properties.addProperty(destProp, value);
-                        if(!isNonEnglishValue(graph, value))
-                            hasEnglishValue = true;
-                    }
+        for(String prop : sourceProps) {
+            List<PropertyValue> values = c.properties.getPropertyValues(prop);
+            if(values != null) {
+                for(PropertyValue value : values) {
+                    c.properties.addProperty("label", value);
+                    if(!isNonEnglishValue(graph, value))
+                        hasEnglishValue = true;
                 }
             }
+        }
 
-            if(!hasEnglishValue) {
-                for(String prop : fallbackProps) {
-                    List<PropertyValue> values = c.properties.getPropertyValues(prop);
-                    if (values != null) {
-                        for (PropertyValue value : values) {
-                            c.properties.addProperty(destProp, value);
-                        }
+        if(!hasEnglishValue) {
+            for(String prop : fallbackProps) {
+                List<PropertyValue> values = c.properties.getPropertyValues(prop);
+                if (values != null) {
+                    for (PropertyValue value : values) {
+                        c.properties.addProperty("label", value);
                     }
                 }
             }
         }
-
-        long endTime3 = System.nanoTime();
-        System.out.println("collate properties from " + sourceProps + " and fallback " + fallbackProps + " into " + destProp + ": " + ((endTime3 - startTime3) / 1000 / 1000 / 1000));
-
-
     }
 
     private static boolean isNonEnglishValue(OntologyGraph graph, PropertyValue value) {
@@ -9,7 +9,6 @@ public class NegativePropertyAssertionAnnotator {
 
     public static void annotateNegativePropertyAssertions(OntologyGraph graph) {
 
-		long startTime3 = System.nanoTime();
 		for (String id : graph.nodes.keySet()) {
 			OntologyNode c = graph.nodes.get(id);
 			if (c.types.contains(OntologyNode.NodeType.NEGATIVE_PROPERTY_ASSERTION)) {
@@ -41,8 +40,6 @@ public class NegativePropertyAssertionAnnotator {
 				}
 			}
 		}
-		long endTime3 = System.nanoTime();
-		System.out.println("annotate negative property assertions: " + ((endTime3 - startTime3) / 1000 / 1000 / 1000));
 	}
 	
 }
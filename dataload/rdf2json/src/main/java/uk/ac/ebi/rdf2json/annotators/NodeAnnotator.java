@@ -0,0 +1,21 @@
+package uk.ac.ebi.rdf2json.annotators;
+
+import uk.ac.ebi.rdf2json.OntologyGraph;
+import uk.ac.ebi.rdf2json.OntologyNode;
+
+// An annotator which only looks at one node at a time, and only adds properties to that
+// node (anything it needs to add elsewhere is held back until finish()).
+//
+// AnnotatorPipeline runs these together in a single sweep over the nodes instead of one
+// sweep each (see AnnotatorPipeline.addNodeAnnotator), and the sweep can be split up by key
+// ranges across threads, so annotateNode() must not depend on the order nodes are visited
+// in and must be safe to call from several threads at once.
+//
+public interface NodeAnnotator {
+
+    void annotateNode(OntologyGraph graph, OntologyNode c);
+
+    // called once after every node has been visited
+    default void finish(OntologyGraph graph) {
+    }
+}
@@ -16,7 +16,6 @@ public class OboSynonymTypeNameAnnotator {
 
     public static void annotateOboSynonymTypeNames(OntologyGraph graph) {
 
-        long startTime3 = System.nanoTime();
         for(String id : graph.nodes.keySet()) {
 
             OntologyNode c = graph.nodes.get(id);
@@ -48,8 +47,6 @@ public class OboSynonymTypeNameAnnotator {
                 }
             }
         }
-        long endTime3 = System.nanoTime();
-        System.out.println("annotate obo synonym type names: " + ((endTime3 - startTime3) / 1000 / 1000 / 1000));
 
     }
 
@@ -8,8 +8,6 @@ public class OntologyMetadataAnnotator {
 
 	public static void annotateOntologyMetadata(OntologyGraph graph) {
 
-		long startTime3 = System.nanoTime();
-
 
 		String ontologyId = ((String) graph.config.get("id")).toLowerCase();
 		String ontologyPreferredPrefix = (String) graph.config.get("preferredPrefix");
@@ -34,8 +32,6 @@ public class OntologyMetadataAnnotator {
 			c.properties.addProperty("ontologyIri", PropertyValueLiteral.fromString(ontologyIri));
 		    }
 		}
-		long endTime3 = System.nanoTime();
-		System.out.println("annotate ontology IDs: " + ((endTime3 - startTime3) / 1000 / 1000 / 1000));
 
 
 	}
@@ -40,8 +40,6 @@ public class PreferredRootsAnnotator {
 
     public static void annotatePreferredRoots(OntologyGraph graph) {
 
-        long startTime3 = System.nanoTime();
-
         Set<String> preferredRoots = getPreferredRoots(graph);
 
         for(String root : preferredRoots)
@@ -65,7 +63,5 @@ public class PreferredRootsAnnotator {
             }
         }
 
-        long endTime3 = System.nanoTime();
-        System.out.println("annotate preferred roots: " + ((endTime3 - startTime3) / 1000 / 1000 / 1000));
     }
 }
@@ -9,7 +9,6 @@ public class ReifiedPropertyAnnotator {
 
 	public static void annotateReifiedProperties(OntologyGraph graph) {
 
-		long startTime3 = System.nanoTime();
 		for(String id : graph.nodes.keySet()) {
 		    OntologyNode c = graph.nodes.get(id);
 			if (c.types.contains(OntologyNode.NodeType.AXIOM)) {
@@ -37,10 +36,11 @@ public class ReifiedPropertyAnnotator {
 				}
 
 				sourceNode.properties.annotatePropertyWithAxiom(propertyUri, target, axiom, graph);
+
+				// the values of the axiom node are now shared with the source node
+				c.properties.markReferenced();
 			}
 		}
-		long endTime3 = System.nanoTime();
-		System.out.println("reification: " + ((endTime3 - startTime3) / 1000 / 1000 / 1000) + " - now have " + graph.nodes.size() + " nodes");
 
 	}
 	
@@ -2,23 +2,30 @@ package uk.ac.ebi.rdf2json.annotators;
 
 import uk.ac.ebi.rdf2json.OntologyGraph;
 import uk.ac.ebi.rdf2json.OntologyNode;
-import uk.ac.ebi.rdf2json.annotators.helpers.OntologyBaseUris;
 import uk.ac.ebi.rdf2json.helpers.RdfListEvaluator;
 import uk.ac.ebi.rdf2json.properties.*;
 
 import java.util.*;
-import java.util.stream.Collectors;
 
+// Adds relatedTo/relatedFrom for the anonymous superclasses (restrictions and class
+// expressions) of each class.
+//
+// What a restriction or class expression relates its subclass to doesn't depend on the
+// subclass, so the edges of each bnode are worked out once (RelatedIndex) and reused for
+// every class that refers to it, and each rdf:List is only evaluated once. The values are
+// gathered per node in the order they used to be added in, and added in one go at the end.
+//
 public class RelatedAnnotator {
 
     public static void annotateRelated(OntologyGraph graph) {
 
-		Set<String> ontologyBaseUris = OntologyBaseUris.getOntologyBaseUris(graph);
-		String preferredPrefix = (String)graph.config.get("preferredPrefix");
+		RelatedIndex index = new RelatedIndex(graph);
 
-		long startTime3 = System.nanoTime();
-        for(String id : graph.nodes.keySet()) {
-            OntologyNode c = graph.nodes.get(id);
+		// the values to add to each node, in order
+		Map<OntologyNode, List<PropertyValue>> relatedTo = new IdentityHashMap<>();
+		Map<OntologyNode, List<PropertyValue>> relatedFrom = new IdentityHashMap<>();
+
+        for(OntologyNode c : graph.nodes.values()) {
             if (c.types.contains(OntologyNode.NodeType.CLASS)) {
 
                 // skip bnodes
@@ -39,235 +46,210 @@ public class RelatedAnnotator {
 
 						OntologyNode parentClassExprOrRestriction = graph.nodes.get( ((PropertyValueBNode) parent).getId() );
 
-						PropertyValue onProperty = parentClassExprOrRestriction.properties.getPropertyValue("http://www.w3.org/2002/07/owl#onProperty");
+						for(RelatedEdge edge : index.getEdges(parentClassExprOrRestriction)) {
 
-						if(onProperty == null) {
-							annotateRelated_Class_subClassOf_ClassExpr(
-									c, parentClassExprOrRestriction, ontologyBaseUris, preferredPrefix, graph);
-						} else {
-							annotateRelated_Class_subClassOf_Restriction(
-									c, onProperty, parentClassExprOrRestriction, ontologyBaseUris, preferredPrefix, graph);
-						}
+							// Is the filler different from the entity we are annotating?
+							if(edge.skipIfSelf && edge.target.uri.equals(c.uri)) {
+								continue;
+							}
 
+							if(edge.reverse) {
+								add(relatedTo, edge.target, new PropertyValueRelated(edge.classExpression, edge.property, c));
+								add(relatedFrom, c, new PropertyValueRelated(edge.classExpression, edge.property, edge.target));
+							} else {
+								add(relatedTo, c, new PropertyValueRelated(edge.classExpression, edge.property, edge.target));
+								add(relatedFrom, edge.target, new PropertyValueRelated(edge.classExpression, edge.property, c));
+							}
+						}
 					}
 				}
 			}
 
 
         }
-        long endTime3 = System.nanoTime();
-        System.out.println("annotate related: " + ((endTime3 - startTime3) / 1000 / 1000 / 1000));
-    }
 
-	private static void annotateRelated_Class_subClassOf_ClassExpr(
-			OntologyNode classNode, OntologyNode fillerClassExpr, Set<String> ontologyBaseUris, String preferredPrefix, OntologyGraph graph) {
-
-		PropertyValue oneOf = fillerClassExpr.properties.getPropertyValue("http://www.w3.org/2002/07/owl#oneOf");
-		if(oneOf != null)  {
-			// This is a oneOf class expression
-			annotateRelated_Class_subClassOf_ClassExpr_oneOf(classNode, fillerClassExpr, oneOf, graph);
-			return;
+		for(Map.Entry<OntologyNode, List<PropertyValue>> entry : relatedTo.entrySet()) {
+			entry.getKey().properties.addProperties("relatedTo", entry.getValue());
 		}
-
-		PropertyValue intersectionOf = fillerClassExpr.properties.getPropertyValue("http://www.w3.org/2002/07/owl#intersectionOf");
-		if(intersectionOf != null)  {
-			// This is an intersectionOf class expression (anonymous conjunction)
-			annotateRelated_Class_subClassOf_ClassExpr_intersectionOf(classNode, fillerClassExpr, intersectionOf, graph);
-			return;
+		for(Map.Entry<OntologyNode, List<PropertyValue>> entry : relatedFrom.entrySet()) {
+			entry.getKey().properties.addProperties("relatedFrom", entry.getValue());
 		}
-	}
-
-	private static void annotateRelated_Class_subClassOf_ClassExpr_oneOf(OntologyNode classNode, OntologyNode fillerClassExpr, PropertyValue filler, OntologyGraph graph) {
-
-		// The filler is an RDF list of Individuals
-
-		OntologyNode fillerNode = graph.nodes.get( ((PropertyValueBNode) filler).getId() );
-
-		List<OntologyNode> fillerIndividuals =
-				RdfListEvaluator.evaluateRdfList(fillerNode, graph)
-						.stream()
-						.map(propertyValue -> graph.nodes.get( ((PropertyValueURI) propertyValue).getUri() ))
-						.collect(Collectors.toList());
+    }
 
-		for(OntologyNode individualNode : fillerIndividuals) {
-			classNode.properties.addProperty("relatedTo",
-				new PropertyValueRelated(fillerClassExpr, "http://www.w3.org/2000/01/rdf-schema#subClassOf", individualNode));
-			individualNode.properties.addProperty("relatedFrom",
-				new PropertyValueRelated(fillerClassExpr, "http://www.w3.org/2000/01/rdf-schema#subClassOf", classNode));
-		}
+	private static void add(Map<OntologyNode, List<PropertyValue>> values, OntologyNode node, PropertyValue value) {
+		values.computeIfAbsent(node, k -> new ArrayList<>(2)).add(value);
 	}
 
-	private static void annotateRelated_Class_subClassOf_ClassExpr_intersectionOf(OntologyNode classNode, OntologyNode fillerClassExpr, PropertyValue filler, OntologyGraph graph) {
-
-		// The filler is an RDF list of Classes
-
-		OntologyNode fillerNode = graph.nodes.get( ((PropertyValueBNode) filler).getId() );
-
-		List<OntologyNode> fillerClasses =
-				RdfListEvaluator.evaluateRdfList(fillerNode, graph)
-						.stream()
-						.map(propertyValue -> graph.getNodeForPropertyValue(propertyValue))
-						.collect(Collectors.toList());
-
-		for(OntologyNode fillerClassNode : fillerClasses) {
-
-			// Named nodes only. TODO what to do about bnodes in this case?
-			if(fillerClassNode.uri != null) {
-
-				classNode.properties.addProperty("relatedTo",
-					new PropertyValueRelated(fillerClassExpr, "http://www.w3.org/2000/01/rdf-schema#subClassOf", fillerClassNode));
-
-				fillerClassNode.properties.addProperty("relatedFrom",
-					new PropertyValueRelated(fillerClassExpr, "http://www.w3.org/2000/01/rdf-schema#subClassOf", classNode));
-			}
+	// relatedTo from a class that has the bnode as a superclass to target, with relatedFrom
+	// back; or the other way around if reverse (hasValue restrictions on individuals)
+	//
+	static class RelatedEdge {
+
+		OntologyNode classExpression;
+		String property;
+		OntologyNode target;
+		boolean reverse;
+
+		// for someValuesFrom a named class, which isn't related to itself
+		boolean skipIfSelf;
+
+		RelatedEdge(OntologyNode classExpression, String property, OntologyNode target, boolean reverse, boolean skipIfSelf) {
+			this.classExpression = classExpression;
+			this.property = property;
+			this.target = target;
+			this.reverse = reverse;
+			this.skipIfSelf = skipIfSelf;
 		}
 	}
 
+	// The edges of each restriction and class expression bnode, and the members of each
+	// rdf:List, worked out the first time they are asked for
+	//
+	static class RelatedIndex {
 
-	private static void annotateRelated_Class_subClassOf_Restriction(
-				OntologyNode classNode, PropertyValue property, OntologyNode fillerRestriction, Set<String> ontologyBaseUris, String preferredPrefix, OntologyGraph graph) {
-
-		if(property.getType() != PropertyValue.Type.URI) {
-			// We can't do anything with anonymous properties.
-			return;
-		}
+		OntologyGraph graph;
 
-		PropertyValue onProperty = fillerRestriction.properties.getPropertyValue("http://www.w3.org/2002/07/owl#onProperty");
+		Map<OntologyNode, List<RelatedEdge>> edges = new IdentityHashMap<>();
+		Map<OntologyNode, List<PropertyValue>> lists = new IdentityHashMap<>();
 
-		if(onProperty == null || onProperty.getType() != PropertyValue.Type.URI)
-			return;
-
-		String propertyUri = ((PropertyValueURI) onProperty).getUri();
-
-		PropertyValue someValuesFrom = fillerRestriction.properties.getPropertyValue("http://www.w3.org/2002/07/owl#someValuesFrom");
-		if(someValuesFrom != null)  {
-			// This is a someValuesFrom restriction
-			annotateRelated_Class_subClassOf_Restriction_someValuesFrom(
-					classNode, propertyUri, fillerRestriction, someValuesFrom, ontologyBaseUris, preferredPrefix, graph);
-			return;
-		}
-
-		PropertyValue hasValue = fillerRestriction.properties.getPropertyValue("http://www.w3.org/2002/07/owl#hasValue");
-		if(hasValue != null)  {
-			// This is a hasValue restriction. The value can be either an individual or a literal data value.
-			//
-			annotateRelated_Class_subClassOf_Restriction_hasValue(classNode, propertyUri, fillerRestriction, hasValue, graph);
-			return;
+		RelatedIndex(OntologyGraph graph) {
+			this.graph = graph;
 		}
-	}
-
-	private static void annotateRelated_Class_subClassOf_Restriction_someValuesFrom(
-			OntologyNode classNode, String propertyUri, OntologyNode fillerRestriction, PropertyValue filler, Set<String> ontologyBaseUris, String preferredPrefix, OntologyGraph graph) {
-
-		if(filler.getType() == PropertyValue.Type.URI) {
 
-			String fillerUri = ((PropertyValueURI) filler).getUri();
+		List<RelatedEdge> getEdges(OntologyNode classExprOrRestriction) {
 
-				// Is the filler different from the entity we are annotating?
-				if(!fillerUri.equals(classNode.uri)) {
+			List<RelatedEdge> res = edges.get(classExprOrRestriction);
 
-					OntologyNode fillerNode = graph.nodes.get(fillerUri);
+			if(res == null) {
 
-					if(fillerNode != null) { // sometimes filler not included in ontology, e.g. "subClassOf some xsd:float" in cdao
+				res = new ArrayList<>();
 
-						  classNode.properties.addProperty("relatedTo", new PropertyValueRelated(fillerRestriction, propertyUri, fillerNode));
-						  fillerNode.properties.addProperty("relatedFrom", new PropertyValueRelated(fillerRestriction, propertyUri, classNode));
+				PropertyValue onProperty = classExprOrRestriction.properties.getPropertyValue("http://www.w3.org/2002/07/owl#onProperty");
 
-					}
+				if(onProperty == null) {
+					addEdges_ClassExpr(classExprOrRestriction, res);
+				} else {
+					addEdges_Restriction(onProperty, classExprOrRestriction, res);
 				}
 
-			return;
+				edges.put(classExprOrRestriction, res);
+			}
 
+			return res;
 		}
 
-		if(filler.getType() == PropertyValue.Type.BNODE) {
+		private List<PropertyValue> evaluateRdfList(PropertyValue list) {
+			OntologyNode listNode = graph.nodes.get( ((PropertyValueBNode) list).getId() );
+			return lists.computeIfAbsent(listNode, k -> RdfListEvaluator.evaluateRdfList(listNode, graph));
+		}
 
-			OntologyNode fillerClassExpr = graph.nodes.get( ((PropertyValueBNode) filler).getId() );
+		private void addEdges_ClassExpr(OntologyNode fillerClassExpr, List<RelatedEdge> res) {
 
 			PropertyValue oneOf = fillerClassExpr.properties.getPropertyValue("http://www.w3.org/2002/07/owl#oneOf");
 			if(oneOf != null)  {
-				// This is a oneOf class expression
-				annotateRelated_Class_subClassOf_Restriction_someValuesFrom_oneOf(classNode, propertyUri, fillerClassExpr, oneOf, ontologyBaseUris, preferredPrefix, graph);
+				// This is a oneOf class expression. The filler is an RDF list of Individuals
+				for(PropertyValue individual : evaluateRdfList(oneOf)) {
+					OntologyNode individualNode = graph.nodes.get( ((PropertyValueURI) individual).getUri() );
+					res.add(new RelatedEdge(fillerClassExpr, "http://www.w3.org/2000/01/rdf-schema#subClassOf", individualNode, false, false));
+				}
 				return;
 			}
 
 			PropertyValue intersectionOf = fillerClassExpr.properties.getPropertyValue("http://www.w3.org/2002/07/owl#intersectionOf");
 			if(intersectionOf != null)  {
 				// This is an intersectionOf class expression (anonymous conjunction)
-				annotateRelated_Class_subClassOf_Restriction_someValuesFrom_intersectionOf(classNode, propertyUri, fillerClassExpr, intersectionOf, ontologyBaseUris, preferredPrefix, graph);
+				addEdges_intersectionOf(fillerClassExpr, "http://www.w3.org/2000/01/rdf-schema#subClassOf", intersectionOf, res);
 				return;
 			}
 		}
 
-	}
+		private void addEdges_Restriction(PropertyValue onProperty, OntologyNode fillerRestriction, List<RelatedEdge> res) {
 
-	private static void annotateRelated_Class_subClassOf_Restriction_someValuesFrom_oneOf(
-			OntologyNode classNode, String propertyUri, OntologyNode fillerRestriction, PropertyValue filler, Set<String> ontologyBaseUris, String preferredPrefix, OntologyGraph graph) {
+			if(onProperty.getType() != PropertyValue.Type.URI) {
+				// We can't do anything with anonymous properties.
+				return;
+			}
 
-		// The filler is an RDF list of Individuals
+			String propertyUri = ((PropertyValueURI) onProperty).getUri();
 
-		OntologyNode fillerNode = graph.nodes.get( ((PropertyValueBNode) filler).getId() );
+			PropertyValue someValuesFrom = fillerRestriction.properties.getPropertyValue("http://www.w3.org/2002/07/owl#someValuesFrom");
+			if(someValuesFrom != null)  {
+				// This is a someValuesFrom restriction
+				addEdges_Restriction_someValuesFrom(propertyUri, fillerRestriction, someValuesFrom, res);
+				return;
+			}
+
+			PropertyValue hasValue = fillerRestriction.properties.getPropertyValue("http://www.w3.org/2002/07/owl#hasValue");
+			if(hasValue != null)  {
+				// This is a hasValue restriction. The value can be either an individual or a literal data value.
+				//
+				if(hasValue.getType() == PropertyValue.Type.URI) {
 
-		List<OntologyNode> fillerIndividuals =
-				RdfListEvaluator.evaluateRdfList(fillerNode, graph)
-						.stream()
-						.map(propertyValue -> graph.nodes.get( ((PropertyValueURI) propertyValue).getUri() ))
-						.collect(Collectors.toList());
+					OntologyNode fillerNode = graph.nodes.get( ((PropertyValueURI) hasValue).getUri() );
 
-		for(OntologyNode individualNode : fillerIndividuals) {
-			classNode.properties.addProperty("relatedTo",
-					new PropertyValueRelated(fillerNode, propertyUri, individualNode));
-			individualNode.properties.addProperty("relatedFrom",
-					new PropertyValueRelated(fillerNode, propertyUri, classNode));
+					if(fillerNode.types.contains(OntologyNode.NodeType.INDIVIDUAL)) {
+						// fillerNode is an individual
+						res.add(new RelatedEdge(fillerRestriction, propertyUri, fillerNode, true, false));
+					}
+				}
+
+				// TODO: what to do with data values?
+				return;
+			}
 		}
-	}
 
-	private static void annotateRelated_Class_subClassOf_Restriction_someValuesFrom_intersectionOf(
-			OntologyNode classNode, String propertyUri, OntologyNode fillerRestriction, PropertyValue filler, Set<String> ontologyBaseUris, String preferredPrefix, OntologyGraph graph) {
+		private void addEdges_Restriction_someValuesFrom(String propertyUri, OntologyNode fillerRestriction, PropertyValue filler, List<RelatedEdge> res) {
 
-		// The filler is an RDF list of Classes
+			if(filler.getType() == PropertyValue.Type.URI) {
 
-		OntologyNode fillerNode = graph.nodes.get( ((PropertyValueBNode) filler).getId() );
+				OntologyNode fillerNode = graph.nodes.get( ((PropertyValueURI) filler).getUri() );
 
-		List<OntologyNode> fillerClasses =
-				RdfListEvaluator.evaluateRdfList(fillerNode, graph)
-						.stream()
-						.map(propertyValue -> graph.getNodeForPropertyValue(propertyValue))
-						.collect(Collectors.toList());
+				if(fillerNode != null) { // sometimes filler not included in ontology, e.g. "subClassOf some xsd:float" in cdao
+					res.add(new RelatedEdge(fillerRestriction, propertyUri, fillerNode, false, true));
+				}
 
-		for(OntologyNode fillerClassNode : fillerClasses) {
+				return;
+			}
 
-			// Named nodes only. TODO what to do about bnodes in this case?
-			if(fillerClassNode.uri != null) {
+			if(filler.getType() == PropertyValue.Type.BNODE) {
 
-				classNode.properties.addProperty("relatedTo",
-						new PropertyValueRelated(fillerRestriction, propertyUri, fillerClassNode));
+				OntologyNode fillerClassExpr = graph.nodes.get( ((PropertyValueBNode) filler).getId() );
+
+				PropertyValue oneOf = fillerClassExpr.properties.getPropertyValue("http://www.w3.org/2002/07/owl#oneOf");
+				if(oneOf != null)  {
+					// This is a oneOf class expression. The filler is an RDF list of Individuals,
+					// and the list itself is the class expression of the values.
+					OntologyNode listNode = graph.nodes.get( ((PropertyValueBNode) oneOf).getId() );
+					for(PropertyValue individual : evaluateRdfList(oneOf)) {
+						OntologyNode individualNode = graph.nodes.get( ((PropertyValueURI) individual).getUri() );
+						res.add(new RelatedEdge(listNode, propertyUri, individualNode, false, false));
+					}
+					return;
+				}
 
-				fillerClassNode.properties.addProperty("relatedFrom",
-						new PropertyValueRelated(fillerRestriction, propertyUri, classNode));
+				PropertyValue intersectionOf = fillerClassExpr.properties.getPropertyValue("http://www.w3.org/2002/07/owl#intersectionOf");
+				if(intersectionOf != null)  {
+					// This is an intersectionOf class expression (anonymous conjunction)
+					addEdges_intersectionOf(fillerClassExpr, propertyUri, intersectionOf, res);
+					return;
+				}
 			}
 		}
 
-	}
-
-	private static void annotateRelated_Class_subClassOf_Restriction_hasValue(OntologyNode classNode, String propertyUri, OntologyNode fillerRestriction, PropertyValue filler, OntologyGraph graph) {
+		private void addEdges_intersectionOf(OntologyNode classExpression, String property, PropertyValue filler, List<RelatedEdge> res) {
 
-		// The filler can be either an individual or a literal data value.
+			// The filler is an RDF list of Classes
 
-		if(filler.getType() == PropertyValue.Type.URI) {
+			for(PropertyValue fillerClass : evaluateRdfList(filler)) {
 
-			OntologyNode fillerNode = graph.nodes.get( ((PropertyValueURI) filler).getUri() );
+				OntologyNode fillerClassNode = graph.getNodeForPropertyValue(fillerClass);
 
-			if(fillerNode.types.contains(OntologyNode.NodeType.INDIVIDUAL)) {
-				// fillerNode is an individual
-				fillerNode.properties.addProperty("relatedTo", new PropertyValueRelated(fillerRestriction, propertyUri, classNode));
-				classNode.properties.addProperty("relatedFrom", new PropertyValueRelated(fillerRestriction, propertyUri, fillerNode));
+				// Named nodes only. TODO what to do about bnodes in this case?
+				if(fillerClassNode.uri != null) {
+					res.add(new RelatedEdge(classExpression, property, fillerClassNode, false, false));
+				}
 			}
-
-			return;
-		} 
-
-		// TODO: what to do with data values?
+		}
 	}
 
 }
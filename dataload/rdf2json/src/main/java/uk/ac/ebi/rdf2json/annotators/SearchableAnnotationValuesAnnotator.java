@@ -9,7 +9,7 @@ import java.util.List;
 
 import static uk.ac.ebi.rdf2json.properties.PropertyValue.Type.LITERAL;
 
-public class SearchableAnnotationValuesAnnotator {
+public class SearchableAnnotationValuesAnnotator implements NodeAnnotator {
 
     // Roughly equivalent to "annotations_trimmed" in OLS3.
     //
@@ -19,43 +19,40 @@ public class SearchableAnnotationValuesAnnotator {
     // This field is used for solr searching, so that you can search for the value of any property (regardless of how
     // important OLS thinks it is), and still expect a result.
     //
-    public static void annotateSearchableAnnotationValues(OntologyGraph graph) {
+    public SearchableAnnotationValuesAnnotator(OntologyGraph graph) {
+    }
 
-        long startTime3 = System.nanoTime();
-        for(String id : graph.nodes.keySet()) {
-            OntologyNode c = graph.nodes.get(id);
-            if(c.types.contains(OntologyNode.NodeType.CLASS) ||
-                    c.types.contains(OntologyNode.NodeType.PROPERTY) ||
-                    c.types.contains(OntologyNode.NodeType.INDIVIDUAL) ||
-                    c.types.contains(OntologyNode.NodeType.ONTOLOGY)) {
+    @Override
+    public void annotateNode(OntologyGraph graph, OntologyNode c) {
 
-                List<PropertyValue> values = new ArrayList<>();
+        if(c.types.contains(OntologyNode.NodeType.CLASS) ||
+                c.types.contains(OntologyNode.NodeType.PROPERTY) ||
+                c.types.contains(OntologyNode.NodeType.INDIVIDUAL) ||
+                c.types.contains(OntologyNode.NodeType.ONTOLOGY)) {
 
-                for(var predicate : c.properties.getPropertyPredicates()) {
+            List<PropertyValue> values = new ArrayList<>();
 
-                    // namespaces that are NOT considered annotations for this exercise...
-                    //
-                    if(predicate.startsWith("http://www.w3.org/1999/02/22-rdf-syntax-ns#")
-                            || predicate.startsWith("http://www.w3.org/2000/01/rdf-schema#")
-                            || predicate.startsWith("http://www.w3.org/2002/07/owl#")) {
+            for(var predicate : c.properties.getPropertyPredicates()) {
 
-                        continue;
-                    }
+                // namespaces that are NOT considered annotations for this exercise...
+                //
+                if(predicate.startsWith("http://www.w3.org/1999/02/22-rdf-syntax-ns#")
+                        || predicate.startsWith("http://www.w3.org/2000/01/rdf-schema#")
+                        || predicate.startsWith("http://www.w3.org/2002/07/owl#")) {
 
-                    for(var value : c.properties.getPropertyValues(predicate)) {
-                        if(value.getType().equals(LITERAL)) {
-                            values.add(value);
-                        }
-                    }
+                    continue;
                 }
 
-                for(var value : values) {
-                    c.properties.addProperty("searchableAnnotationValues", value);
+                for(var value : c.properties.getPropertyValues(predicate)) {
+                    if(value.getType().equals(LITERAL)) {
+                        values.add(value);
+                    }
                 }
             }
-        }
 
-        long endTime3 = System.nanoTime();
-        System.out.println("annotate searchable annotation values: " + ((endTime3 - startTime3) / 1000 / 1000 / 1000));
+            for(var value : values) {
+                c.properties.addProperty("searchableAnnotationValues", value);
+            }
+        }
     }
 }
@@ -7,18 +7,20 @@ import uk.ac.ebi.rdf2json.OntologyGraph;
 import uk.ac.ebi.rdf2json.annotators.helpers.OntologyBaseUris;
 import uk.ac.ebi.rdf2json.properties.PropertyValueLiteral;
 
-public class ShortFormAnnotator {
+public class ShortFormAnnotator implements NodeAnnotator {
 
-	public static void annotateShortForms(OntologyGraph graph) {
+	Set<String> ontologyBaseUris;
+	String preferredPrefix;
 
-		long startTime3 = System.nanoTime();
+	public ShortFormAnnotator(OntologyGraph graph) {
+		ontologyBaseUris = OntologyBaseUris.getOntologyBaseUris(graph);
+		preferredPrefix = (String)graph.config.get("preferredPrefix");
+	}
 
-		Set<String> ontologyBaseUris = OntologyBaseUris.getOntologyBaseUris(graph);
-		String preferredPrefix = (String)graph.config.get("preferredPrefix");
+	@Override
+	public void annotateNode(OntologyGraph graph, OntologyNode c) {
 
-		for(String id : graph.nodes.keySet()) {
-		    OntologyNode c = graph.nodes.get(id);
-		    if (c.types.contains(OntologyNode.NodeType.CLASS) ||
+		if (c.types.contains(OntologyNode.NodeType.CLASS) ||
 				c.types.contains(OntologyNode.NodeType.PROPERTY) ||
 				c.types.contains(OntologyNode.NodeType.INDIVIDUAL) ||
 				c.types.contains(OntologyNode.NodeType.DATATYPE)
@@ -26,22 +28,16 @@ public class ShortFormAnnotator {
 
 			// skip bnodes
 			if(c.uri == null)
-				continue;
-
+				return;
 
 			String shortForm = extractShortForm(graph, ontologyBaseUris, preferredPrefix, c.uri);
 			String curie = shortForm.replaceFirst("_", ":");
 
 			c.properties.addProperty("shortForm", PropertyValueLiteral.fromString(shortForm));
 			c.properties.addProperty("curie", PropertyValueLiteral.fromString(curie));
-		    }
 		}
-		long endTime3 = System.nanoTime();
-		System.out.println("annotate short forms: " + ((endTime3 - startTime3) / 1000 / 1000 / 1000));
-
-
 	}
-	
+
 	private static String extractShortForm(OntologyGraph graph, Set<String> ontologyBaseUris, String preferredPrefix,
 			String uri) {
 
@@ -6,7 +6,7 @@ import uk.ac.ebi.rdf2json.OntologyGraph;
 import uk.ac.ebi.rdf2json.annotators.helpers.PropertyCollator;
 import uk.ac.ebi.rdf2json.properties.PropertyValue;
 
-public class SynonymAnnotator {
+public class SynonymAnnotator implements NodeAnnotator {
 
 	public static Set<String> getSynonymProperties(OntologyGraph graph) {
 
@@ -29,28 +29,26 @@ public class SynonymAnnotator {
 		return synonymProperties;
 	}
 
-	public static void annotateSynonyms(OntologyGraph graph) {
-		collateProperties(graph, "synonym", getSynonymProperties(graph));
-	}
+	Set<String> sourceProps;
 
-	private static void collateProperties(OntologyGraph graph, String destProp, Collection<String> sourceProps) {
+	public SynonymAnnotator(OntologyGraph graph) {
+		sourceProps = getSynonymProperties(graph);
+	}
 
-		for(String id : graph.nodes.keySet()) {
-			OntologyNode c = graph.nodes.get(id);
+	@Override
+	public void annotateNode(OntologyGraph graph, OntologyNode c) {
 
-			// skip bnodes
-			if(c.uri == null)
-				continue;
+		// skip bnodes
+		if(c.uri == null)
+			return;
 
-			for(String prop : sourceProps) {
-				List<PropertyValue> values = c.properties.getPropertyValues(prop);
-				if(values != null) {
-					for(PropertyValue value : values) {
-						c.properties.addProperty(destProp, value);
-					}
+		for(String prop : sourceProps) {
+			List<PropertyValue> values = c.properties.getPropertyValues(prop);
+			if(values != null) {
+				for(PropertyValue value : values) {
+					c.properties.addProperty("synonym", value);
 				}
 			}
 		}
-
 	}
 }
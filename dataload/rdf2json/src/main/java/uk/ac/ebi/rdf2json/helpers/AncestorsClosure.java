@@ -2,36 +2,15 @@ package uk.ac.ebi.rdf2json.helpers;
 
 import uk.ac.ebi.rdf2json.OntologyGraph;
 import uk.ac.ebi.rdf2json.OntologyNode;
-import uk.ac.ebi.rdf2json.properties.PropertyValue;
-import uk.ac.ebi.rdf2json.properties.PropertyValueURI;
 
-import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.Set;
 
 public class AncestorsClosure {
 
-    public static Set<String> getAncestors(OntologyNode node, String hierarchyPredicate, OntologyGraph graph) {
-        return getAncestors(node, hierarchyPredicate, graph, new LinkedHashSet<>());
-    }
-
-    private static Set<String> getAncestors(OntologyNode node, String hierarchyPredicate, OntologyGraph graph, Set<String> ancestors) {
-
-        List<PropertyValue> parents = node.properties.getPropertyValues(hierarchyPredicate);
-        if(parents != null) {
-            for(PropertyValue parent : parents) {
-                if(parent.getType() == PropertyValue.Type.URI) {
-                    String uri = ((PropertyValueURI) parent).getUri();
-                    if(!ancestors.contains(uri)) {
-                        ancestors.add( uri );
-                        OntologyNode parentNode = graph.getNodeForPropertyValue(parent);
-                        if(parentNode != null) {
-                            getAncestors(parentNode, hierarchyPredicate, graph, ancestors);
-                        }
-                    }
-                }
-            }
-        }
-        return ancestors;
+    // Ancestors in depth-first order of the parents. The parents for hierarchyPredicate
+    // must be final, as the graph's HierarchyIndex for it is built on first use.
+    //
+    public static List<String> getAncestors(OntologyNode node, String hierarchyPredicate, OntologyGraph graph) {
+        return graph.getHierarchyIndex(hierarchyPredicate).getAncestors(node.uri);
     }
 }
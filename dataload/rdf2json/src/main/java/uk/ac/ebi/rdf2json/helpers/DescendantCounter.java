@@ -0,0 +1,353 @@
+package uk.ac.ebi.rdf2json.helpers;
+
+import java.util.Arrays;
+
+// Counts the distinct descendants of every node in a HierarchyIndex in a single pass.
+//
+// The naive way (build the ancestors of every node and bump a counter for each one) costs
+// the sum of all ancestor set sizes, which is huge for deep hierarchies like ncbitaxon.
+// Instead we visit the strongly connected components of the hierarchy from the leaves up,
+// and the descendant set of each component is the union of the sets of its children.
+//
+// The sets are stored as sorted lists of [start, end) intervals over a pre-order numbering
+// of the hierarchy. Because a depth-first walk numbers every subtree contiguously, the
+// descendants of a node in a tree-shaped part of the hierarchy are a single interval, and
+// multiple inheritance only adds an interval per extra parent rather than a bit per node
+// (a plain bitset per node would need n^2 bits). Each set is dropped as soon as all of its
+// parents have consumed it.
+//
+// The counts are exact and the same as counting the ancestor closures: a node on a cycle
+// is its own descendant, as it is its own ancestor.
+//
+public class DescendantCounter {
+
+    HierarchyIndex index;
+    int size;
+
+    // pre-order number of each node
+    int[] preorder;
+
+    // component of each node (-1 for ids that are not nodes); components are numbered
+    // leaves first, so every child component has a lower number than its parents
+    int[] component;
+    int numComponents;
+
+    // the nodes of each component
+    int[] componentStart;
+    int[] componentNodes;
+
+    long peakIntervals = 0;
+
+    public DescendantCounter(HierarchyIndex index) {
+        this.index = index;
+        this.size = index.size;
+    }
+
+    // Returns the number of descendants of each node, indexed by dictionary id.
+    //
+    public int[] countDescendants() {
+
+        long startTime = System.nanoTime();
+
+        int[] nodes = index.getTopologicalOrder();
+
+        numberPreorder(nodes);
+        findComponents(nodes);
+
+        int[] numDescendants = new int[size];
+
+        // how many parent components still have to read the set of each component
+        int[] numReaders = new int[numComponents];
+        for(int c = 0; c < numComponents; ++ c) {
+            for(int i = componentStart[c]; i < componentStart[c + 1]; ++ i) {
+                int node = componentNodes[i];
+                for(int n = 0; n < index.numParents(node); ++ n) {
+                    int parent = index.getParent(node, n);
+                    if(parent < size && component[parent] != -1 && component[parent] != c) {
+                        ++ numReaders[c];
+                    }
+                }
+            }
+        }
+
+        int[][] sets = new int[numComponents][];
+        long liveIntervals = 0;
+
+        IntervalUnion union = new IntervalUnion();
+
+        for(int c = 0; c < numComponents; ++ c) {
+
+            union.clear();
+
+            int first = componentStart[c];
+            int last = componentStart[c + 1];
+
+            boolean isCycle = last - first > 1;
+
+            for(int i = first; i < last; ++ i) {
+                int node = componentNodes[i];
+
+                for(int n = 0; n < index.numChildren(node); ++ n) {
+                    int child = index.getChild(node, n);
+                    int childComponent = component[child];
+
+                    if(childComponent == c) {
+                        // only possible for a node that is its own parent
+                        isCycle = true;
+                        continue;
+                    }
+
+                    union.add(preorder[child], preorder[child] + 1);
+
+                    int[] childSet = sets[childComponent];
+                    for(int k = 0; k < childSet.length; k += 2) {
+                        union.add(childSet[k], childSet[k + 1]);
+                    }
+
+                    if(-- numReaders[childComponent] == 0) {
+                        liveIntervals -= childSet.length / 2;
+                        sets[childComponent] = null;
+                    }
+                }
+            }
+
+            if(isCycle) {
+                for(int i = first; i < last; ++ i) {
+                    int node = componentNodes[i];
+                    union.add(preorder[node], preorder[node] + 1);
+                }
+            }
+
+            int[] set = union.toIntervals();
+            int count = 0;
+            for(int k = 0; k < set.length; k += 2) {
+                count += set[k + 1] - set[k];
+            }
+
+            for(int i = first; i < last; ++ i) {
+                numDescendants[componentNodes[i]] = count;
+            }
+
+            if(numReaders[c] > 0) {
+                sets[c] = set;
+                liveIntervals += set.length / 2;
+                peakIntervals = Math.max(peakIntervals, liveIntervals);
+            }
+        }
+
+        long endTime = System.nanoTime();
+        System.out.println("count descendants " + index.getHierarchyPredicate() + ": "
+                + ((endTime - startTime) / 1000 / 1000) + "ms, peak " + peakIntervals + " intervals ("
+                + (peakIntervals * 8 / 1024) + " KB)");
+
+        return numDescendants;
+    }
+
+    // Depth-first walk down from the roots (the topological order starts with them),
+    // numbering each node the first time it is reached.
+    //
+    private void numberPreorder(int[] nodes) {
+
+        preorder = new int[size];
+        Arrays.fill(preorder, -1);
+
+        int next = 0;
+
+        int[] stackNodes = new int[16];
+        int[] stackNext = new int[16];
+
+        for(int root : nodes) {
+
+            if(preorder[root] != -1) {
+                continue;
+            }
+
+            preorder[root] = next ++;
+
+            stackNodes[0] = root;
+            stackNext[0] = 0;
+            int depth = 1;
+
+            while(depth > 0) {
+
+                int node = stackNodes[depth - 1];
+                int n = stackNext[depth - 1];
+
+                if(n == index.numChildren(node)) {
+                    -- depth;
+                    continue;
+                }
+
+                stackNext[depth - 1] = n + 1;
+
+                int child = index.getChild(node, n);
+
+                if(preorder[child] != -1) {
+                    continue;
+                }
+
+                preorder[child] = next ++;
+
+                if(depth == stackNodes.length) {
+                    stackNodes = Arrays.copyOf(stackNodes, depth * 2);
+                    stackNext = Arrays.copyOf(stackNext, depth * 2);
+                }
+                stackNodes[depth] = child;
+                stackNext[depth] = 0;
+                ++ depth;
+            }
+        }
+    }
+
+    // Tarjan's algorithm following child edges, without recursion. Tarjan completes a
+    // component only after every component reachable from it, so numbering components in
+    // the order they complete puts descendants first.
+    //
+    private void findComponents(int[] nodes) {
+
+        component = new int[size];
+        Arrays.fill(component, -1);
+
+        componentStart = new int[nodes.length + 1];
+        componentNodes = new int[nodes.length];
+        numComponents = 0;
+        int numComponentNodes = 0;
+
+        int[] visitIndex = new int[size];
+        int[] lowLink = new int[size];
+        boolean[] onStack = new boolean[size];
+        Arrays.fill(visitIndex, -1);
+        int nextIndex = 0;
+
+        int[] tarjanStack = new int[nodes.length];
+        int tarjanDepth = 0;
+
+        int[] stackNodes = new int[16];
+        int[] stackNext = new int[16];
+
+        for(int root : nodes) {
+
+            if(visitIndex[root] != -1) {
+                continue;
+            }
+
+            visitIndex[root] = lowLink[root] = nextIndex ++;
+            tarjanStack[tarjanDepth ++] = root;
+            onStack[root] = true;
+
+            stackNodes[0] = root;
+            stackNext[0] = 0;
+            int depth = 1;
+
+            while(depth > 0) {
+
+                int node = stackNodes[depth - 1];
+                int n = stackNext[depth - 1];
+
+                if(n < index.numChildren(node)) {
+
+                    stackNext[depth - 1] = n + 1;
+
+                    int child = index.getChild(node, n);
+
+                    if(visitIndex[child] == -1) {
+
+                        visitIndex[child] = lowLink[child] = nextIndex ++;
+                        tarjanStack[tarjanDepth ++] = child;
+                        onStack[child] = true;
+
+                        if(depth == stackNodes.length) {
+                            stackNodes = Arrays.copyOf(stackNodes, depth * 2);
+                            stackNext = Arrays.copyOf(stackNext, depth * 2);
+                        }
+                        stackNodes[depth] = child;
+                        stackNext[depth] = 0;
+                        ++ depth;
+
+                    } else if(onStack[child]) {
+                        lowLink[node] = Math.min(lowLink[node], visitIndex[child]);
+                    }
+
+                    continue;
+                }
+
+                // all children done
+                -- depth;
+
+                if(depth > 0) {
+                    int parent = stackNodes[depth - 1];
+                    lowLink[parent] = Math.min(lowLink[parent], lowLink[node]);
+                }
+
+                if(lowLink[node] == visitIndex[node]) {
+                    componentStart[numComponents] = numComponentNodes;
+                    int member;
+                    do {
+                        member = tarjanStack[-- tarjanDepth];
+                        onStack[member] = false;
+                        component[member] = numComponents;
+                        componentNodes[numComponentNodes ++] = member;
+                    } while(member != node);
+                    ++ numComponents;
+                }
+            }
+        }
+
+        componentStart[numComponents] = numComponentNodes;
+    }
+
+    // Accumulates [start, end) intervals and merges them into a sorted list
+    //
+    private static class IntervalUnion {
+
+        // start in the high 32 bits and end in the low 32 bits, so sorting sorts by start
+        long[] intervals = new long[64];
+        int numIntervals = 0;
+
+        void clear() {
+            numIntervals = 0;
+        }
+
+        void add(int start, int end) {
+            if(numIntervals == intervals.length) {
+                intervals = Arrays.copyOf(intervals, numIntervals * 2);
+            }
+            intervals[numIntervals ++] = ((long) start << 32) | end;
+        }
+
+        int[] toIntervals() {
+
+            if(numIntervals == 0) {
+                return new int[0];
+            }
+
+            Arrays.sort(intervals, 0, numIntervals);
+
+            int[] merged = new int[numIntervals * 2];
+            int numMerged = 0;
+
+            int curStart = (int) (intervals[0] >>> 32);
+            int curEnd = (int) intervals[0];
+
+            for(int i = 1; i < numIntervals; ++ i) {
+
+                int start = (int) (intervals[i] >>> 32);
+                int end = (int) intervals[i];
+
+                if(start <= curEnd) {
+                    curEnd = Math.max(curEnd, end);
+                } else {
+                    merged[numMerged ++] = curStart;
+                    merged[numMerged ++] = curEnd;
+                    curStart = start;
+                    curEnd = end;
+                }
+            }
+
+            merged[numMerged ++] = curStart;
+            merged[numMerged ++] = curEnd;
+
+            return Arrays.copyOf(merged, numMerged);
+        }
+    }
+}
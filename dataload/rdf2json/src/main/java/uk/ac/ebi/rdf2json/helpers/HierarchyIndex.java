@@ -0,0 +1,312 @@
+package uk.ac.ebi.rdf2json.helpers;
+
+import uk.ac.ebi.rdf2json.OntologyGraph;
+import uk.ac.ebi.rdf2json.OntologyNode;
+import uk.ac.ebi.rdf2json.properties.PropertyValue;
+import uk.ac.ebi.rdf2json.properties.PropertyValueURI;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// The parent edges of one hierarchy predicate (e.g. directParent), built once per graph.
+//
+// Nodes are addressed by their id in the graph's IriDictionary. The parents of every node
+// are stored in flat int arrays (parentStart[id] to parentStart[id+1] in parentIds), so
+// closure queries walk int arrays instead of looking up PropertySets by IRI at each step.
+//
+// The index is a snapshot: it must only be built once the parents for its predicate are
+// final (i.e. after DirectParentsAnnotator/HierarchicalParentsAnnotator have run).
+//
+public class HierarchyIndex {
+
+    OntologyGraph graph;
+    String hierarchyPredicate;
+
+    int size;
+    int[] parentStart;
+    int[] parentIds;
+
+    int[] childStart;
+    int[] childIds;
+
+    // every node id with a URI, parents before children
+    int[] topologicalOrder;
+
+    public HierarchyIndex(OntologyGraph graph, String hierarchyPredicate) {
+
+        long startTime = System.nanoTime();
+
+        this.graph = graph;
+        this.hierarchyPredicate = hierarchyPredicate;
+
+        IriDictionary dictionary = graph.dictionary;
+
+        int[] nodeIds = new int[graph.nodes.size()];
+        int numNodes = 0;
+
+        // (child, parent) pairs in node order then value order, so the parents
+        // of each node keep the order they have in its PropertySet
+        //
+        int[] edgeChildren = new int[1024];
+        int[] edgeParents = new int[1024];
+        int numEdges = 0;
+
+        for(String id : graph.nodes.keySet()) {
+            OntologyNode c = graph.nodes.get(id);
+
+            // skip bnodes
+            if(c.uri == null)
+                continue;
+
+            int nodeId = dictionary.getOrCreateId(c.uri);
+            nodeIds[numNodes ++] = nodeId;
+
+            List<PropertyValue> parents = c.properties.getPropertyValues(hierarchyPredicate);
+
+            if(parents != null) {
+                for(PropertyValue parent : parents) {
+                    if(parent.getType() == PropertyValue.Type.URI) {
+                        if(numEdges == edgeChildren.length) {
+                            edgeChildren = Arrays.copyOf(edgeChildren, numEdges * 2);
+                            edgeParents = Arrays.copyOf(edgeParents, numEdges * 2);
+                        }
+                        edgeChildren[numEdges] = nodeId;
+                        edgeParents[numEdges] = dictionary.getOrCreateId(((PropertyValueURI) parent).getUri());
+                        ++ numEdges;
+                    }
+                }
+            }
+        }
+
+        nodeIds = Arrays.copyOf(nodeIds, numNodes);
+
+        size = dictionary.size();
+
+        parentStart = new int[size + 1];
+        parentIds = new int[numEdges];
+        childStart = new int[size + 1];
+        childIds = new int[numEdges];
+
+        for(int i = 0; i < numEdges; ++ i) {
+            ++ parentStart[edgeChildren[i] + 1];
+            ++ childStart[edgeParents[i] + 1];
+        }
+
+        for(int i = 0; i < size; ++ i) {
+            parentStart[i + 1] += parentStart[i];
+            childStart[i + 1] += childStart[i];
+        }
+
+        int[] nextParent = Arrays.copyOf(parentStart, size);
+        int[] nextChild = Arrays.copyOf(childStart, size);
+
+        for(int i = 0; i < numEdges; ++ i) {
+            parentIds[nextParent[edgeChildren[i]] ++] = edgeParents[i];
+            childIds[nextChild[edgeParents[i]] ++] = edgeChildren[i];
+        }
+
+        topologicalOrder = sortTopologically(nodeIds);
+
+        long endTime = System.nanoTime();
+        System.out.println("index hierarchy " + hierarchyPredicate + " (" + numEdges + " edges): "
+                + ((endTime - startTime) / 1000 / 1000) + "ms");
+    }
+
+    // Kahn's algorithm over the nodes with URIs. Anything left over is part of (or below) a
+    // cycle; those nodes are appended at the end in node order so every node appears once.
+    //
+    private int[] sortTopologically(int[] nodeIds) {
+
+        int[] order = new int[nodeIds.length];
+        int n = 0;
+
+        boolean[] isNode = new boolean[size];
+        for(int id : nodeIds) {
+            isNode[id] = true;
+        }
+
+        int[] numParents = new int[size];
+        for(int id : nodeIds) {
+            for(int i = parentStart[id]; i < parentStart[id + 1]; ++ i) {
+                if(isNode[parentIds[i]]) {
+                    ++ numParents[id];
+                }
+            }
+        }
+
+        for(int id : nodeIds) {
+            if(numParents[id] == 0) {
+                order[n ++] = id;
+            }
+        }
+
+        for(int head = 0; head < n; ++ head) {
+            int id = order[head];
+            for(int i = childStart[id]; i < childStart[id + 1]; ++ i) {
+                int child = childIds[i];
+                if(-- numParents[child] == 0) {
+                    order[n ++] = child;
+                }
+            }
+        }
+
+        if(n < order.length) {
+            boolean[] placed = new boolean[size];
+            for(int i = 0; i < n; ++ i) {
+                placed[order[i]] = true;
+            }
+            for(int id : nodeIds) {
+                if(!placed[id]) {
+                    order[n ++] = id;
+                }
+            }
+        }
+
+        return order;
+    }
+
+    public String getHierarchyPredicate() {
+        return hierarchyPredicate;
+    }
+
+    public int getId(String iri) {
+        return graph.dictionary.getId(iri);
+    }
+
+    public String getIri(int id) {
+        return graph.dictionary.getString(id);
+    }
+
+    public int[] getTopologicalOrder() {
+        return topologicalOrder;
+    }
+
+    public int numParents(int id) {
+        return id < size ? parentStart[id + 1] - parentStart[id] : 0;
+    }
+
+    public int getParent(int id, int n) {
+        return parentIds[parentStart[id] + n];
+    }
+
+    public int numChildren(int id) {
+        return id < size ? childStart[id + 1] - childStart[id] : 0;
+    }
+
+    public int getChild(int id, int n) {
+        return childIds[childStart[id] + n];
+    }
+
+    public List<String> getAncestors(String iri) {
+
+        int id = getId(iri);
+
+        if(id == -1) {
+            return List.of();
+        }
+
+        int[] ancestorIds = getAncestorIds(id);
+
+        List<String> ancestors = new ArrayList<>(ancestorIds.length);
+        for(int ancestorId : ancestorIds) {
+            ancestors.add(getIri(ancestorId));
+        }
+        return ancestors;
+    }
+
+    // The transitive closure of the parents of a node, in the order a depth-first (pre-order)
+    // walk of the parents visits them. The node itself is only included if it is on a cycle.
+    //
+    public int[] getAncestorIds(int id) {
+
+        int[] ancestors = new int[Math.max(numParents(id), 4)];
+        int numAncestors = 0;
+
+        IntSet visited = new IntSet();
+
+        // explicit stack of (node, index of the next parent to visit)
+        int[] stackNodes = new int[16];
+        int[] stackNext = new int[16];
+        int depth = 1;
+
+        stackNodes[0] = id;
+        stackNext[0] = 0;
+
+        while(depth > 0) {
+
+            int node = stackNodes[depth - 1];
+            int next = stackNext[depth - 1];
+
+            if(next == numParents(node)) {
+                -- depth;
+                continue;
+            }
+
+            stackNext[depth - 1] = next + 1;
+
+            int parent = getParent(node, next);
+
+            if(!visited.add(parent)) {
+                continue;
+            }
+
+            if(numAncestors == ancestors.length) {
+                ancestors = Arrays.copyOf(ancestors, ancestors.length * 2);
+            }
+            ancestors[numAncestors ++] = parent;
+
+            if(depth == stackNodes.length) {
+                stackNodes = Arrays.copyOf(stackNodes, depth * 2);
+                stackNext = Arrays.copyOf(stackNext, depth * 2);
+            }
+            stackNodes[depth] = parent;
+            stackNext[depth] = 0;
+            ++ depth;
+        }
+
+        return Arrays.copyOf(ancestors, numAncestors);
+    }
+
+    // Minimal open addressing set of non-negative ints, sized for one closure query
+    //
+    private static class IntSet {
+
+        int[] table = newTable(16);
+        int size = 0;
+
+        boolean add(int value) {
+
+            int mask = table.length - 1;
+            int slot = (value * 0x9E3779B9) >>> 1 & mask;
+
+            while(table[slot] != -1) {
+                if(table[slot] == value) {
+                    return false;
+                }
+                slot = (slot + 1) & mask;
+            }
+
+            table[slot] = value;
+
+            if(++ size * 2 > table.length) {
+                int[] old = table;
+                table = newTable(old.length * 2);
+                size = 0;
+                for(int v : old) {
+                    if(v != -1) {
+                        add(v);
+                    }
+                }
+            }
+
+            return true;
+        }
+
+        private static int[] newTable(int capacity) {
+            int[] table = new int[capacity];
+            Arrays.fill(table, -1);
+            return table;
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package uk.ac.ebi.rdf2json.helpers;
+
+import java.util.Arrays;
+
+// Dictionary of every IRI, predicate and bnode id seen while loading an ontology.
+//
+// The parser hands us a fresh String for every occurrence of an IRI, so without this
+// each subject key, predicate and PropertyValueURI would hold its own copy. Each distinct
+// string is stored exactly once here and given a dense int id, which is what the
+// hierarchy code uses to index nodes without hashing strings.
+//
+// The hash table is open addressed over int ids rather than a HashMap<String,Integer>
+// so that the dictionary itself costs a few bytes per entry instead of a boxed entry object.
+//
+public class IriDictionary {
+
+    private String[] strings = new String[1024];
+    private int[] table = newTable(2048);
+    private int size = 0;
+
+    public int getOrCreateId(String str) {
+
+        int mask = table.length - 1;
+
+        for(int slot = spread(str.hashCode()) & mask;; slot = (slot + 1) & mask) {
+
+            int id = table[slot];
+
+            if(id == -1) {
+                return insert(str, slot);
+            }
+
+            if(strings[id].equals(str)) {
+                return id;
+            }
+        }
+    }
+
+    // returns -1 if the string has not been seen
+    //
+    public int getId(String str) {
+
+        int mask = table.length - 1;
+
+        for(int slot = spread(str.hashCode()) & mask;; slot = (slot + 1) & mask) {
+
+            int id = table[slot];
+
+            if(id == -1) {
+                return -1;
+            }
+
+            if(strings[id].equals(str)) {
+                return id;
+            }
+        }
+    }
+
+    public String intern(String str) {
+        if(str == null) {
+            return null;
+        }
+        // look up the id first: getOrCreateId may replace the strings array
+        int id = getOrCreateId(str);
+        return strings[id];
+    }
+
+    public String getString(int id) {
+        return strings[id];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private int insert(String str, int slot) {
+
+        int id = size ++;
+
+        if(id == strings.length) {
+            strings = Arrays.copyOf(strings, strings.length * 2);
+        }
+
+        strings[id] = str;
+        table[slot] = id;
+
+        // keep the load factor at or below 0.5
+        if(size * 2 > table.length) {
+            rehash(table.length * 2);
+        }
+
+        return id;
+    }
+
+    private void rehash(int newCapacity) {
+
+        int[] newTable = newTable(newCapacity);
+        int mask = newCapacity - 1;
+
+        for(int id = 0; id < size; ++ id) {
+            int slot = spread(strings[id].hashCode()) & mask;
+            while(newTable[slot] != -1) {
+                slot = (slot + 1) & mask;
+            }
+            newTable[slot] = id;
+        }
+
+        table = newTable;
+    }
+
+    private static int spread(int h) {
+        return h ^ (h >>> 16);
+    }
+
+    private static int[] newTable(int capacity) {
+        int[] table = new int[capacity];
+        Arrays.fill(table, -1);
+        return table;
+    }
+}
@@ -0,0 +1,183 @@
+package uk.ac.ebi.rdf2json.helpers;
+
+import com.google.gson.stream.JsonReader;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+// Finds where each ontology is in rdf2json's JSON output, { "ontologies": [ { ... }, ... ] },
+// in a single pass over the bytes, without parsing the ontologies. The ranges can then be
+// copied into a new output with RawJsonCopier.
+//
+// Only the top level keys and the keys and values directly inside each ontology object are
+// looked at (to find "ontologies" and each "ontologyId"); everything else just has its
+// brackets counted.
+//
+public class JsonOntologyScanner {
+
+    static final int BUFFER_SIZE = 1024 * 1024;
+
+    // strings longer than this aren't kept, as they can't be a key or ontologyId we want
+    static final int MAX_STRING_LENGTH = 1024;
+
+    public static class Range {
+
+        public final String ontologyId;
+
+        // [start, end) of the ontology object in the file
+        public final long start;
+        public final long end;
+
+        Range(String ontologyId, long start, long end) {
+            this.ontologyId = ontologyId;
+            this.start = start;
+            this.end = end;
+        }
+    }
+
+    public static List<Range> scan(Path path) throws IOException {
+
+        List<Range> ranges = new ArrayList<>();
+
+        byte[] buf = new byte[BUFFER_SIZE];
+        long bufferStart = 0;
+
+        int depth = 0;
+        boolean inString = false;
+        boolean escape = false;
+
+        // the string being read (if it is at a depth we are interested in), the last
+        // string read, and the key of the value being read at that depth
+        ByteArrayOutputStream string = null;
+        String lastString = null;
+        String key = null;
+        boolean afterColon = false;
+
+        int ontologiesDepth = -1;
+        long ontologyStart = -1;
+        String ontologyId = null;
+
+        try(InputStream is = Files.newInputStream(path)) {
+
+            for(int n; (n = is.read(buf)) > 0; bufferStart += n) {
+
+                for(int i = 0; i < n; ++ i) {
+
+                    byte b = buf[i];
+
+                    if(inString) {
+
+                        if(escape) {
+                            escape = false;
+                        } else if(b == '\\') {
+                            escape = true;
+                        } else if(b == '"') {
+                            inString = false;
+                            lastString = string != null ? decode(string) : null;
+                            string = null;
+                            if(afterColon && depth == ontologiesDepth + 1 && ontologyStart != -1 && "ontologyId".equals(key)) {
+                                ontologyId = lastString;
+                            }
+                            continue;
+                        }
+
+                        if(string != null) {
+                            if(string.size() < MAX_STRING_LENGTH) {
+                                string.write(b);
+                            } else {
+                                string = null;
+                            }
+                        }
+                        continue;
+                    }
+
+                    switch(b) {
+                        case '"':
+                            inString = true;
+                            boolean wanted = depth == 1 || (ontologyStart != -1 && depth == ontologiesDepth + 1);
+                            string = wanted ? new ByteArrayOutputStream() : null;
+                            break;
+                        case ':':
+                            key = lastString;
+                            afterColon = true;
+                            break;
+                        case ',':
+                            afterColon = false;
+                            break;
+                        case '{':
+                        case '[':
+                            if(b == '[' && depth == 1 && afterColon && "ontologies".equals(key)) {
+                                ontologiesDepth = depth + 1;
+                            } else if(b == '{' && depth == ontologiesDepth) {
+                                ontologyStart = bufferStart + i;
+                                ontologyId = null;
+                            }
+                            ++ depth;
+                            afterColon = false;
+                            break;
+                        case '}':
+                        case ']':
+                            -- depth;
+                            if(b == ']' && depth == ontologiesDepth - 1) {
+                                ontologiesDepth = -1;
+                            } else if(b == '}' && depth == ontologiesDepth && ontologyStart != -1) {
+                                if(ontologyId == null) {
+                                    throw new IOException("ontology without an ontologyId at offset " + ontologyStart + " of " + path);
+                                }
+                                ranges.add(new Range(ontologyId, ontologyStart, bufferStart + i + 1));
+                                ontologyStart = -1;
+                            }
+                            break;
+                    }
+                }
+            }
+        }
+
+        if(depth != 0 || inString) {
+            throw new IOException("unexpected end of " + path);
+        }
+
+        return ranges;
+    }
+
+    // Whether the output at path was written with --compact rather than indented, going by
+    // whether anything but the opening brace comes before its first key. RawJsonCopier can
+    // only copy ontologies between outputs with the same layout.
+    //
+    public static boolean isCompact(Path path) throws IOException {
+
+        try(InputStream is = Files.newInputStream(path)) {
+            for(int b; (b = is.read()) != -1; ) {
+                if(b == '"') {
+                    return true;
+                }
+                if(b != '{') {
+                    return false;
+                }
+            }
+        }
+
+        return true;
+    }
+
+    private static String decode(ByteArrayOutputStream string) throws IOException {
+
+        String s = new String(string.toByteArray(), StandardCharsets.UTF_8);
+
+        if(s.indexOf('\\') == -1) {
+            return s;
+        }
+
+        // let gson deal with the escapes
+        JsonReader reader = new JsonReader(new StringReader("\"" + s + "\""));
+        reader.setLenient(true);
+        return reader.nextString();
+    }
+}
@@ -0,0 +1,209 @@
+package uk.ac.ebi.rdf2json.helpers;
+
+import com.google.gson.internal.LazilyParsedNumber;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// A JsonWriter that records the calls made to it, so that they can be replayed on another
+// JsonWriter later. Used to serialise entities on several threads (--writeParallelism):
+// working out what to write (ancestor closures, rdf:Lists, nested bnodes) is done in
+// parallel, and the recorded tokens are then replayed on the real writer in order. As the
+// real writer sees exactly the same calls, its output is the same as if it had been
+// written to directly, whatever format it writes.
+//
+public class JsonTokenBuffer extends JsonWriter {
+
+    private static final Writer UNWRITABLE_WRITER = new Writer() {
+        @Override
+        public void write(char[] buffer, int offset, int counter) {
+            throw new AssertionError();
+        }
+        @Override
+        public void flush() {
+            throw new AssertionError();
+        }
+        @Override
+        public void close() {
+            throw new AssertionError();
+        }
+    };
+
+    static final byte BEGIN_OBJECT = 1;
+    static final byte END_OBJECT = 2;
+    static final byte BEGIN_ARRAY = 3;
+    static final byte END_ARRAY = 4;
+    static final byte NAME = 5;
+    static final byte STRING = 6;
+    static final byte NUMBER = 7;
+    static final byte TRUE = 8;
+    static final byte FALSE = 9;
+    static final byte NULL = 10;
+
+    byte[] tokens = new byte[256];
+    int numTokens = 0;
+
+    // the strings of NAME, STRING and NUMBER tokens, in order
+    List<String> strings = new ArrayList<>();
+
+    public JsonTokenBuffer() {
+        super(UNWRITABLE_WRITER);
+    }
+
+    // Makes the same calls on writer as were made on this buffer.
+    //
+    public void replay(JsonWriter writer) throws IOException {
+
+        int s = 0;
+
+        for(int i = 0; i < numTokens; ++ i) {
+            switch(tokens[i]) {
+                case BEGIN_OBJECT:
+                    writer.beginObject();
+                    break;
+                case END_OBJECT:
+                    writer.endObject();
+                    break;
+                case BEGIN_ARRAY:
+                    writer.beginArray();
+                    break;
+                case END_ARRAY:
+                    writer.endArray();
+                    break;
+                case NAME:
+                    writer.name(strings.get(s ++));
+                    break;
+                case STRING:
+                    writer.value(strings.get(s ++));
+                    break;
+                case NUMBER:
+                    writer.value(new LazilyParsedNumber(strings.get(s ++)));
+                    break;
+                case TRUE:
+                    writer.value(true);
+                    break;
+                case FALSE:
+                    writer.value(false);
+                    break;
+                case NULL:
+                    writer.nullValue();
+                    break;
+            }
+        }
+    }
+
+    @Override
+    public JsonWriter beginObject() {
+        add(BEGIN_OBJECT);
+        return this;
+    }
+
+    @Override
+    public JsonWriter endObject() {
+        add(END_OBJECT);
+        return this;
+    }
+
+    @Override
+    public JsonWriter beginArray() {
+        add(BEGIN_ARRAY);
+        return this;
+    }
+
+    @Override
+    public JsonWriter endArray() {
+        add(END_ARRAY);
+        return this;
+    }
+
+    @Override
+    public JsonWriter name(String name) {
+        if(name == null) {
+            throw new NullPointerException("name == null");
+        }
+        add(NAME, name);
+        return this;
+    }
+
+    @Override
+    public JsonWriter value(String value) {
+        if(value == null) {
+            return nullValue();
+        }
+        add(STRING, value);
+        return this;
+    }
+
+    @Override
+    public JsonWriter jsonValue(String value) {
+        throw new UnsupportedOperationException("raw JSON cannot be recorded");
+    }
+
+    @Override
+    public JsonWriter nullValue() {
+        add(NULL);
+        return this;
+    }
+
+    @Override
+    public JsonWriter value(boolean value) {
+        add(value ? TRUE : FALSE);
+        return this;
+    }
+
+    @Override
+    public JsonWriter value(Boolean value) {
+        if(value == null) {
+            return nullValue();
+        }
+        return value(value.booleanValue());
+    }
+
+    @Override
+    public JsonWriter value(double value) {
+        if(Double.isNaN(value) || Double.isInfinite(value)) {
+            throw new IllegalArgumentException("Numeric values must be finite, but was " + value);
+        }
+        add(NUMBER, Double.toString(value));
+        return this;
+    }
+
+    @Override
+    public JsonWriter value(long value) {
+        add(NUMBER, Long.toString(value));
+        return this;
+    }
+
+    @Override
+    public JsonWriter value(Number value) {
+        if(value == null) {
+            return nullValue();
+        }
+        add(NUMBER, value.toString());
+        return this;
+    }
+
+    @Override
+    public void flush() {
+    }
+
+    @Override
+    public void close() {
+    }
+
+    private void add(byte token) {
+        if(numTokens == tokens.length) {
+            tokens = Arrays.copyOf(tokens, numTokens * 2);
+        }
+        tokens[numTokens ++] = token;
+    }
+
+    private void add(byte token, String s) {
+        add(token);
+        strings.add(s);
+    }
+}
@@ -0,0 +1,62 @@
+package uk.ac.ebi.rdf2json.helpers;
+
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+
+// Copies already serialised JSON into a JsonWriter's output without parsing it.
+//
+// The bytes must have been written with the same indent and at the same depth as
+// the place they are being copied to, otherwise the output is still valid JSON but
+// the indentation will be off.
+//
+public class RawJsonCopier {
+
+    // Append the JSON value in bytes [start, end) of source as the next element of the
+    // array that writer is currently in. output must be the channel of the file that
+    // writer (eventually) writes to, or a channel writing to the same stream as writer. The range may start with the separator and
+    // indentation that came before the value in source, which are skipped.
+    //
+    public static void appendArrayElement(JsonWriter writer, WritableByteChannel output, FileChannel source, long start, long end) throws IOException {
+
+        start = skipSeparator(source, start, end);
+
+        // Let the JsonWriter emit the separator and indentation for a new array element
+        // and update its state as if it had written the value, then put the bytes of the
+        // value directly into the file behind it.
+        //
+        writer.jsonValue("");
+        writer.flush();
+
+        for(long pos = start; pos < end; ) {
+            pos += source.transferTo(pos, end - pos, output);
+        }
+    }
+
+    private static long skipSeparator(FileChannel source, long start, long end) throws IOException {
+
+        ByteBuffer buf = ByteBuffer.allocate(256);
+
+        while(start < end) {
+
+            buf.clear();
+            int n = source.read(buf, start);
+
+            if(n <= 0) {
+                break;
+            }
+
+            for(int i = 0; i < n && start < end; ++ i, ++ start) {
+                byte b = buf.get(i);
+                if(b != ' ' && b != '\n' && b != '\r' && b != '\t' && b != ',') {
+                    return start;
+                }
+            }
+        }
+
+        return start;
+    }
+}
@@ -0,0 +1,409 @@
+package uk.ac.ebi.rdf2json.helpers;
+
+import uk.ac.ebi.rdf2json.OntologyNode;
+import uk.ac.ebi.rdf2json.properties.PropertySet;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+// A replacement for the TreeMap of nodes in OntologyGraph (--spillDir) which keeps only a
+// bounded number of blank nodes in memory and writes the rest to a file on disk.
+//
+// Axioms, restrictions, lists and other blank nodes usually outnumber the entities many
+// times over, and each is only looked at by a few annotators, so they are read back from
+// disk on demand. Entities (nodes with a URI) always stay in memory.
+//
+// The file is an append-only log of serialised nodes. When a node is evicted from the
+// cache it is appended again if it has changed since it was last written (compared by a
+// hash of the serialised bytes), and an offset array indexed by dictionary id points at
+// the latest copy. The keys are kept in memory in sorted order, so iterating over the map
+// visits the nodes in the same order as the TreeMap it replaces.
+//
+// Annotators hold on to nodes while they look up others, so an evicted node that is still
+// reachable is handed back as the same object rather than re-read from disk (evicted keeps
+// a weak reference to it). Blank nodes that other nodes hold on to for good
+// (PropertySet.markReferenced(), or values with axioms) are never spilled.
+//
+// A node is written out when it is evicted, so a change made to it afterwards through a
+// reference held from before would be lost if the node were then collected before the
+// next get(). Evicted nodes must therefore not be modified until they have been got from
+// the map again: their PropertySet is marked as spilled meanwhile and throws if anything
+// tries to, and types are only ever added to a node straight after getting it.
+//
+public class SpillingNodeMap extends AbstractMap<String, OntologyNode> implements Closeable {
+
+    static final int WRITE_BUFFER_SIZE = 1024 * 1024;
+
+    IriDictionary dictionary;
+    int cacheSize;
+
+    TreeSet<String> keys = new TreeSet<>();
+
+    // entities, and blank nodes which cannot be spilled
+    Map<String, OntologyNode> pinned = new HashMap<>();
+
+    // the most recently used blank nodes
+    LinkedHashMap<String, OntologyNode> cache;
+
+    // spilled nodes which may still be in memory
+    Map<String, EvictedNode> evicted = new HashMap<>();
+    ReferenceQueue<OntologyNode> collected = new ReferenceQueue<>();
+
+    Path path;
+    FileChannel file;
+
+    // offsets[dictionary id] is 1 + the position of the latest copy of the node in the file
+    long[] offsets = new long[1024];
+
+    // hash of the bytes at offsets[id], so unchanged nodes are not written again
+    long[] hashes = new long[1024];
+
+    ByteBuffer writeBuffer = ByteBuffer.allocate(WRITE_BUFFER_SIZE);
+    long writeBufferStart = 0;
+
+    ByteArrayOutputStream serialised = new ByteArrayOutputStream();
+
+    long numSpilled = 0;  // including rewrites of modified nodes
+    long numRead = 0;
+
+    public SpillingNodeMap(IriDictionary dictionary, Path spillDir, int cacheSize) throws IOException {
+
+        this.dictionary = dictionary;
+        this.cacheSize = cacheSize;
+
+        Files.createDirectories(spillDir);
+        path = Files.createTempFile(spillDir, "rdf2json_nodes", ".bin");
+        file = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                StandardOpenOption.DELETE_ON_CLOSE);
+
+        cache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, OntologyNode> eldest) {
+                if(size() > SpillingNodeMap.this.cacheSize) {
+                    evict(eldest.getKey(), eldest.getValue());
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    @Override
+    public OntologyNode get(Object key) {
+
+        OntologyNode node = pinned.get(key);
+        if(node != null) {
+            return node;
+        }
+
+        node = cache.get(key);
+        if(node != null) {
+            return node;
+        }
+
+        if(!(key instanceof String)) {
+            return null;
+        }
+
+        expungeCollected();
+
+        EvictedNode ref = evicted.remove(key);
+        if(ref != null) {
+            node = ref.get();
+            if(node != null) {
+                node.properties.setSpilled(false);
+                cache.put((String) key, node);
+                return node;
+            }
+        }
+
+        int id = dictionary.getId((String) key);
+        if(id == -1 || id >= offsets.length || offsets[id] == 0) {
+            return null;
+        }
+
+        node = read(offsets[id] - 1);
+        cache.put((String) key, node);
+        return node;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return keys.contains(key);
+    }
+
+    @Override
+    public OntologyNode put(String key, OntologyNode node) {
+
+        OntologyNode existing = remove(key);
+
+        keys.add(key);
+
+        if(node.uri != null || node.types.contains(OntologyNode.NodeType.ONTOLOGY)) {
+            pinned.put(key, node);
+        } else {
+            cache.put(key, node);
+        }
+
+        return existing;
+    }
+
+    @Override
+    public OntologyNode remove(Object key) {
+
+        if(!keys.remove(key)) {
+            return null;
+        }
+
+        OntologyNode existing = get(key);
+
+        pinned.remove(key);
+        cache.remove(key);
+        evicted.remove(key);
+
+        int id = dictionary.getId((String) key);
+        if(id != -1 && id < offsets.length) {
+            offsets[id] = 0;
+        }
+
+        return existing;
+    }
+
+    @Override
+    public int size() {
+        return keys.size();
+    }
+
+    @Override
+    public Set<String> keySet() {
+        return Collections.unmodifiableSet(keys);
+    }
+
+    @Override
+    public Set<Entry<String, OntologyNode>> entrySet() {
+        return new AbstractSet<>() {
+            @Override
+            public Iterator<Entry<String, OntologyNode>> iterator() {
+                Iterator<String> it = keys.iterator();
+                return new Iterator<>() {
+                    @Override
+                    public boolean hasNext() {
+                        return it.hasNext();
+                    }
+                    @Override
+                    public Entry<String, OntologyNode> next() {
+                        String key = it.next();
+                        return new SimpleImmutableEntry<>(key, get(key));
+                    }
+                };
+            }
+            @Override
+            public int size() {
+                return keys.size();
+            }
+        };
+    }
+
+    private void evict(String key, OntologyNode node) {
+
+        // Nodes may have become unspillable since they were added (e.g. picked up
+        // a related value, or been referenced from an entity); keep those in memory.
+        //
+        if(node.types.contains(OntologyNode.NodeType.ONTOLOGY) || !node.properties.canSerialize()) {
+            pinned.put(key, node);
+            return;
+        }
+
+        int id = dictionary.getOrCreateId(key);
+
+        if(id >= offsets.length) {
+            int newLength = Math.max(offsets.length * 2, id + 1);
+            offsets = Arrays.copyOf(offsets, newLength);
+            hashes = Arrays.copyOf(hashes, newLength);
+        }
+
+        evicted.put(key, new EvictedNode(key, node, collected));
+        node.properties.setSpilled(true);
+
+        byte[] bytes = serialise(node);
+        long hash = hash(bytes);
+
+        if(offsets[id] != 0 && hashes[id] == hash) {
+            // read back and not modified
+            return;
+        }
+
+        offsets[id] = 1 + write(bytes);
+        hashes[id] = hash;
+        ++ numSpilled;
+    }
+
+    private void expungeCollected() {
+        for(EvictedNode ref; (ref = (EvictedNode) collected.poll()) != null; ) {
+            evicted.remove(ref.key, ref);
+        }
+    }
+
+    private static class EvictedNode extends WeakReference<OntologyNode> {
+
+        String key;
+
+        EvictedNode(String key, OntologyNode node, ReferenceQueue<OntologyNode> queue) {
+            super(node, queue);
+            this.key = key;
+        }
+    }
+
+    private byte[] serialise(OntologyNode node) {
+
+        try {
+            serialised.reset();
+
+            DataOutputStream out = new DataOutputStream(serialised);
+
+            int types = 0;
+            for(OntologyNode.NodeType type : node.types) {
+                types |= 1 << type.ordinal();
+            }
+            out.writeInt(types);
+            node.properties.writeTo(out, dictionary);
+            out.flush();
+
+            return serialised.toByteArray();
+
+        } catch(IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // 64-bit FNV-1a
+    private static long hash(byte[] bytes) {
+        long hash = 0xcbf29ce484222325L;
+        for(byte b : bytes) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    private long write(byte[] bytes) {
+
+        try {
+            int length = bytes.length;
+
+            if(writeBuffer.remaining() < 4 + length) {
+                flushWriteBuffer();
+            }
+
+            long position = writeBufferStart + writeBuffer.position();
+
+            if(writeBuffer.remaining() < 4 + length) {
+                // bigger than the buffer; write it straight to the file
+                ByteBuffer buf = ByteBuffer.allocate(4 + length);
+                buf.putInt(length);
+                buf.put(bytes);
+                buf.flip();
+                writeFully(buf, position);
+                writeBufferStart += 4 + length;
+            } else {
+                writeBuffer.putInt(length);
+                writeBuffer.put(bytes);
+            }
+
+            return position;
+
+        } catch(IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private OntologyNode read(long position) {
+
+        try {
+            if(position >= writeBufferStart) {
+                // still in the write buffer
+                flushWriteBuffer();
+            }
+
+            ByteBuffer lengthBuf = ByteBuffer.allocate(4);
+            readFully(lengthBuf, position);
+            lengthBuf.flip();
+
+            ByteBuffer buf = ByteBuffer.allocate(lengthBuf.getInt());
+            readFully(buf, position + 4);
+
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(buf.array()));
+
+            OntologyNode node = new OntologyNode();
+
+            int types = in.readInt();
+            for(OntologyNode.NodeType type : OntologyNode.NodeType.values()) {
+                if((types & (1 << type.ordinal())) != 0) {
+                    node.types.add(type);
+                }
+            }
+            node.properties = PropertySet.readFrom(in, dictionary);
+
+            ++ numRead;
+
+            return node;
+
+        } catch(IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void flushWriteBuffer() throws IOException {
+        writeBuffer.flip();
+        int length = writeBuffer.remaining();
+        writeFully(writeBuffer, writeBufferStart);
+        writeBufferStart += length;
+        writeBuffer.clear();
+    }
+
+    private void writeFully(ByteBuffer buf, long position) throws IOException {
+        while(buf.hasRemaining()) {
+            position += file.write(buf, position);
+        }
+    }
+
+    private void readFully(ByteBuffer buf, long position) throws IOException {
+        while(buf.hasRemaining()) {
+            int n = file.read(buf, position);
+            if(n < 0) {
+                throw new IOException("unexpected end of spill file " + path);
+            }
+            position += n;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        System.out.println("spilled " + numSpilled + " blank nodes to " + path + " ("
+                + ((writeBufferStart + writeBuffer.position()) / 1024 / 1024) + " MB), read back " + numRead
+                + ", " + pinned.size() + " nodes pinned in memory");
+        file.close();
+    }
+}
@@ -1,91 +1,428 @@
 package uk.ac.ebi.rdf2json.properties;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractSet;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
 
 import uk.ac.ebi.rdf2json.OntologyGraph;
+import uk.ac.ebi.rdf2json.helpers.IriDictionary;
 
 public class PropertySet {
 
-    private Map<String, List<PropertyValue>> properties = new TreeMap<>();
+    // predicates with at least this many values get a ValueIndex
+    static final int INDEX_THRESHOLD = 8;
 
-    public void addProperty(String predicate, PropertyValue value) {
-        List<PropertyValue> props = properties.get(predicate);
-        if (props != null) {
+    private static final String[] NO_PREDICATES = new String[0];
+    private static final Object[] NO_VALUES = new Object[0];
+
+    // There are tens of millions of PropertySets for the largest ontologies, so rather than
+    // a TreeMap of ArrayLists (a map entry, a list and a 10 slot array per predicate) the
+    // predicates and their values are stored in two parallel arrays. A predicate with a
+    // single value, which is most of them, stores the PropertyValue itself; otherwise its
+    // slot holds an ArrayList. Predicates are interned in the graph's IriDictionary, so a
+    // reference costs no more than an int id would.
+    //
+    // The predicates are kept in insertion order and only sorted when they are read, so
+    // building a set costs no more than appending to the arrays.
+    //
+    // Annotators that don't touch the same predicates may run at the same time (see
+    // AnnotatorPipeline) and still add values to the same set, so the methods that look at
+    // the arrays are synchronized. The value lists they hand out are not: a predicate is
+    // only ever written by one annotator at a time, and nothing reads it meanwhile.
+    //
+    private String[] predicates = NO_PREDICATES;
+    private Object[] values = NO_VALUES;
+    private int size = 0;
+    private boolean sorted = true;
+
+    // Hash indexes over the values of predicates with many values (e.g. thousands of xrefs),
+    // so that duplicate and axiom target lookups don't scan the whole list. Created lazily;
+    // null for the vast majority of nodes, which only have a few values per predicate.
+    private Map<String, ValueIndex> indexes = null;
+
+    // set when something outside of the node that owns this PropertySet keeps a reference to
+    // it or its values, in which case the node must stay in memory (see SpillingNodeMap)
+    private boolean referenced = false;
+
+    // set while the node that owns this PropertySet is spilled to disk by SpillingNodeMap.
+    // Its values have already been written out, and a change would be lost as soon as the
+    // node is dropped from memory and read back, so the methods that modify the set refuse
+    // to until the node has been got from the map again.
+    private boolean spilled = false;
+
+    public synchronized void addProperty(String predicate, PropertyValue value) {
+        checkNotSpilled();
+        add(indexOf(predicate), predicate, value);
+    }
+
+    // The same as calling addProperty for each value in turn, but only looks the predicate
+    // up once, for annotators that gather many values for a node before adding them.
+    //
+    public synchronized void addProperties(String predicate, List<PropertyValue> newValues) {
+
+        checkNotSpilled();
+
+        int i = indexOf(predicate);
+
+        for(PropertyValue value : newValues) {
+            add(i, predicate, value);
+            if(i == -1) {
+                i = size - 1;
+            }
+        }
+    }
+
+    private void add(int i, String predicate, PropertyValue value) {
+        if (i != -1) {
 
     // prevent dupliacte values if same triple appears in multiple owl files
-            for(PropertyValue p : props) {
-                if(p.equals(value)) {
+            if(values[i] instanceof PropertyValue) {
+                if(((PropertyValue) values[i]).equals(value)) {
                     return;
                 }
+                valueList(i).add(value);
+                return;
+            }
+
+            List<PropertyValue> props = valueList(i);
+
+            if(findEqual(predicate, props, value) != null) {
+                return;
             }
 
             props.add(value);
+            onValueAdded(predicate, props, value, null);
         } else {
-            props = new ArrayList<>();
-            props.add(value);
-            properties.put(predicate, props);
+            append(predicate, value);
         }
     }
 
-    public boolean hasProperty(String predicate) {
-        return properties.containsKey(predicate);
+    public synchronized boolean hasProperty(String predicate) {
+        return indexOf(predicate) != -1;
     }
 
-    public void annotatePropertyWithAxiom(String predicate, PropertyValue value, PropertySet axiom, OntologyGraph graph) {
+    public synchronized void annotatePropertyWithAxiom(String predicate, PropertyValue value, PropertySet axiom, OntologyGraph graph) {
+
+        checkNotSpilled();
 
-        List<PropertyValue> props = properties.get(predicate);
+        int i = indexOf(predicate);
 
         PropertyValue prop = null;
 
-        if (props != null) {
+        if (i != -1) {
+
+            List<PropertyValue> props = valueList(i);
 
             if (value.getType() == PropertyValue.Type.BNODE) {
                 // bnode case, look for an isomorphic bnode
-                for (PropertyValue existingValue : props) {
-                    if (existingValue.getType() == PropertyValue.Type.BNODE) {
-                        if (graph.areSubgraphsIsomorphic(existingValue, value)) {
-                            prop = existingValue;
-                            break;
-                        }
-                    }
-                }
+                prop = findIsomorphicBNode(predicate, props, value, graph);
             } else {
                 // simple case, look for an equal value to reify
-                for (PropertyValue p : props) {
-                    if (p.equals(value)) {
-                        prop = p;
-                        break;
-                    }
-                }
+                prop = findEqual(predicate, props, value);
             }
             if (prop == null) {
                 prop = value;
                 props.add(prop);
+                onValueAdded(predicate, props, prop, graph);
             }
         } else {
-            props = new ArrayList<>();
             prop = value;
-            props.add(prop);
-            properties.put(predicate, props);
+            append(predicate, prop);
+        }
+
+        prop.addAxiom(axiom);
+    }
+
+    private int indexOf(String predicate) {
+        for(int i = 0; i < size; ++ i) {
+            String p = predicates[i];
+            if(p == predicate || p.equals(predicate)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void append(String predicate, Object value) {
+
+        if(size == predicates.length) {
+            int capacity = size < 4 ? size + 2 : size + (size >> 1);
+            predicates = Arrays.copyOf(predicates, capacity);
+            values = Arrays.copyOf(values, capacity);
+        }
+
+        if(size > 0 && predicates[size - 1].compareTo(predicate) > 0) {
+            sorted = false;
+        }
+
+        predicates[size] = predicate;
+        values[size] = value;
+        ++ size;
+    }
+
+    // The values of predicate i as a mutable list, replacing a single value with a list
+    //
+    @SuppressWarnings("unchecked")
+    private List<PropertyValue> valueList(int i) {
+        if(values[i] instanceof PropertyValue) {
+            List<PropertyValue> list = new ArrayList<>(2);
+            list.add((PropertyValue) values[i]);
+            values[i] = list;
+            return list;
+        }
+        return (List<PropertyValue>) values[i];
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<PropertyValue> valuesAt(int i) {
+        if(values[i] instanceof PropertyValue) {
+            return Collections.singletonList((PropertyValue) values[i]);
+        }
+        return (List<PropertyValue>) values[i];
+    }
+
+    // insertion sort, as sets are small and usually nearly sorted already
+    //
+    private void ensureSorted() {
+
+        if(sorted) {
+            return;
+        }
+
+        for(int i = 1; i < size; ++ i) {
+            String predicate = predicates[i];
+            Object value = values[i];
+            int j = i - 1;
+            while(j >= 0 && predicates[j].compareTo(predicate) > 0) {
+                predicates[j + 1] = predicates[j];
+                values[j + 1] = values[j];
+                -- j;
+            }
+            predicates[j + 1] = predicate;
+            values[j + 1] = value;
+        }
+
+        sorted = true;
+    }
+
+    // The first value in props that equals value, or null
+    //
+    private PropertyValue findEqual(String predicate, List<PropertyValue> props, PropertyValue value) {
+
+        ValueIndex index = getIndex(predicate, props);
+
+        if(index == null) {
+            for(PropertyValue p : props) {
+                if(p.equals(value)) {
+                    return p;
+                }
+            }
+            return null;
+        }
+
+        return index.findEqual(value);
+    }
+
+    // The first bnode value in props whose subgraph is isomorphic to that of value, or null.
+    // With an index only the bnodes with the same structural hash are compared.
+    //
+    private PropertyValue findIsomorphicBNode(String predicate, List<PropertyValue> props, PropertyValue value, OntologyGraph graph) {
+
+        ValueIndex index = getIndex(predicate, props);
+
+        List<PropertyValue> candidates = props;
+
+        if(index != null) {
+            candidates = index.getBNodesWithSubgraphHash(graph.subgraphHash(value), graph);
+            if(candidates == null) {
+                return null;
+            }
+        }
+
+        for (PropertyValue existingValue : candidates) {
+            if (existingValue.getType() == PropertyValue.Type.BNODE) {
+                if (graph.areSubgraphsIsomorphic(existingValue, value)) {
+                    return existingValue;
+                }
+            }
+        }
+
+        return null;
+    }
+
+    private ValueIndex getIndex(String predicate, List<PropertyValue> props) {
+
+        if(props.size() < INDEX_THRESHOLD) {
+            return null;
+        }
+
+        if(indexes == null) {
+            indexes = new TreeMap<>();
+        }
+
+        ValueIndex index = indexes.get(predicate);
+
+        // (re)build if the list was filled without going through the index
+        if(index == null || index.values != props || index.size != props.size()) {
+            index = new ValueIndex(props);
+            indexes.put(predicate, index);
+        }
+
+        return index;
+    }
+
+    private void onValueAdded(String predicate, List<PropertyValue> props, PropertyValue value, OntologyGraph graph) {
+
+        if(indexes == null) {
+            return;
+        }
+
+        ValueIndex index = indexes.get(predicate);
+
+        if(index != null && index.size == props.size() - 1) {
+            index.add(props.size() - 1, value, graph);
+        }
+    }
+
+    // Positions of the values of one predicate, by PropertyValue.valueHash(). Bnode values
+    // are also grouped by OntologyGraph.subgraphHash() the first time an isomorphic bnode
+    // is looked for, which assumes the subgraphs of existing values don't change while
+    // axioms are being added to them (they don't: ReifiedPropertyAnnotator only adds axioms).
+    //
+    private static class ValueIndex {
+
+        List<PropertyValue> values;
+
+        int[] table;  // 1 + position in values, or 0 if empty
+        int size = 0;
+
+        Map<Integer, List<PropertyValue>> bnodesBySubgraphHash = null;
+
+        ValueIndex(List<PropertyValue> values) {
+            this.values = values;
+            table = new int[Integer.highestOneBit(values.size() * 4 - 1) * 2];
+            for(int i = 0; i < values.size(); ++ i) {
+                add(i, values.get(i), null);
+            }
         }
 
-        prop.axioms.add(axiom);
+        void add(int position, PropertyValue value, OntologyGraph graph) {
+
+            if((size + 1) * 2 > table.length) {
+                int[] old = table;
+                table = new int[old.length * 2];
+                for(int entry : old) {
+                    if(entry != 0) {
+                        insert(entry);
+                    }
+                }
+            }
+
+            insert(position + 1);
+            ++ size;
+
+            if(bnodesBySubgraphHash != null && value.getType() == PropertyValue.Type.BNODE) {
+                if(graph != null) {
+                    bnodesBySubgraphHash.computeIfAbsent(graph.subgraphHash(value), k -> new ArrayList<>()).add(value);
+                } else {
+                    // no graph to hash it with; regroup on the next lookup
+                    bnodesBySubgraphHash = null;
+                }
+            }
+        }
+
+        private void insert(int entry) {
+            int mask = table.length - 1;
+            int slot = spread(values.get(entry - 1).valueHash()) & mask;
+            while(table[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = entry;
+        }
+
+        // The list can hold equal values (bnodes added by annotatePropertyWithAxiom aren't
+        // deduplicated), so return the one with the lowest position like a linear scan would
+        //
+        PropertyValue findEqual(PropertyValue value) {
+
+            int mask = table.length - 1;
+            int firstPosition = Integer.MAX_VALUE;
+
+            for(int slot = spread(value.valueHash()) & mask; table[slot] != 0; slot = (slot + 1) & mask) {
+                int position = table[slot] - 1;
+                if(position < firstPosition && values.get(position).equals(value)) {
+                    firstPosition = position;
+                }
+            }
+
+            return firstPosition == Integer.MAX_VALUE ? null : values.get(firstPosition);
+        }
+
+        List<PropertyValue> getBNodesWithSubgraphHash(int hash, OntologyGraph graph) {
+
+            if(bnodesBySubgraphHash == null) {
+                bnodesBySubgraphHash = new HashMap<>();
+                for(PropertyValue value : values) {
+                    if(value.getType() == PropertyValue.Type.BNODE) {
+                        bnodesBySubgraphHash.computeIfAbsent(graph.subgraphHash(value), k -> new ArrayList<>()).add(value);
+                    }
+                }
+            }
+
+            return bnodesBySubgraphHash.get(hash);
+        }
+
+        private static int spread(int h) {
+            return h ^ (h >>> 16);
+        }
     }
 
-    public Set<String> getPropertyPredicates() {
-        return properties.keySet();
+    // The predicates in sorted order. Must not be held on to while the set is modified.
+    //
+    public synchronized Set<String> getPropertyPredicates() {
+
+        ensureSorted();
+
+        return new AbstractSet<>() {
+
+            @Override
+            public Iterator<String> iterator() {
+                return Arrays.asList(predicates).subList(0, size).iterator();
+            }
+
+            @Override
+            public boolean contains(Object o) {
+                return o instanceof String && indexOf((String) o) != -1;
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
     }
 
-    public List<PropertyValue> getPropertyValues(String predicate) {
-        return properties.get(predicate);
+    // The values of predicate, or null if it has none. The list can't be modified, whether
+    // the predicate has one value or many: values are added with addProperty.
+    //
+    public synchronized List<PropertyValue> getPropertyValues(String predicate) {
+        int i = indexOf(predicate);
+        return i == -1 ? null : Collections.unmodifiableList(valuesAt(i));
     }
 
-    public PropertyValue getPropertyValue(String predicate) {
-        List<PropertyValue> values = properties.get(predicate);
+    public synchronized PropertyValue getPropertyValue(String predicate) {
+        List<PropertyValue> values = getPropertyValues(predicate);
         if(values == null || values.size() == 0) {
             return null;
         }
@@ -96,10 +433,155 @@ public class PropertySet {
         return values.get(0);
     }
 
-    public void removeProperty(String predicate) {
-        properties.remove(predicate);
+    public synchronized void removeProperty(String predicate) {
+        checkNotSpilled();
+        int i = indexOf(predicate);
+        if(i != -1) {
+            System.arraycopy(predicates, i + 1, predicates, i, size - i - 1);
+            System.arraycopy(values, i + 1, values, i, size - i - 1);
+            -- size;
+            predicates[size] = null;
+            values[size] = null;
+        }
+        if(indexes != null) {
+            indexes.remove(predicate);
+        }
+    }
+
+    public void markReferenced() {
+        checkNotSpilled();
+        referenced = true;
     }
 
+    public boolean isReferenced() {
+        return referenced;
+    }
 
-}
+    public void setSpilled(boolean spilled) {
+        this.spilled = spilled;
+    }
 
+    private void checkNotSpilled() {
+        if(spilled) {
+            throw new IllegalStateException("PropertySet modified after its node was spilled to disk; get the node from the graph again first");
+        }
+    }
+
+
+    // Serialisation for SpillingNodeMap. Only plain literal, URI and bnode values can be
+    // written; anything else holds references to other objects which would be lost.
+    //
+    public boolean canSerialize() {
+
+        if(referenced) {
+            return false;
+        }
+
+        for(int i = 0; i < size; ++ i) {
+            for(PropertyValue value : valuesAt(i)) {
+                if(value.hasAxioms()) {
+                    return false;
+                }
+                switch(value.getType()) {
+                    case LITERAL:
+                    case URI:
+                    case BNODE:
+                        break;
+                    default:
+                        return false;
+                }
+            }
+        }
+
+        return true;
+    }
+
+    public void writeTo(DataOutput out, IriDictionary dictionary) throws IOException {
+
+        ensureSorted();
+
+        out.writeInt(size);
+
+        for(int i = 0; i < size; ++ i) {
+
+            List<PropertyValue> values = valuesAt(i);
+
+            out.writeInt(dictionary.getOrCreateId(predicates[i]));
+            out.writeInt(values.size());
+
+            for(PropertyValue value : values) {
+                switch(value.getType()) {
+                    case LITERAL:
+                        PropertyValueLiteral literal = (PropertyValueLiteral) value;
+                        out.writeByte(0);
+                        if(literal.value != null) {
+                            byte[] bytes = literal.value.getBytes(StandardCharsets.UTF_8);
+                            out.writeInt(bytes.length);
+                            out.write(bytes);
+                        } else {
+                            out.writeInt(-1);
+                        }
+                        out.writeInt(dictionary.getOrCreateId(literal.datatype));
+                        out.writeInt(dictionary.getOrCreateId(literal.lang));
+                        break;
+                    case URI:
+                        out.writeByte(1);
+                        out.writeInt(dictionary.getOrCreateId(((PropertyValueURI) value).uri));
+                        break;
+                    case BNODE:
+                        out.writeByte(2);
+                        out.writeInt(dictionary.getOrCreateId(((PropertyValueBNode) value).id));
+                        break;
+                    default:
+                        throw new IllegalStateException("cannot serialise property value of type " + value.getType());
+                }
+            }
+        }
+    }
+
+    public static PropertySet readFrom(DataInput in, IriDictionary dictionary) throws IOException {
+
+        PropertySet set = new PropertySet();
+
+        int numPredicates = in.readInt();
+
+        for(int i = 0; i < numPredicates; ++ i) {
+
+            String predicate = dictionary.getString(in.readInt());
+            int numValues = in.readInt();
+
+            List<PropertyValue> values = new ArrayList<>(numValues);
+
+            for(int n = 0; n < numValues; ++ n) {
+                byte type = in.readByte();
+                switch(type) {
+                    case 0:
+                        int length = in.readInt();
+                        String value = null;
+                        if(length != -1) {
+                            byte[] bytes = new byte[length];
+                            in.readFully(bytes);
+                            value = new String(bytes, StandardCharsets.UTF_8);
+                        }
+                        String datatype = dictionary.getString(in.readInt());
+                        String lang = dictionary.getString(in.readInt());
+                        values.add(new PropertyValueLiteral(value, datatype, lang));
+                        break;
+                    case 1:
+                        values.add(new PropertyValueURI(dictionary.getString(in.readInt())));
+                        break;
+                    case 2:
+                        values.add(new PropertyValueBNode(dictionary.getString(in.readInt())));
+                        break;
+                    default:
+                        throw new IOException("corrupt property set: unknown value type " + type);
+                }
+            }
+
+            set.append(predicate, values.size() == 1 ? values.get(0) : values);
+        }
+
+        return set;
+    }
+
+}
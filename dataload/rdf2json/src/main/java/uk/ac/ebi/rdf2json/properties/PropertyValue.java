@@ -1,11 +1,13 @@
 package uk.ac.ebi.rdf2json.properties;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 import org.apache.jena.graph.Node;
 import uk.ac.ebi.rdf2json.OntologyGraph;
 import uk.ac.ebi.rdf2json.OntologyNode;
+import uk.ac.ebi.rdf2json.helpers.IriDictionary;
 
 public abstract class PropertyValue {
 
@@ -19,19 +21,26 @@ public abstract class PropertyValue {
         ANCESTORS
     }
 
-    // reification
-    public List<PropertySet> axioms = new ArrayList<>();
+    private static final List<PropertySet> NO_AXIOMS = Collections.emptyList();
 
-    public static PropertyValue fromJenaNode(Node node) {
+    // reification. Shared empty list until the first axiom is added, as most values have none,
+    // so it is only ever changed through addAxiom
+    private List<PropertySet> axioms = NO_AXIOMS;
+
+    // IRIs, bnode ids, datatypes and language tags are interned in the graph's dictionary
+    // so that every value pointing at the same node shares one String
+    //
+    public static PropertyValue fromJenaNode(Node node, IriDictionary dictionary) {
 
        if(node.isLiteral()) {
-           return new PropertyValueLiteral(node.getLiteralLexicalForm(), node.getLiteralDatatypeURI(), node.getLiteralLanguage());
+           return new PropertyValueLiteral(node.getLiteralLexicalForm(),
+                   dictionary.intern(node.getLiteralDatatypeURI()), dictionary.intern(node.getLiteralLanguage()));
        }
        if(node.isURI()) {
-           return new PropertyValueURI(node.getURI());
+           return new PropertyValueURI(dictionary.intern(node.getURI()));
        }
        if(node.isBlank()) {
-           return new PropertyValueBNode(node.getBlankNodeId().toString());
+           return new PropertyValueBNode(dictionary.intern(node.getBlankNodeId().toString()));
        }
 
        throw new RuntimeException("Unknown node type");
@@ -40,8 +49,26 @@ public abstract class PropertyValue {
     protected PropertyValue() {
     }
 
+    public void addAxiom(PropertySet axiom) {
+        if(axioms == NO_AXIOMS) {
+            axioms = new ArrayList<>(1);
+        }
+        axioms.add(axiom);
+    }
+
+    public boolean hasAxioms() {
+        return axioms != NO_AXIOMS;
+    }
+
+    public List<PropertySet> getAxioms() {
+        return Collections.unmodifiableList(axioms);
+    }
+
     public abstract Type getType();
     public abstract boolean equals(PropertyValue other);
 
+    // A hash code consistent with equals(PropertyValue), for PropertySet's value index
+    public abstract int valueHash();
+
 }
 
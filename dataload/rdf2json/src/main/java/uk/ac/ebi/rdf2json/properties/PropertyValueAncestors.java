@@ -4,7 +4,7 @@ import uk.ac.ebi.rdf2json.OntologyGraph;
 import uk.ac.ebi.rdf2json.OntologyNode;
 import uk.ac.ebi.rdf2json.helpers.AncestorsClosure;
 
-import java.util.Set;
+import java.util.List;
 
 // Storing the ancestors in the properties of each entity (e.g. with PropertyValueURIs) causes an explosion in RAM
 // usage for large hierarchical ontologies (32 GB requirement on the LSF to load ncbitaxon became 64 GB).
@@ -21,7 +21,7 @@ public class PropertyValueAncestors extends PropertyValue {
         this.hierarchyPredicate = hierarchyPredicate;
     }
 
-    public Set<String> getAncestors(OntologyGraph graph) {
+    public List<String> getAncestors(OntologyGraph graph) {
         return AncestorsClosure.getAncestors(node, hierarchyPredicate, graph);
     }
 
@@ -29,6 +29,10 @@ public class PropertyValueAncestors extends PropertyValue {
         return PropertyValue.Type.ANCESTORS;
     }
 
+    public int valueHash() {
+        return System.identityHashCode(node) * 31 + hierarchyPredicate.hashCode();
+    }
+
     public boolean equals(PropertyValue other) {
         return other.getType() == PropertyValue.Type.ANCESTORS
                 && ((PropertyValueAncestors) other).node.equals(node)
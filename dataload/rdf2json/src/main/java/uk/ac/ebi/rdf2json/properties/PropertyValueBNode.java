@@ -16,6 +16,10 @@ public class PropertyValueBNode extends PropertyValue {
         return Type.BNODE;
     }
     
+    public int valueHash() {
+        return id.hashCode();
+    }
+
     public boolean equals(PropertyValue other) {
         return other.getType() == Type.BNODE && ((PropertyValueBNode) other).id.equals(id);
     }
@@ -1,6 +1,8 @@
 
 package uk.ac.ebi.rdf2json.properties;
 
+import java.util.Objects;
+
 public class PropertyValueLiteral extends PropertyValue {
     
     String value;
@@ -33,6 +35,10 @@ public class PropertyValueLiteral extends PropertyValue {
         return this.lang;
     }
 
+    public int valueHash() {
+        return (Objects.hashCode(value) * 31 + Objects.hashCode(datatype)) * 31 + Objects.hashCode(lang);
+    }
+
     public boolean equals(PropertyValue other) {
         return other.getType() == Type.LITERAL &&
                 ((PropertyValueLiteral) other).value.equals(value) &&
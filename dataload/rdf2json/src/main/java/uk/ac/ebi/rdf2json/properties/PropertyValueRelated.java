@@ -17,6 +17,12 @@ public class PropertyValueRelated extends PropertyValue {
             throw new RuntimeException("filler was null");
         }
 
+        // both nodes are written out from this value, so they must stay in memory
+        if(classExpression != null) {
+            classExpression.properties.markReferenced();
+        }
+        filler.properties.markReferenced();
+
     }
 
     public OntologyNode getClassExpression() {
@@ -35,6 +41,11 @@ public class PropertyValueRelated extends PropertyValue {
         return Type.RELATED;
     }
     
+    // the nodes are compared by identity in equals, so hash them by identity too
+    public int valueHash() {
+        return (System.identityHashCode(classExpression) * 31 + property.hashCode()) * 31 + System.identityHashCode(filler);
+    }
+
     public boolean equals(PropertyValue other) {
         return other.getType() == Type.RELATED 
 		&& ((PropertyValueRelated) other).classExpression.equals(classExpression)
@@ -20,6 +20,10 @@ public class PropertyValueURI extends PropertyValue {
         return Type.URI;
     }
     
+    public int valueHash() {
+        return uri.hashCode();
+    }
+
     public boolean equals(PropertyValue other) {
         return other.getType() == Type.URI && ((PropertyValueURI) other).uri.equals(uri);
     }
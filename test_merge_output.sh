@@ -0,0 +1,58 @@
+#!/usr/bin/env bash
+
+# Checks that rdf2json --mergeOutputWith keeps the layout of the output it is writing
+# whatever the layout (indented or --compact) of the previous output it merges with:
+# for each combination, the ontology kept from the previous run must come out exactly as
+# if both ontologies had been loaded in the same run.
+#
+# Needs python3 and the rdf2json jar (cd dataload && mvn package).
+
+SCRIPT_PATH=$(dirname $(readlink -f $0))
+JAR=$SCRIPT_PATH/dataload/rdf2json/target/rdf2json-1.0-SNAPSHOT.jar
+
+PREVIOUS=testcases/individuals/anonymous-types-with-inverse.json
+CURRENT=testcases/owl2-primer/class-assertion.json
+
+WORK=$(mktemp -d)
+trap "rm -rf $WORK" EXIT
+
+cd $SCRIPT_PATH
+
+# the ontology of this run followed by the one kept from the previous run, which is the
+# order --mergeOutputWith writes them in
+python3 -c "import json; print(json.dumps({ 'ontologies': json.load(open('$CURRENT'))['ontologies'] + json.load(open('$PREVIOUS'))['ontologies'] }))" > $WORK/both.json
+
+FAILED=0
+
+rdf2json() {
+    java -DentityExpansionLimit=0 -jar $JAR --loadLocalFiles --noDates "$@" >> $WORK/rdf2json.log 2>&1
+}
+
+for LAYOUT in indented compact; do
+    FLAG=$([ $LAYOUT == compact ] && echo --compact)
+    rdf2json --config $PREVIOUS --output $WORK/previous_$LAYOUT.json $FLAG
+    rdf2json --config $WORK/both.json --output $WORK/expected_$LAYOUT.json $FLAG
+done
+
+for PREVIOUS_LAYOUT in indented compact; do
+    for LAYOUT in indented compact; do
+        FLAG=$([ $LAYOUT == compact ] && echo --compact)
+        NAME=${PREVIOUS_LAYOUT}_into_$LAYOUT
+        rdf2json --config $CURRENT --output $WORK/$NAME.json --mergeOutputWith $WORK/previous_$PREVIOUS_LAYOUT.json $FLAG
+        if cmp -s $WORK/$NAME.json $WORK/expected_$LAYOUT.json; then
+            echo "ok   $PREVIOUS_LAYOUT output merged into $LAYOUT output"
+        else
+            echo "FAIL $PREVIOUS_LAYOUT output merged into $LAYOUT output differs from loading both in one $LAYOUT run"
+            FAILED=1
+        fi
+    done
+done
+
+
+if [ $FAILED == 0 ]; then
+    echo "All merge checks passed"
+else
+    echo "Some merge checks failed; the outputs are in $WORK"
+    trap - EXIT
+    exit 1
+fi
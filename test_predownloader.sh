@@ -0,0 +1,154 @@
+#!/usr/bin/env bash
+
+# Checks the conditional and resumable downloads of the predownloader against a stub
+# server (test_predownloader_server.py): 304s for unchanged files, 200s for changed ones,
+# resuming an interrupted download with a 206, and starting again after a 416 or when the
+# file changed in between.
+#
+# Needs python3 and the predownloader jar (cd dataload && mvn package).
+
+SCRIPT_PATH=$(dirname $(readlink -f $0))
+JAR=$SCRIPT_PATH/dataload/predownloader/target/predownloader-1.0-SNAPSHOT.jar
+PORT=${PORT:-18081}
+SERVER=http://127.0.0.1:$PORT
+
+WORK=$(mktemp -d)
+DL=$WORK/downloads
+mkdir $DL
+
+python3 $SCRIPT_PATH/test_predownloader_server.py $PORT &
+SERVER_PID=$!
+trap "kill $SERVER_PID; rm -rf $WORK" EXIT
+
+for i in $(seq 50); do
+    curl -s -o /dev/null $SERVER/log && break
+    sleep 0.1
+done
+
+cat > $WORK/config.json <<EOF
+{ "ontologies": [
+    { "id": "a", "ontology_purl": "$SERVER/a" },
+    { "id": "b", "ontology_purl": "$SERVER/b" },
+    { "id": "w", "ontology_purl": "$SERVER/w" },
+    { "id": "none", "ontology_purl": "$SERVER/none" }
+] }
+EOF
+
+FAILED=0
+
+ctl() {
+    curl -s -o /dev/null $SERVER/ctl/$1/$2
+}
+
+predownload() {
+    echo "--- $1"
+    ctl clearlog -
+    java -jar $JAR --config $WORK/config.json --downloadPath $DL > $WORK/$1.log 2>&1
+}
+
+file() {
+    echo $DL/http___127.0.0.1_${PORT}_$1
+}
+
+# expect <name> <requests>: the requests the server saw for <name> in the last run, as
+# status:range start, e.g. "416:1000 304:0"
+expect() {
+    local actual=$(curl -s $SERVER/log | python3 -c "import json,sys; print(' '.join('%d:%d' % (s, r) for n, s, r in json.load(sys.stdin) if n == '$1'))")
+    if [ "$actual" == "$2" ]; then
+        echo "ok   $1: $actual"
+    else
+        echo "FAIL $1: expected $2, got $actual"
+        FAILED=1
+    fi
+}
+
+# expect_file <name>: the download of <name> is complete and current
+expect_file() {
+    if [ -e $(file $1).part ]; then
+        echo "FAIL $1: .part file left behind"
+        FAILED=1
+    elif curl -s $SERVER/expected/$1 | cmp -s - $(file $1); then
+        echo "ok   $1: up to date"
+    else
+        echo "FAIL $1: contents differ from the server's"
+        FAILED=1
+    fi
+}
+
+expect_status() {
+    local actual=$(python3 -c "import json; print(json.load(open('$DL/manifest.json'))['files']['$SERVER/$1']['status'])")
+    if [ "$actual" == "$2" ]; then
+        echo "ok   $1: $actual"
+    else
+        echo "FAIL $1: expected status $2 in manifest.json, got $actual"
+        FAILED=1
+    fi
+}
+
+
+predownload fresh
+for f in a b w none; do
+    expect $f "200:0"
+    expect_file $f
+done
+
+predownload unchanged
+expect a "304:0"
+expect b "304:0"
+expect w "304:0"
+expect none "200:0"
+expect_status a "not modified"
+
+ctl bump a
+ctl bump b
+predownload changed
+expect a "200:0"
+expect b "200:0"
+expect_file a
+expect_file b
+
+# interrupted half way through; resumed from the end of the .part file
+ctl bump a
+ctl cut a
+predownload interrupted
+expect a "200:0"
+SIZE=$(stat -c %s $(file a).part)
+predownload resumed
+expect a "206:$SIZE"
+expect_file a
+expect_status a "resumed"
+
+# b changes after being interrupted, so If-Range doesn't match and it comes back whole
+ctl bump b
+ctl cut b
+predownload interrupted_changed
+ctl bump b
+predownload changed_since
+expect b "200:0"
+expect_file b
+
+# a weak ETag can't be used in If-Range, so w is downloaded again from the start
+ctl bump w
+ctl cut w
+predownload interrupted_weak
+predownload restarted_weak
+expect w "200:0"
+expect_file w
+
+# a .part file as long as the file itself can't be resumed (416): it is thrown away and
+# the file is checked again
+cp $(file a) $(file a).part
+cp $(file a).etag $(file a).part.etag
+SIZE=$(stat -c %s $(file a))
+predownload range_not_satisfiable
+expect a "416:$SIZE 304:0"
+expect_file a
+
+
+if [ $FAILED == 0 ]; then
+    echo "All predownloader checks passed"
+else
+    echo "Some predownloader checks failed; the logs are in $WORK"
+    trap "kill $SERVER_PID" EXIT
+    exit 1
+fi
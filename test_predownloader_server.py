@@ -0,0 +1,173 @@
+#!/usr/bin/env python3
+#
+# Stub HTTP server for test_predownloader.sh
+#
+# Serves a few N-Triples "ontologies" that differ in the validators they send:
+#
+#   /a     strong ETag and Last-Modified
+#   /b     Last-Modified only
+#   /w     weak ETag only (can't be used in If-Range)
+#   /none  no validators
+#
+# It honours If-None-Match, If-Modified-Since, Range and If-Range like a real server,
+# and can be told to change a file or to drop the connection half way through it:
+#
+#   /ctl/bump/<name>      change the contents (and validators) of <name>
+#   /ctl/cut/<name>       send only half of the next response for <name>
+#   /ctl/clearlog/-       forget the requests so far
+#   /log                  the requests so far as JSON: [name, status, range start]
+#   /expected/<name>      the current contents of <name> (not logged)
+#
+# Usage: test_predownloader_server.py <port>
+#
+
+import http.server
+import json
+import socket
+import socketserver
+import sys
+import threading
+
+files = {
+    'a':    { 'version': 1, 'etag': 'strong', 'lastModified': True },
+    'b':    { 'version': 1, 'etag': None,     'lastModified': True },
+    'w':    { 'version': 1, 'etag': 'weak',   'lastModified': False },
+    'none': { 'version': 1, 'etag': None,     'lastModified': False },
+}
+
+cut = set()
+log = []
+lock = threading.Lock()
+
+
+def body(name):
+    version = files[name]['version']
+    return ''.join('<http://example.org/%s/%d> <http://www.w3.org/2000/01/rdf-schema#label> "version %d, %d" .\n'
+                   % (name, i, version, i) for i in range(20000)).encode()
+
+
+def validators(name):
+    f = files[name]
+    etag = None
+    if f['etag'] == 'strong':
+        etag = '"%s-%d"' % (name, f['version'])
+    elif f['etag'] == 'weak':
+        etag = 'W/"%s-%d"' % (name, f['version'])
+    lastModified = 'Mon, %02d Jan 2024 00:00:00 GMT' % f['version'] if f['lastModified'] else None
+    return etag, lastModified
+
+
+class Handler(http.server.BaseHTTPRequestHandler):
+
+    protocol_version = 'HTTP/1.1'
+
+    def log_message(self, *args):
+        pass
+
+    def reply(self, status, data=b'', headers={}):
+        self.send_response(status)
+        for k, v in headers.items():
+            self.send_header(k, v)
+        self.send_header('Content-Length', str(len(data)))
+        self.end_headers()
+        self.wfile.write(data)
+
+    def do_GET(self):
+
+        path = self.path.strip('/').split('/')
+
+        if path[0] == 'log':
+            with lock:
+                self.reply(200, json.dumps(log).encode())
+            return
+
+        if path[0] == 'ctl':
+            command, name = path[1], path[2]
+            with lock:
+                if command == 'bump':
+                    files[name]['version'] += 1
+                elif command == 'cut':
+                    cut.add(name)
+                elif command == 'clearlog':
+                    log.clear()
+            self.reply(204)
+            return
+
+        if path[0] == 'expected':
+            self.reply(200, body(path[1]))
+            return
+
+        name = path[0]
+
+        if name not in files:
+            self.reply(404)
+            return
+
+        data = body(name)
+        etag, lastModified = validators(name)
+
+        status = 200
+        start = 0
+
+        ifNoneMatch = self.headers.get('If-None-Match')
+        ifModifiedSince = self.headers.get('If-Modified-Since')
+        rangeHeader = self.headers.get('Range')
+        ifRange = self.headers.get('If-Range')
+
+        if ifNoneMatch is not None and etag is not None:
+            if ifNoneMatch == etag:
+                status = 304
+        elif ifModifiedSince is not None and lastModified is not None:
+            if ifModifiedSince == lastModified:
+                status = 304
+
+        if status == 200 and rangeHeader is not None and (ifRange is None or ifRange in (etag, lastModified)):
+            start = int(rangeHeader.split('=')[1].rstrip('-'))
+            status = 206 if start < len(data) else 416
+
+        with lock:
+            log.append([name, status, start])
+
+        headers = { 'Content-Type': 'application/n-triples' }
+        if etag is not None:
+            headers['ETag'] = etag
+        if lastModified is not None:
+            headers['Last-Modified'] = lastModified
+
+        if status in (304, 416):
+            self.reply(status, b'', headers)
+            return
+
+        out = data[start:]
+        if status == 206:
+            headers['Content-Range'] = 'bytes %d-%d/%d' % (start, len(data) - 1, len(data))
+
+        with lock:
+            cutThis = name in cut
+            cut.discard(name)
+
+        if cutThis:
+            # promise the whole body but only send half of it
+            self.send_response(status)
+            for k, v in headers.items():
+                self.send_header(k, v)
+            self.send_header('Content-Length', str(len(out)))
+            self.end_headers()
+            self.wfile.write(out[:len(out) // 2])
+            self.wfile.flush()
+            self.close_connection = True
+            self.connection.shutdown(socket.SHUT_RDWR)
+            return
+
+        self.reply(status, out, headers)
+
+
+class Server(socketserver.ThreadingMixIn, http.server.HTTPServer):
+    daemon_threads = True
+
+    def handle_error(self, request, client_address):
+        # the predownloader drops connections it doesn't need (e.g. after a 304)
+        pass
+
+
+Server(('127.0.0.1', int(sys.argv[1])), Handler).serve_forever()